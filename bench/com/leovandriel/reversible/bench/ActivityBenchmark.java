@@ -0,0 +1,64 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+/**
+ * Measures recording, undoing and redoing a single {@link Activity} holding
+ * <code>actions</code> list updates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActivityBenchmark {
+	@Param({ "100", "10000", "1000000" })
+	public int actions;
+
+	@Param({ "ArrayList", "LinkedList" })
+	public String type;
+
+	private ProxyList<Integer> list;
+	private Activity activity;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		List<Integer> target = Targets.list(type, 16);
+		list = new ProxyList<Integer>(target, new AdvancedManager());
+		value = Integer.valueOf(-1);
+		activity = record();
+	}
+
+	private Activity record() {
+		Activity result = new Activity();
+		for (int i = 0; i < actions; i++) {
+			result.run(list.new Set(i & 15, value));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Activity run() {
+		return record();
+	}
+
+	@Benchmark
+	public Activity undoRedo() {
+		activity.undo();
+		activity.redo();
+		return activity;
+	}
+}
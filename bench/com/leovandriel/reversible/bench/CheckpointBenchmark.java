@@ -0,0 +1,55 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.CheckpointManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+/**
+ * Measures a jump back to the start of a long history and forward again, over
+ * <code>activities</code> activities of ten sets each, with checkpoints every
+ * <code>interval</code> actions or without checkpoints if 0.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CheckpointBenchmark {
+	@Param({ "0", "10000" })
+	public int interval;
+
+	@Param({ "10000" })
+	public int activities;
+
+	private CheckpointManager manager;
+
+	@Setup
+	public void setup() {
+		manager = new CheckpointManager();
+		manager.setActionInterval(interval);
+		ProxyList<Integer> list = new ProxyList<Integer>(Targets.list("ArrayList", 1000), manager);
+		manager.register(list);
+		Integer value = Integer.valueOf(-1);
+		for (int i = 0; i < activities; i++) {
+			for (int j = 0; j < 10; j++) {
+				list.set((i * 10 + j) % 1000, value);
+			}
+			manager.mark();
+		}
+	}
+
+	@Benchmark
+	public CheckpointManager jumpBackAndForth() {
+		manager.undoTo(1);
+		manager.redoTo(activities);
+		return manager;
+	}
+}
@@ -0,0 +1,55 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+/**
+ * Measures a write-heavy activity, <code>writes</code> sets on one index
+ * followed by as many appends, recorded with and without coalescing and then
+ * undone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CoalescingBenchmark {
+	@Param({ "false", "true" })
+	public boolean coalescing;
+
+	@Param({ "1000" })
+	public int writes;
+
+	private AdvancedManager manager;
+	private ProxyList<Integer> list;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		manager.setCoalescing(coalescing);
+		list = new ProxyList<Integer>(Targets.list("ArrayList", 16), manager);
+		value = Integer.valueOf(-1);
+	}
+
+	@Benchmark
+	public AdvancedManager writeUndo() {
+		for (int i = 0; i < writes; i++) {
+			list.set(8, value);
+		}
+		for (int i = 0; i < writes; i++) {
+			list.add(value);
+		}
+		manager.undo();
+		return manager;
+	}
+}
@@ -0,0 +1,80 @@
+package com.leovandriel.reversible.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.JournalingRunner;
+import com.leovandriel.reversible.io.ActionCodec;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+/**
+ * Measures an activity of <code>writes</code> sets followed by a mark,
+ * journaled with different sync intervals. A sync interval of -1 runs on the
+ * manager without a journal as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JournalBenchmark {
+	@Param({ "-1", "0", "1", "64" })
+	public int syncInterval;
+
+	@Param({ "1", "100" })
+	public int writes;
+
+	private File file;
+	private AdvancedManager manager;
+	private JournalingRunner journal;
+	private ProxyList<Integer> list;
+	private Integer value;
+
+	@Setup
+	public void setup() throws IOException {
+		manager = new AdvancedManager();
+		manager.setMaxUndoSize(100);
+		if (syncInterval < 0) {
+			list = new ProxyList<Integer>(Targets.list("ArrayList", 1), manager);
+		} else {
+			file = File.createTempFile("journal", ".bin");
+			ActionCodec codec = new ActionCodec();
+			journal = new JournalingRunner(manager, file, codec);
+			journal.setSyncInterval(syncInterval);
+			list = new ProxyList<Integer>(Targets.list("ArrayList", 1), journal);
+			codec.register(list);
+		}
+		value = Integer.valueOf(-1);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		if (journal != null) {
+			journal.close();
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	public AdvancedManager writeMark() {
+		for (int i = 0; i < writes; i++) {
+			list.set(0, value);
+		}
+		if (journal != null) {
+			journal.mark();
+		} else {
+			manager.mark();
+		}
+		return manager;
+	}
+}
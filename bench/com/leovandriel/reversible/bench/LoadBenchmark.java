@@ -0,0 +1,74 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Loads <code>size</code> values into a fresh list and map, through proxies
+ * that record, through proxies with recording suspended, or into the raw
+ * collections.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoadBenchmark {
+	@Param({ "recorded", "unrecorded", "raw" })
+	public String mode;
+
+	@Param({ "100000" })
+	public int size;
+
+	private Integer[] values;
+
+	@Setup
+	public void setup() {
+		values = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = Integer.valueOf(i);
+		}
+	}
+
+	@Benchmark
+	public Object load() {
+		AdvancedManager manager = new AdvancedManager();
+		final List<Integer> list;
+		final Map<Integer, Integer> map;
+		if ("raw".equals(mode)) {
+			list = new ArrayList<Integer>();
+			map = new HashMap<Integer, Integer>();
+		} else {
+			list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+			map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		}
+		Runnable task = new Runnable() {
+			public void run() {
+				for (int i = 0; i < size; i++) {
+					list.add(values[i]);
+					map.put(values[i], values[i]);
+				}
+			}
+		};
+		if ("unrecorded".equals(mode)) {
+			manager.runUnrecorded(task);
+		} else {
+			task.run();
+		}
+		return manager;
+	}
+}
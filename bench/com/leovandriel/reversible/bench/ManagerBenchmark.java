@@ -0,0 +1,81 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+/**
+ * Measures {@link AdvancedManager} run, mark and multi-step undo and redo over
+ * a history of <code>activities</code> activities, each holding
+ * <code>actions</code> slot updates. The bounded variant keeps the history at
+ * its maximum size, so every mark evicts the oldest activity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManagerBenchmark {
+	@Param({ "100", "10000" })
+	public int activities;
+
+	@Param({ "1", "100" })
+	public int actions;
+
+	private AdvancedManager manager;
+	private ProxySlot<Integer> slot;
+	private AdvancedManager bounded;
+	private ProxySlot<Integer> boundedSlot;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager);
+		value = Integer.valueOf(1);
+		for (int i = 0; i < activities; i++) {
+			for (int j = 0; j < actions; j++) {
+				slot.set(value);
+			}
+			manager.mark();
+		}
+		bounded = new AdvancedManager();
+		bounded.setMaxUndoSize(activities);
+		boundedSlot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), bounded);
+		for (int i = 0; i < activities; i++) {
+			boundedSlot.set(value);
+			bounded.mark();
+		}
+	}
+
+	@Benchmark
+	public AdvancedManager runMarkUndo() {
+		slot.set(value);
+		manager.mark();
+		manager.undo();
+		return manager;
+	}
+
+	@Benchmark
+	public AdvancedManager runMarkEvict() {
+		boundedSlot.set(value);
+		bounded.mark();
+		return bounded;
+	}
+
+	@Benchmark
+	public AdvancedManager undoRedo() {
+		manager.undo(activities);
+		manager.redo(activities);
+		return manager;
+	}
+}
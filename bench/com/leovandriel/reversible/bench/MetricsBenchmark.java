@@ -0,0 +1,57 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.InstrumentedRunner;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+/**
+ * Measures the overhead of an {@link InstrumentedRunner} on the run path,
+ * timing every run and timing the default one in 64, against the bare manager. As in
+ * {@link RunnerBenchmark}, coalescing keeps the activity at a single action.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+	@Param({ "manager", "timed", "sampled" })
+	public String runner;
+
+	private ProxySlot<Integer> slot;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setCoalescing(true);
+		ActionRunner target = manager;
+		if ("timed".equals(runner)) {
+			InstrumentedRunner instrumented = new InstrumentedRunner(manager);
+			instrumented.setSampleInterval(1);
+			target = instrumented;
+		} else if ("sampled".equals(runner)) {
+			target = new InstrumentedRunner(manager);
+		} else if (!"manager".equals(runner)) {
+			throw new IllegalArgumentException("Unknown runner: " + runner);
+		}
+		slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), target);
+		value = Integer.valueOf(1);
+	}
+
+	@Benchmark
+	public Integer run() {
+		return slot.set(value);
+	}
+}
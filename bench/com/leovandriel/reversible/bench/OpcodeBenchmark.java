@@ -0,0 +1,78 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Compares recording proxy writes as actions with recording them as opcodes:
+ * <code>size</code> writes in one activity, then undone. Run with
+ * <code>-prof gc</code> and compare <code>gc.alloc.rate.norm</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpcodeBenchmark {
+	@Param({ "actions", "opcodes" })
+	public String mode;
+
+	@Param({ "1000" })
+	public int size;
+
+	private AdvancedManager manager;
+	private ProxyList<Integer> list;
+	private ProxyMap<Integer, Integer> map;
+	private Integer[] values;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		manager.setRecordingOpcodes("opcodes".equals(mode));
+		list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		values = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = Integer.valueOf(i);
+			list.add(values[i]);
+			map.put(values[i], values[i]);
+		}
+		manager.mark();
+	}
+
+	@Benchmark
+	public void listAdd() {
+		for (int i = 0; i < size; i++) {
+			list.add(values[i]);
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void listSet() {
+		for (int i = 0; i < size; i++) {
+			list.set(i, values[0]);
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void mapPut() {
+		for (int i = 0; i < size; i++) {
+			map.put(values[i], values[0]);
+		}
+		manager.undo();
+	}
+}
@@ -0,0 +1,79 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.persistent.PersistentList;
+import com.leovandriel.reversible.persistent.PersistentMap;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Compares the persistent collections with proxies: an activity of
+ * <code>size</code> writes is recorded in setup, then undone and redone. The
+ * proxies replay every write, the persistent collections swap one root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistentBenchmark {
+	@Param({ "Persistent", "Proxy" })
+	public String type;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private AdvancedManager manager;
+	private List<Integer> list;
+	private Map<Integer, Integer> map;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		if ("Persistent".equals(type)) {
+			list = new PersistentList<Integer>(manager);
+			map = new PersistentMap<Integer, Integer>(manager);
+		} else {
+			list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+			map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		}
+		for (int i = 0; i < size; i++) {
+			list.add(Integer.valueOf(i));
+			map.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		manager.mark();
+		for (int i = 0; i < size; i++) {
+			list.set(i, Integer.valueOf(-i));
+			map.put(Integer.valueOf(i), Integer.valueOf(-i));
+		}
+		manager.mark();
+	}
+
+	@Benchmark
+	public void undoRedo() {
+		manager.undo();
+		manager.redo();
+	}
+
+	@Benchmark
+	public int get() {
+		int result = 0;
+		for (int i = 0; i < size; i += 16) {
+			result += list.get(i).intValue() + map.get(Integer.valueOf(i)).intValue();
+		}
+		return result;
+	}
+}
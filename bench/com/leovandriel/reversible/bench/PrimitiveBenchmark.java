@@ -0,0 +1,104 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.primitive.IntList;
+import com.leovandriel.reversible.primitive.IntSet;
+import com.leovandriel.reversible.primitive.LongObjectMap;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+import com.leovandriel.reversible.proxy.ProxySet;
+
+/**
+ * Compares the primitive collections with boxed proxies over the same
+ * workload: <code>size</code> writes recorded in one activity, then undone.
+ * Run with <code>-prof gc</code> and compare <code>gc.alloc.rate.norm</code>
+ * for the memory cost of the targets and their history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimitiveBenchmark {
+	@Param({ "1000" })
+	public int size;
+
+	private AdvancedManager manager;
+	private IntList intList;
+	private ProxyList<Integer> boxedList;
+	private IntSet intSet;
+	private ProxySet<Integer> boxedSet;
+	private LongObjectMap<Object> longMap;
+	private ProxyMap<Long, Object> boxedMap;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		intList = new IntList(manager);
+		boxedList = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		intSet = new IntSet(manager);
+		boxedSet = new ProxySet<Integer>(new HashSet<Integer>(), manager);
+		longMap = new LongObjectMap<Object>(manager);
+		boxedMap = new ProxyMap<Long, Object>(new HashMap<Long, Object>(), manager);
+	}
+
+	@Benchmark
+	public void intListAdd() {
+		for (int i = 0; i < size; i++) {
+			intList.add(i * 1000);
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void boxedListAdd() {
+		for (int i = 0; i < size; i++) {
+			boxedList.add(Integer.valueOf(i * 1000));
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void intSetAdd() {
+		for (int i = 0; i < size; i++) {
+			intSet.add(i * 1000);
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void boxedSetAdd() {
+		for (int i = 0; i < size; i++) {
+			boxedSet.add(Integer.valueOf(i * 1000));
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void longMapPut() {
+		for (int i = 0; i < size; i++) {
+			longMap.put(i * 1000L, this);
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void boxedMapPut() {
+		for (int i = 0; i < size; i++) {
+			boxedMap.put(Long.valueOf(i * 1000L), this);
+		}
+		manager.undo();
+	}
+}
@@ -0,0 +1,199 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.Filter;
+import com.leovandriel.reversible.misc.Transform;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+/**
+ * Measures {@link ProxyList} operations. Every mutating benchmark records the
+ * operation and then undoes it, so the target keeps a constant size and the
+ * history stays empty across invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyListBenchmark {
+	@Param({ "ArrayList", "LinkedList", "SwappableList" })
+	public String type;
+
+	@Param({ "1000" })
+	public int size;
+
+	private static final Filter<Integer> SIXTEENTH = new Filter<Integer>() {
+		public boolean accept(Integer value) {
+			return (value.intValue() & 15) == 0;
+		}
+	};
+	private static final Transform<Integer> NEGATE_SIXTEENTH = new Transform<Integer>() {
+		public Integer apply(Integer value) {
+			return (value.intValue() & 15) == 0 ? Integer.valueOf(-value.intValue()) : value;
+		}
+	};
+
+	private AdvancedManager manager;
+	private ProxyList<Integer> list;
+	private List<Integer> values;
+	private List<Integer> spread;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		list = new ProxyList<Integer>(Targets.list(type, size), manager);
+		values = Targets.values(size, 16);
+		spread = new ArrayList<Integer>();
+		for (int i = 0; i < size; i += 10) {
+			spread.add(Integer.valueOf(i));
+		}
+		value = Integer.valueOf(size / 2);
+	}
+
+	@Benchmark
+	public boolean add() {
+		boolean result = list.add(value);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void addAt() {
+		list.add(size / 2, value);
+		manager.undo();
+	}
+
+	@Benchmark
+	public boolean addAll() {
+		boolean result = list.addAll(values);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean addAllAt() {
+		boolean result = list.addAll(size / 2, values);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer set() {
+		Integer result = list.set(size / 2, value);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean remove() {
+		boolean result = list.remove(value);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer removeAt() {
+		Integer result = list.remove(size / 2);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean removeAll() {
+		boolean result = list.removeAll(spread);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean retainAll() {
+		boolean result = list.retainAll(spread);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void iteratorRemove() {
+		boolean odd = false;
+		for (Iterator<Integer> i = list.iterator(); i.hasNext();) {
+			i.next();
+			if (odd) {
+				i.remove();
+			}
+			odd = !odd;
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void sort() {
+		Collections.sort(list, Collections.reverseOrder());
+		manager.undo();
+	}
+
+	@Benchmark
+	public boolean removeMatching() {
+		boolean result = list.removeMatching(SIXTEENTH);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean removeIf() {
+		boolean result = list.removeIf(i -> SIXTEENTH.accept(i));
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void transformAll() {
+		list.transformAll(NEGATE_SIXTEENTH);
+		manager.undo();
+	}
+
+	@Benchmark
+	public void replaceAll() {
+		list.replaceAll(i -> NEGATE_SIXTEENTH.apply(i));
+		manager.undo();
+	}
+
+	@Benchmark
+	public void clear() {
+		list.clear();
+		manager.undo();
+	}
+
+	@Benchmark
+	public Integer get() {
+		return list.get(size / 2);
+	}
+
+	@Benchmark
+	public boolean contains() {
+		return list.contains(value);
+	}
+
+	@Benchmark
+	public void listIterator(Blackhole hole) {
+		ListIterator<Integer> iterator = list.listIterator();
+		while (iterator.hasNext()) {
+			hole.consume(iterator.next());
+		}
+	}
+}
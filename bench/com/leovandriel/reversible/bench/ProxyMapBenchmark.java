@@ -0,0 +1,141 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.Transform;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Measures {@link ProxyMap} operations on hash and tree maps. Every mutating
+ * benchmark records the operation and then undoes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyMapBenchmark {
+	@Param({ "HashMap", "TreeMap", "SwappableMap" })
+	public String type;
+
+	@Param({ "1000" })
+	public int size;
+
+	private static final Transform<Integer> INCREMENT = new Transform<Integer>() {
+		public Integer apply(Integer value) {
+			return Integer.valueOf(value.intValue() + 1);
+		}
+	};
+
+	private AdvancedManager manager;
+	private ProxyMap<Integer, Integer> map;
+	private Map<Integer, Integer> entries;
+	private Integer key;
+	private Integer absent;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		map = new ProxyMap<Integer, Integer>(Targets.map(type, size), manager);
+		entries = Targets.map(type, 16);
+		key = Integer.valueOf(size / 2);
+		absent = Integer.valueOf(size);
+	}
+
+	@Benchmark
+	public Integer putExisting() {
+		Integer result = map.put(key, absent);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer putAbsent() {
+		Integer result = map.put(absent, key);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer putIfAbsent() {
+		Integer result = map.putIfAbsent(absent, key);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer update() {
+		Integer result = map.update(key, INCREMENT);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer merge() {
+		Integer result = map.merge(key, key, (a, b) -> Integer.valueOf(a.intValue() + b.intValue()));
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void transformValues() {
+		map.transformValues(INCREMENT);
+		manager.undo();
+	}
+
+	@Benchmark
+	public void putAll() {
+		map.putAll(entries);
+		manager.undo();
+	}
+
+	@Benchmark
+	public Integer remove() {
+		Integer result = map.remove(key);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void clear() {
+		map.clear();
+		manager.undo();
+	}
+
+	@Benchmark
+	public void keySetIteratorRemove() {
+		for (Iterator<Integer> i = map.keySet().iterator(); i.hasNext();) {
+			if ((i.next().intValue() & 15) == 0) {
+				i.remove();
+			}
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public boolean keySetRemoveAll() {
+		boolean result = map.keySet().removeAll(entries.keySet());
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer get() {
+		return map.get(key);
+	}
+
+	@Benchmark
+	public Object keySet() {
+		return map.keySet();
+	}
+}
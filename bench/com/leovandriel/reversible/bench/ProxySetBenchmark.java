@@ -0,0 +1,103 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxySet;
+
+/**
+ * Measures {@link ProxySet} operations on hash and tree backed sets. Every
+ * mutating benchmark records the operation and then undoes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxySetBenchmark {
+	@Param({ "HashMap", "TreeMap", "SwappableSet" })
+	public String type;
+
+	@Param({ "1000" })
+	public int size;
+
+	private AdvancedManager manager;
+	private ProxySet<Integer> set;
+	private List<Integer> absent;
+	private List<Integer> present;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		set = new ProxySet<Integer>(Targets.set(type, size), manager);
+		absent = Targets.values(size, 16);
+		present = Targets.values(0, 16);
+		value = Integer.valueOf(size / 2);
+	}
+
+	@Benchmark
+	public boolean add() {
+		boolean result = set.add(Integer.valueOf(size));
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean addAll() {
+		boolean result = set.addAll(absent);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean remove() {
+		boolean result = set.remove(value);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean removeAll() {
+		boolean result = set.removeAll(present);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public boolean retainAll() {
+		boolean result = set.retainAll(present);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public void iteratorRemove() {
+		for (Iterator<Integer> i = set.iterator(); i.hasNext();) {
+			if ((i.next().intValue() & 15) == 0) {
+				i.remove();
+			}
+		}
+		manager.undo();
+	}
+
+	@Benchmark
+	public void clear() {
+		set.clear();
+		manager.undo();
+	}
+
+	@Benchmark
+	public boolean contains() {
+		return set.contains(value);
+	}
+}
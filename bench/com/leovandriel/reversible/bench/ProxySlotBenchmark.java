@@ -0,0 +1,47 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+/**
+ * Measures {@link ProxySlot} operations. The set benchmark records a value and
+ * then undoes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxySlotBenchmark {
+	private AdvancedManager manager;
+	private ProxySlot<Integer> slot;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager);
+		value = Integer.valueOf(1);
+	}
+
+	@Benchmark
+	public Integer set() {
+		Integer result = slot.set(value);
+		manager.undo();
+		return result;
+	}
+
+	@Benchmark
+	public Integer get() {
+		return slot.get();
+	}
+}
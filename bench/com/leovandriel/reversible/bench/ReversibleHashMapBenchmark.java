@@ -0,0 +1,74 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.ReversibleHashMap;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Compares {@link ReversibleHashMap} with a {@link ProxyMap} over a
+ * {@link HashMap}: a batch of <code>size</code> puts and removes recorded in
+ * one activity, then undone and redone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReversibleHashMapBenchmark {
+	@Param({ "ReversibleHashMap", "ProxyMap" })
+	public String type;
+
+	@Param({ "1000" })
+	public int size;
+
+	private AdvancedManager manager;
+	private Map<Integer, Integer> map;
+	private Integer[] keys;
+
+	@Setup
+	public void setup() {
+		manager = new AdvancedManager();
+		if ("ReversibleHashMap".equals(type)) {
+			map = new ReversibleHashMap<Integer, Integer>(manager);
+		} else {
+			map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		}
+		keys = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = Integer.valueOf(i * 7919);
+		}
+		for (int i = 0; i < size; i += 2) {
+			map.put(keys[i], keys[i]);
+		}
+		manager.mark();
+	}
+
+	@Benchmark
+	public void putRemove() {
+		for (int i = 0; i < size; i++) {
+			map.put(keys[i], keys[0]);
+		}
+		for (int i = 1; i < size; i += 2) {
+			map.remove(keys[i]);
+		}
+		manager.mark();
+		manager.undo();
+	}
+
+	@Benchmark
+	public void undoRedo() {
+		manager.undo();
+		manager.redo();
+	}
+}
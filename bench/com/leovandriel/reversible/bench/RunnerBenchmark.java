@@ -0,0 +1,54 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ConfinedManager;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+/**
+ * Compares the run path of the synchronized {@link AdvancedManager} with the
+ * thread-confined {@link ConfinedManager}. Coalescing keeps the activity at a
+ * single action, so the benchmark measures the runner rather than history
+ * growth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RunnerBenchmark {
+	@Param({ "AdvancedManager", "ConfinedManager" })
+	public String type;
+
+	private AdvancedManager manager;
+	private ProxySlot<Integer> slot;
+	private Integer value;
+
+	@Setup
+	public void setup() {
+		if ("AdvancedManager".equals(type)) {
+			manager = new AdvancedManager();
+		} else if ("ConfinedManager".equals(type)) {
+			manager = new ConfinedManager();
+		} else {
+			throw new IllegalArgumentException("Unknown manager type: " + type);
+		}
+		manager.setCoalescing(true);
+		slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager);
+		value = Integer.valueOf(1);
+	}
+
+	@Benchmark
+	public Integer run() {
+		return slot.set(value);
+	}
+}
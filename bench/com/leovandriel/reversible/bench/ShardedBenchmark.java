@@ -0,0 +1,98 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.leovandriel.reversible.activity.ShardedActivityManager;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+/**
+ * Measures write throughput of 1 to 32 threads, each writing to its own
+ * partition map. With a single shard all writers share one lock, with 32
+ * shards every writer has its own. Writes repeat one key per thread and
+ * coalesce, so history does not grow.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardedBenchmark {
+	@State(Scope.Benchmark)
+	public static class Shared {
+		@Param({ "1", "32" })
+		public int shards;
+
+		private ShardedActivityManager manager;
+
+		@Setup
+		public void setup() {
+			manager = new ShardedActivityManager(shards);
+			manager.setCoalescing(true);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+		private ProxyMap<Integer, Integer> map;
+		private Integer key;
+		private Integer value;
+
+		@Setup
+		public void setup(Shared shared, ThreadParams params) {
+			int index = params.getThreadIndex();
+			map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(),
+					shared.manager.getShard(index % shared.shards));
+			key = Integer.valueOf(index);
+			value = Integer.valueOf(-1);
+		}
+
+		private Integer write() {
+			return map.put(key, value);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Integer writers01(Writer writer) {
+		return writer.write();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Integer writers02(Writer writer) {
+		return writer.write();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer writers04(Writer writer) {
+		return writer.write();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Integer writers08(Writer writer) {
+		return writer.write();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Integer writers16(Writer writer) {
+		return writer.write();
+	}
+
+	@Benchmark
+	@Threads(32)
+	public Integer writers32(Writer writer) {
+		return writer.write();
+	}
+}
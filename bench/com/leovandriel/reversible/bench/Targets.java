@@ -0,0 +1,80 @@
+package com.leovandriel.reversible.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.leovandriel.reversible.misc.SwappableList;
+import com.leovandriel.reversible.misc.SwappableMap;
+import com.leovandriel.reversible.misc.SwappableSet;
+
+/**
+ * Creates the plain collections that benchmarks wrap in proxies, filled with
+ * <code>size</code> consecutive integers.
+ */
+public class Targets {
+	public static List<Integer> list(String type, int size) {
+		List<Integer> result;
+		if ("ArrayList".equals(type)) {
+			result = new ArrayList<Integer>(size);
+		} else if ("LinkedList".equals(type)) {
+			result = new LinkedList<Integer>();
+		} else if ("SwappableList".equals(type)) {
+			result = new SwappableList<Integer>();
+		} else {
+			throw new IllegalArgumentException("Unknown list type: " + type);
+		}
+		for (int i = 0; i < size; i++) {
+			result.add(Integer.valueOf(i));
+		}
+		return result;
+	}
+
+	public static Set<Integer> set(String type, int size) {
+		Set<Integer> result;
+		if ("HashMap".equals(type)) {
+			result = new HashSet<Integer>(size * 2);
+		} else if ("TreeMap".equals(type)) {
+			result = new TreeSet<Integer>();
+		} else if ("SwappableSet".equals(type)) {
+			result = new SwappableSet<Integer>();
+		} else {
+			throw new IllegalArgumentException("Unknown set type: " + type);
+		}
+		for (int i = 0; i < size; i++) {
+			result.add(Integer.valueOf(i));
+		}
+		return result;
+	}
+
+	public static Map<Integer, Integer> map(String type, int size) {
+		Map<Integer, Integer> result;
+		if ("HashMap".equals(type)) {
+			result = new HashMap<Integer, Integer>(size * 2);
+		} else if ("TreeMap".equals(type)) {
+			result = new TreeMap<Integer, Integer>();
+		} else if ("SwappableMap".equals(type)) {
+			result = new SwappableMap<Integer, Integer>();
+		} else {
+			throw new IllegalArgumentException("Unknown map type: " + type);
+		}
+		for (int i = 0; i < size; i++) {
+			result.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		return result;
+	}
+
+	public static List<Integer> values(int from, int count) {
+		List<Integer> result = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(Integer.valueOf(from + i));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,20 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.leovandriel.reversible.Action")
+@Label("Action")
+@Category("Reversible")
+@Description("Runs a single action. Configure a threshold to only record long runs.")
+class ActionEvent extends Event {
+	@Label("Action Class")
+	Class<?> actionClass;
+
+	@Label("Activity Actions")
+	@Description("Number of actions in the current activity afterwards")
+	int actions;
+}
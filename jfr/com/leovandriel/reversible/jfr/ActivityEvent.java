@@ -0,0 +1,22 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Fields shared by mark, undo and redo events.
+ */
+abstract class ActivityEvent extends Event {
+	@Label("Actions")
+	@Description("Number of actions in the activity")
+	int actions;
+
+	@Label("Undo Depth")
+	@Description("Number of activities that can be undone afterwards")
+	int undoDepth;
+
+	@Label("Redo Depth")
+	@Description("Number of activities that can be redone afterwards")
+	int redoDepth;
+}
@@ -0,0 +1,141 @@
+package com.leovandriel.reversible.jfr;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.AdvancedRunner;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityMonitor;
+import com.leovandriel.reversible.activity.AdvancedManager;
+
+/**
+ * Runner that emits Java Flight Recorder events for the runs, marks, undos,
+ * redos and trims of a manager, to correlate them with GC and safepoints in
+ * a recording. Events are enabled and given thresholds by the recording's
+ * settings, e.g. <code>reversible.jfc</code>; while disabled, each call
+ * costs a check of the event's enabled flag.
+ * <p>
+ * As with the {@link com.leovandriel.reversible.activity.JournalingRunner},
+ * proxies must run on this runner, and marks, undos and redos must go
+ * through it. Trimming is reported through the manager's
+ * {@link ActivityMonitor}. Opcode writes are recorded without events.
+ */
+public class FlightRecorderRunner implements AdvancedRunner, OpcodeRunner, ActivityMonitor {
+	private AdvancedManager manager;
+
+	public FlightRecorderRunner(AdvancedManager manager) {
+		this.manager = manager;
+		manager.addActivityMonitor(this);
+	}
+
+	public <T> T run(Action<T> action) {
+		ActionEvent event = new ActionEvent();
+		if (!event.isEnabled()) {
+			return manager.run(action);
+		}
+		event.begin();
+		try {
+			return manager.run(action);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				Activity current = manager.getCurrentActivity();
+				event.actionClass = action.getClass();
+				event.actions = current != null ? current.size() : 0;
+				event.commit();
+			}
+		}
+	}
+
+	public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		return manager.apply(table, opcode, index, key, value);
+	}
+
+	public boolean isRecording() {
+		return manager.isRecording();
+	}
+
+	public boolean isRecordingOpcodes() {
+		return manager.isRecordingOpcodes();
+	}
+
+	public boolean isRunningAction() {
+		return manager.isRunningAction();
+	}
+
+	public void mark() {
+		MarkEvent event = new MarkEvent();
+		if (!event.isEnabled()) {
+			manager.mark();
+			return;
+		}
+		Activity current = manager.getCurrentActivity();
+		event.begin();
+		manager.mark();
+		commit(event, current);
+	}
+
+	public void undo() {
+		UndoEvent event = new UndoEvent();
+		if (!event.isEnabled()) {
+			manager.undo();
+			return;
+		}
+		Activity activity = manager.getNextUndo();
+		event.begin();
+		manager.undo();
+		commit(event, activity);
+	}
+
+	public void undo(int count) {
+		for (; count > 0; count--) {
+			undo();
+		}
+	}
+
+	public void redo() {
+		RedoEvent event = new RedoEvent();
+		if (!event.isEnabled()) {
+			manager.redo();
+			return;
+		}
+		Activity activity = manager.getNextRedo();
+		event.begin();
+		manager.redo();
+		commit(event, activity);
+	}
+
+	public void redo(int count) {
+		for (; count > 0; count--) {
+			redo();
+		}
+	}
+
+	private void commit(ActivityEvent event, Activity activity) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.actions = activity != null ? activity.size() : 0;
+			event.undoDepth = manager.getUndoSize();
+			event.redoDepth = manager.getRedoSize();
+			event.commit();
+		}
+	}
+
+	public void trimmed(int count, long nanos) {
+		TrimEvent event = new TrimEvent();
+		if (event.shouldCommit()) {
+			event.count = count;
+			event.trimDuration = nanos;
+			event.commit();
+		}
+	}
+
+	public AdvancedManager getManager() {
+		return manager;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + manager + ')';
+	}
+}
@@ -0,0 +1,13 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.leovandriel.reversible.Mark")
+@Label("Mark")
+@Category("Reversible")
+@Description("Marks the current activity and pushes it into undo history, including any retention evictions.")
+class MarkEvent extends ActivityEvent {
+}
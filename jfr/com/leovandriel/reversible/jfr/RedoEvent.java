@@ -0,0 +1,13 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.leovandriel.reversible.Redo")
+@Label("Redo")
+@Category("Reversible")
+@Description("Redoes one activity.")
+class RedoEvent extends ActivityEvent {
+}
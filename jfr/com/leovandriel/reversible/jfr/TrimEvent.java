@@ -0,0 +1,26 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Reported by the manager after the fact, so the event is instant and its
+ * duration is a field.
+ */
+@Name("com.leovandriel.reversible.Trim")
+@Label("Trim")
+@Category("Reversible")
+@Description("Evicts activities from history by trimming or by the retention policy.")
+class TrimEvent extends Event {
+	@Label("Activities")
+	@Description("Number of activities evicted")
+	int count;
+
+	@Label("Trim Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long trimDuration;
+}
@@ -0,0 +1,13 @@
+package com.leovandriel.reversible.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.leovandriel.reversible.Undo")
+@Label("Undo")
+@Category("Reversible")
+@Description("Undoes one activity.")
+class UndoEvent extends ActivityEvent {
+}
@@ -0,0 +1,76 @@
+package com.leovandriel.reversible.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.InstrumentedRunner;
+import com.leovandriel.reversible.jfr.FlightRecorderRunner;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+public class FlightRecorderTest extends TestCase {
+	@Test
+	public void testEvents() throws IOException {
+		AdvancedManager manager = new AdvancedManager();
+		FlightRecorderRunner runner = new FlightRecorderRunner(manager);
+		InstrumentedRunner instrumented = new InstrumentedRunner(manager);
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), runner);
+		Path file = Files.createTempFile("reversible", ".jfr");
+		try {
+			Recording recording = new Recording();
+			try {
+				recording.enable("com.leovandriel.reversible.Mark").withoutThreshold();
+				recording.enable("com.leovandriel.reversible.Undo").withoutThreshold();
+				recording.enable("com.leovandriel.reversible.Trim");
+				recording.start();
+				for (int i = 0; i < 3; i++) {
+					list.add(Integer.valueOf(i));
+					list.add(Integer.valueOf(i));
+					runner.mark();
+				}
+				runner.undo();
+				manager.trimUndo(1);
+				recording.stop();
+				recording.dump(file);
+			} finally {
+				recording.close();
+			}
+			List<RecordedEvent> marks = new ArrayList<RecordedEvent>();
+			List<RecordedEvent> undos = new ArrayList<RecordedEvent>();
+			List<RecordedEvent> trims = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				String name = event.getEventType().getName();
+				if (name.equals("com.leovandriel.reversible.Mark")) {
+					marks.add(event);
+				} else if (name.equals("com.leovandriel.reversible.Undo")) {
+					undos.add(event);
+				} else if (name.equals("com.leovandriel.reversible.Trim")) {
+					trims.add(event);
+				}
+			}
+			assertEquals(3, marks.size());
+			for (RecordedEvent mark : marks) {
+				assertEquals(2, mark.getInt("actions"));
+			}
+			assertEquals(1, undos.size());
+			assertEquals(2, undos.get(0).getInt("actions"));
+			assertEquals(2, undos.get(0).getInt("undoDepth"));
+			assertEquals(1, undos.get(0).getInt("redoDepth"));
+			assertEquals(1, trims.size());
+			assertEquals(1, trims.get(0).getInt("count"));
+			assertEquals(1, instrumented.getTrimCount());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
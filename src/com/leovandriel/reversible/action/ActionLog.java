@@ -0,0 +1,158 @@
+package com.leovandriel.reversible.action;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only sequence of actions, stored in array chunks. Chunks start small
+ * and double in capacity up to {@link #MAX_CHUNK_SIZE}, so short logs stay
+ * compact while long logs cost one array slot per action instead of a linked
+ * node. Actions are replayed chunk by chunk, front to back on
+ * {@link #runAll()} and back to front on {@link #unrunAll()}.
+ */
+public class ActionLog implements Iterable<Action<?>> {
+	private static final int MIN_CHUNK_SIZE = 4;
+	private static final int MAX_CHUNK_SIZE = 1024;
+
+	/**
+	 * Full chunks, oldest first, or null as long as everything fits in the
+	 * tail.
+	 */
+	private Action<?>[][] chunks;
+	private int chunkCount;
+	private Action<?>[] tail;
+	private int tailSize;
+	private int size;
+
+	public ActionLog() {
+	}
+
+	public void add(Action<?> action) {
+		if (tail == null) {
+			tail = new Action<?>[MIN_CHUNK_SIZE];
+		} else if (tailSize == tail.length) {
+			pushTail();
+		}
+		tail[tailSize++] = action;
+		size++;
+	}
+
+	private void pushTail() {
+		if (chunks == null) {
+			chunks = new Action<?>[4][];
+		} else if (chunkCount == chunks.length) {
+			Action<?>[][] grown = new Action<?>[chunkCount * 2][];
+			System.arraycopy(chunks, 0, grown, 0, chunkCount);
+			chunks = grown;
+		}
+		chunks[chunkCount++] = tail;
+		tail = new Action<?>[Math.min(tail.length * 2, MAX_CHUNK_SIZE)];
+		tailSize = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the most recently added action, or null if the log is empty.
+	 */
+	public Action<?> getLast() {
+		return tailSize > 0 ? tail[tailSize - 1] : null;
+	}
+
+	/**
+	 * Replaces the most recently added action.
+	 */
+	public void setLast(Action<?> action) {
+		if (tailSize == 0) {
+			throw new IllegalStateException("Log is empty");
+		}
+		tail[tailSize - 1] = action;
+	}
+
+	/**
+	 * Runs all actions in the order they were added.
+	 */
+	public void runAll() {
+		for (int c = 0; c < chunkCount; c++) {
+			Action<?>[] chunk = chunks[c];
+			for (int i = 0; i < chunk.length; i++) {
+				chunk[i].run();
+			}
+		}
+		Action<?>[] chunk = tail;
+		for (int i = 0, end = tailSize; i < end; i++) {
+			chunk[i].run();
+		}
+	}
+
+	/**
+	 * Unruns all actions in the reverse order they were added.
+	 */
+	public void unrunAll() {
+		Action<?>[] chunk = tail;
+		for (int i = tailSize - 1; i >= 0; i--) {
+			chunk[i].unrun();
+		}
+		for (int c = chunkCount - 1; c >= 0; c--) {
+			chunk = chunks[c];
+			for (int i = chunk.length - 1; i >= 0; i--) {
+				chunk[i].unrun();
+			}
+		}
+	}
+
+	private class IteratorImpl implements Iterator<Action<?>> {
+		private int chunk;
+		private int index;
+
+		public boolean hasNext() {
+			return chunk < chunkCount || index < tailSize;
+		}
+
+		public Action<?> next() {
+			if (chunk < chunkCount) {
+				Action<?>[] current = chunks[chunk];
+				Action<?> result = current[index++];
+				if (index == current.length) {
+					chunk++;
+					index = 0;
+				}
+				return result;
+			}
+			if (index < tailSize) {
+				return tail[index++];
+			}
+			throw new NoSuchElementException();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Iterates the actions in the order they were added.
+	 */
+	public Iterator<Action<?>> iterator() {
+		return new IteratorImpl();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (Iterator<Action<?>> i = iterator(); i.hasNext();) {
+			builder.append(i.next());
+			if (i.hasNext()) {
+				builder.append(", ");
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
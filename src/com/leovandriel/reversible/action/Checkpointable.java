@@ -0,0 +1,24 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Target whose whole state can be copied and put back, allowing a manager to
+ * jump to a checkpoint instead of replaying every action in between.
+ */
+public interface Checkpointable {
+	/**
+	 * Returns a copy of the current state, unaffected by later changes.
+	 */
+	public Object snapshot();
+
+	/**
+	 * Replaces the current state by a snapshot, without running any action.
+	 * The snapshot itself is left unchanged so it can be restored again.
+	 */
+	public void restore(Object snapshot);
+
+	/**
+	 * Returns the number of elements, as a measure of the cost of a snapshot
+	 * and a restore.
+	 */
+	public int size();
+}
@@ -0,0 +1,18 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Action that can absorb the action recorded right after it, typically when
+ * both write to the same location. Used by activities with coalescing enabled
+ * to keep a single history entry for repeated writes.
+ */
+public interface Coalescable {
+	/**
+	 * Merges the given action, which has just run, into this one. The result
+	 * must undo both actions at once, restoring the state from before this
+	 * action ran, and redo both at once.
+	 *
+	 * @return the action replacing both in history, or null if they cannot be
+	 *         merged
+	 */
+	public Action<?> coalesce(Action<?> next);
+}
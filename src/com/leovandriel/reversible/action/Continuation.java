@@ -0,0 +1,10 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Action that continues the action recorded right before it, such as the
+ * next removal of an iterator. Activities offer it to the last action's
+ * {@link Coalescable#coalesce(Action)} even when coalescing is disabled, so
+ * that a traversal keeps a single history entry.
+ */
+public interface Continuation {
+}
@@ -0,0 +1,22 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Estimates every action at the same number of bytes, which is a reasonable
+ * bound for actions that only capture references.
+ */
+public class FixedSizeEstimator implements SizeEstimator {
+	private long bytesPerAction;
+
+	public FixedSizeEstimator(long bytesPerAction) {
+		this.bytesPerAction = bytesPerAction;
+	}
+
+	public long estimate(Action<?> action) {
+		return bytesPerAction;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + bytesPerAction + ')';
+	}
+}
@@ -1,20 +1,17 @@
 package com.leovandriel.reversible.action;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 
 public class GroupAction extends AbstractAction<Void> {
-	private List<Action<?>> actions;
+	private ActionLog actions = new ActionLog();
 
 	public GroupAction() {
-		this.actions = new LinkedList<Action<?>>();
 	}
 
 	public GroupAction(Collection<Action<?>> actions) {
-		this.actions = new ArrayList<Action<?>>(actions);
+		for (Action<?> a : actions) {
+			this.actions.add(a);
+		}
 	}
 
 	public void addAction(Action<?> action) {
@@ -28,19 +25,14 @@ public class GroupAction extends AbstractAction<Void> {
 	@Override
 	public Void run() {
 		super.run();
-		for (Action<?> a : actions) {
-			a.run();
-		}
+		actions.runAll();
 		return null;
 	}
 
 	@Override
 	public void unrun() {
 		super.unrun();
-		ListIterator<Action<?>> iterator = actions.listIterator(actions.size());
-		while (iterator.hasPrevious()) {
-			iterator.previous().unrun();
-		}
+		actions.unrunAll();
 	}
 
 	@Override
@@ -0,0 +1,168 @@
+package com.leovandriel.reversible.action;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Run of opcode writes, stored in parallel arrays and replayed as a single
+ * action. Each entry takes one slot in each array instead of an action
+ * object, and replay calls straight into the table that recorded it. Like
+ * {@link ActionLog}, the arrays are chunks that double in capacity and are
+ * never copied. A chunk keeps a single table until an entry from another
+ * table arrives, and its key and previous value arrays are only allocated
+ * once an entry needs them.
+ */
+public class OpcodeLog implements Action<Void> {
+	/**
+	 * Approximate bytes retained per entry, including spare capacity.
+	 */
+	public static final int ENTRY_BYTES = 24;
+	private static final int MIN_CHUNK_SIZE = 16;
+	private static final int MAX_CHUNK_SIZE = 1024;
+
+	private static final class Chunk {
+		private final byte[] opcodes;
+		private final int[] indexes;
+		private final Object[] values;
+		private OpcodeTable table;
+		private OpcodeTable[] tables;
+		private Object[] keys;
+		private Object[] previous;
+		private int size;
+
+		Chunk(int capacity) {
+			opcodes = new byte[capacity];
+			indexes = new int[capacity];
+			values = new Object[capacity];
+		}
+
+		private OpcodeTable tableAt(int i) {
+			return tables != null ? tables[i] : table;
+		}
+
+		private Object keyAt(int i) {
+			return keys != null ? keys[i] : null;
+		}
+
+		private Object previousAt(int i) {
+			return previous != null ? previous[i] : null;
+		}
+
+		void run() {
+			for (int i = 0; i < size; i++) {
+				tableAt(i).runOpcode(opcodes[i], indexes[i], keyAt(i), values[i], previousAt(i));
+			}
+		}
+
+		void unrun() {
+			for (int i = size - 1; i >= 0; i--) {
+				tableAt(i).unrunOpcode(opcodes[i], indexes[i], keyAt(i), values[i], previousAt(i));
+			}
+		}
+	}
+
+	/**
+	 * Full chunks, oldest first, or null as long as everything fits in the
+	 * tail.
+	 */
+	private Chunk[] chunks;
+	private int chunkCount;
+	private Chunk tail = new Chunk(MIN_CHUNK_SIZE);
+	private int size;
+
+	public void add(OpcodeTable table, int opcode, int index, Object key, Object value, Object previous) {
+		Chunk chunk = tail;
+		int capacity = chunk.opcodes.length;
+		if (chunk.size == capacity) {
+			pushTail();
+			chunk = tail;
+			capacity = chunk.opcodes.length;
+		}
+		int i = chunk.size++;
+		chunk.opcodes[i] = (byte) opcode;
+		if (chunk.tables != null) {
+			chunk.tables[i] = table;
+		} else if (i == 0) {
+			chunk.table = table;
+		} else if (chunk.table != table) {
+			chunk.tables = new OpcodeTable[capacity];
+			for (int j = 0; j < i; j++) {
+				chunk.tables[j] = chunk.table;
+			}
+			chunk.tables[i] = table;
+		}
+		chunk.indexes[i] = index;
+		chunk.values[i] = value;
+		if (key != null) {
+			if (chunk.keys == null) {
+				chunk.keys = new Object[capacity];
+			}
+			chunk.keys[i] = key;
+		}
+		if (previous != null) {
+			if (chunk.previous == null) {
+				chunk.previous = new Object[capacity];
+			}
+			chunk.previous[i] = previous;
+		}
+		size++;
+	}
+
+	private void pushTail() {
+		if (chunks == null) {
+			chunks = new Chunk[4];
+		} else if (chunkCount == chunks.length) {
+			Chunk[] grown = new Chunk[chunkCount * 2];
+			System.arraycopy(chunks, 0, grown, 0, chunkCount);
+			chunks = grown;
+		}
+		chunks[chunkCount++] = tail;
+		tail = new Chunk(Math.min(tail.opcodes.length * 2, MAX_CHUNK_SIZE));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of entries recorded by each table.
+	 */
+	public Map<OpcodeTable, Integer> countTables() {
+		Map<OpcodeTable, Integer> result = new IdentityHashMap<OpcodeTable, Integer>();
+		for (int c = 0; c <= chunkCount; c++) {
+			Chunk chunk = c < chunkCount ? chunks[c] : tail;
+			for (int i = 0; i < chunk.size; i++) {
+				OpcodeTable table = chunk.tableAt(i);
+				Integer count = result.get(table);
+				result.put(table, Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Runs all entries in the order they were added.
+	 */
+	public Void run() {
+		for (int c = 0; c < chunkCount; c++) {
+			chunks[c].run();
+		}
+		tail.run();
+		return null;
+	}
+
+	/**
+	 * Unruns all entries in the reverse order they were added.
+	 */
+	public void unrun() {
+		tail.unrun();
+		for (int c = chunkCount - 1; c >= 0; c--) {
+			chunks[c].unrun();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + size + ')';
+	}
+}
@@ -0,0 +1,29 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Runner that can also apply and record single writes to an
+ * {@link OpcodeTable}, without an action object per write, or not record
+ * them at all.
+ */
+public interface OpcodeRunner extends ActionRunner {
+	/**
+	 * Returns false while writes should go straight to their targets, without
+	 * running or recording anything. That is only the case for the single
+	 * thread loading the targets, others are rejected with an
+	 * {@link IllegalStateException}.
+	 */
+	public boolean isRecording();
+
+	/**
+	 * Returns whether tables should apply their writes with
+	 * {@link #apply(OpcodeTable, int, int, Object, Object)}.
+	 */
+	public boolean isRecordingOpcodes();
+
+	/**
+	 * Applies the write to the table and records it, as one step with respect
+	 * to other runs and writes. Returns what
+	 * {@link OpcodeTable#applyOpcode(int, int, Object, Object)} returned.
+	 */
+	public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value);
+}
@@ -0,0 +1,31 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Target that records its writes as opcodes in an {@link OpcodeLog} instead
+ * of allocating an action per write, and replays them with a switch on the
+ * opcode.
+ */
+public interface OpcodeTable {
+	/**
+	 * Returned by {@link #applyOpcode(int, int, Object, Object)} for a write
+	 * that left the table unchanged and is not recorded.
+	 */
+	public static final Object UNCHANGED = new Object();
+
+	/**
+	 * Applies a write for the first time and returns the previous value to
+	 * record with it, or {@link #UNCHANGED}. Called by the runner from within
+	 * its guard, so that the write and its record are one step.
+	 */
+	public Object applyOpcode(int opcode, int index, Object key, Object value);
+
+	/**
+	 * Applies a recorded write again.
+	 */
+	public void runOpcode(int opcode, int index, Object key, Object value, Object previous);
+
+	/**
+	 * Reverts a recorded write.
+	 */
+	public void unrunOpcode(int opcode, int index, Object key, Object value, Object previous);
+}
@@ -0,0 +1,9 @@
+package com.leovandriel.reversible.action;
+
+/**
+ * Estimates the number of bytes an action retains after it has run, including
+ * any values it captured for undo.
+ */
+public interface SizeEstimator {
+	public long estimate(Action<?> action);
+}
@@ -1,37 +1,130 @@
 package com.leovandriel.reversible.activity;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
-
 import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionLog;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.action.OpcodeLog;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.action.SizeEstimator;
 
 public class Activity {
-	private List<Action<?>> actions = new LinkedList<Action<?>>();
+	private ActionLog actions = new ActionLog();
 	private boolean hasRun;
+	private SizeEstimator estimator;
+	private long estimatedBytes;
+	private long timestamp;
+	private boolean coalescing;
+	private int packed;
 
 	public Activity() {
 	}
 
+	/**
+	 * Creates an activity that sums the estimated size of every action it
+	 * runs.
+	 */
+	public Activity(SizeEstimator estimator) {
+		this.estimator = estimator;
+	}
+
+	/**
+	 * Creates a done activity from actions that have already run.
+	 */
+	Activity(ActionLog actions) {
+		this.actions = actions;
+		this.hasRun = true;
+	}
+
+	ActionLog getActions() {
+		return actions;
+	}
+
+	/**
+	 * Runs the action and appends it, or merges it into the last action if
+	 * that is {@link Coalescable} and either coalescing is enabled or the
+	 * action is a {@link Continuation}.
+	 */
 	public <T> T run(Action<T> action) {
-		actions.add(action);
 		T result = action.run();
 		hasRun = true;
+		Action<?> last = coalescing || action instanceof Continuation ? actions.getLast() : null;
+		Action<?> merged = last instanceof Coalescable ? ((Coalescable) last).coalesce(action) : null;
+		if (merged != null) {
+			actions.setLast(merged);
+			if (estimator != null) {
+				estimatedBytes += estimator.estimate(merged) - estimator.estimate(last);
+			}
+		} else {
+			actions.add(action);
+			if (estimator != null) {
+				estimatedBytes += estimator.estimate(action);
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * Appends a write the table has already applied. Consecutive writes are
+	 * packed into one {@link OpcodeLog}, which is never coalesced or encoded.
+	 */
+	public void record(OpcodeTable table, int opcode, int index, Object key, Object value, Object previous) {
+		Action<?> last = actions.getLast();
+		OpcodeLog log;
+		if (last instanceof OpcodeLog) {
+			log = (OpcodeLog) last;
+			packed++;
+		} else {
+			log = new OpcodeLog();
+			actions.add(log);
+		}
+		log.add(table, opcode, index, key, value, previous);
+		hasRun = true;
+		if (estimator != null) {
+			estimatedBytes += OpcodeLog.ENTRY_BYTES;
+		}
+	}
+
+	/**
+	 * Enables merging of actions that write to the same location as the action
+	 * before them.
+	 */
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	/**
+	 * Returns the number of actions, counting every entry of an opcode log.
+	 */
 	public int size() {
-		return actions.size();
+		return actions.size() + packed;
+	}
+
+	/**
+	 * Returns the summed estimate of all actions, or 0 if this activity has
+	 * no estimator.
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	/**
+	 * Returns the time in milliseconds this activity was first marked, or 0 if
+	 * it has not been marked.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
 	}
 
 	public void undo() {
 		if (!hasRun) {
 			throw new RuntimeException("Unable to undo an unrun activity");
 		}
-		ListIterator<Action<?>> iterator = actions.listIterator(actions.size());
-		while (iterator.hasPrevious()) {
-			iterator.previous().unrun();
-		}
+		actions.unrunAll();
 		hasRun = false;
 	}
 
@@ -39,12 +132,26 @@ public class Activity {
 		if (hasRun) {
 			throw new RuntimeException("Unable to redo an run activity");
 		}
-		for (Action<?> a : actions) {
-			a.run();
-		}
+		actions.runAll();
 		hasRun = true;
 	}
 
+	/**
+	 * Runs the actions of a done activity again, after its targets have been
+	 * restored to the state before it.
+	 */
+	void replay() {
+		actions.runAll();
+	}
+
+	/**
+	 * Flags this activity done or undone without running it, after its
+	 * targets have been restored to the matching state.
+	 */
+	void setDone(boolean done) {
+		hasRun = done;
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + '(' + actions + ')';
@@ -0,0 +1,243 @@
+package com.leovandriel.reversible.activity;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Bounded stack of activities, stored in a ring buffer. Pushing, popping and
+ * evicting the oldest activity take constant time and allocate nothing once
+ * the buffer has grown to fit. When a push exceeds the maximum size, the
+ * oldest activity is evicted and handed to the {@link EvictionListener}, if
+ * any. Empty (null) activities can be pushed, but are never handed to the
+ * listener.
+ * <p>
+ * An optional {@link RetentionPolicy} is told about every activity that enters
+ * or leaves, and drives {@link #evict(int, long)}.
+ */
+public class ActivityHistory {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Activity[] elements = new Activity[0];
+	/** Index of the oldest activity. */
+	private int head;
+	private int size;
+	/** Number of activities removed from the bottom so far. */
+	private long removed;
+	private int maxSize = Integer.MAX_VALUE;
+	private EvictionListener listener;
+	private RetentionPolicy policy;
+
+	public ActivityHistory() {
+	}
+
+	/**
+	 * Pushes an activity on top, evicting the oldest one if this history is
+	 * full.
+	 */
+	public void push(Activity activity) {
+		if (size == maxSize) {
+			if (size == 0) {
+				removed++;
+				evicted(activity);
+				return;
+			}
+			evicted(removeOldest());
+		}
+		if (size == elements.length) {
+			grow();
+		}
+		elements[index(size)] = activity;
+		size++;
+		if (policy != null) {
+			policy.added(activity);
+		}
+	}
+
+	/**
+	 * Removes and returns the newest activity.
+	 *
+	 * @throws NoSuchElementException
+	 *             if this history is empty
+	 */
+	public Activity pop() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		size--;
+		int index = index(size);
+		Activity result = elements[index];
+		elements[index] = null;
+		if (policy != null) {
+			policy.removed(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the activity at the given depth, where 0 is the newest.
+	 */
+	public Activity get(int depth) {
+		if (depth < 0 || depth >= size) {
+			throw new IndexOutOfBoundsException("Depth: " + depth + ", size: " + size);
+		}
+		return elements[index(size - 1 - depth)];
+	}
+
+	/**
+	 * Replaces the activity at the given depth, where 0 is the newest.
+	 */
+	public void set(int depth, Activity activity) {
+		if (depth < 0 || depth >= size) {
+			throw new IndexOutOfBoundsException("Depth: " + depth + ", size: " + size);
+		}
+		int index = index(size - 1 - depth);
+		if (policy != null) {
+			policy.removed(elements[index]);
+			policy.added(activity);
+		}
+		elements[index] = activity;
+	}
+
+	/**
+	 * Removes and returns the oldest activity, without notifying the listener.
+	 *
+	 * @throws NoSuchElementException
+	 *             if this history is empty
+	 */
+	public Activity removeOldest() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		Activity result = elements[head];
+		elements[head] = null;
+		head = index(1);
+		size--;
+		removed++;
+		if (policy != null) {
+			policy.removed(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Evicts the oldest activities until at most <code>size</code> are left.
+	 */
+	public void trim(int size) {
+		while (this.size > size) {
+			evicted(removeOldest());
+		}
+	}
+
+	/**
+	 * Evicts oldest activities as long as the retention policy is exceeded,
+	 * but no more than <code>max</code>, so that a large backlog is worked off
+	 * over several calls.
+	 *
+	 * @param now
+	 *            current time in milliseconds
+	 * @return the number of evicted activities
+	 */
+	public int evict(int max, long now) {
+		int count = 0;
+		if (policy != null) {
+			while (count < max && size > 0 && policy.isExceeded(elements[head], now)) {
+				evicted(removeOldest());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Evicts all activities, oldest first.
+	 */
+	public void clear() {
+		trim(0);
+		head = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of activities removed as the oldest so far, which
+	 * numbers the activities that have ever been pushed: the oldest one left
+	 * is number <code>getRemovedCount()</code>.
+	 */
+	public long getRemovedCount() {
+		return removed;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Limits the number of activities, evicting the oldest ones right away if
+	 * needed.
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Negative max size: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		trim(maxSize);
+	}
+
+	/**
+	 * Sets the retention policy and reports all current activities to it.
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy) {
+		this.policy = policy;
+		if (policy != null) {
+			for (int i = 0; i < size; i++) {
+				policy.added(elements[index(i)]);
+			}
+		}
+	}
+
+	public void setEvictionListener(EvictionListener listener) {
+		this.listener = listener;
+	}
+
+	private void evicted(Activity activity) {
+		if (listener != null && activity != null) {
+			listener.evicted(activity);
+		}
+	}
+
+	private int index(int offset) {
+		int result = head + offset;
+		return result < elements.length ? result : result - elements.length;
+	}
+
+	private void grow() {
+		int capacity = elements.length == 0 ? INITIAL_CAPACITY : elements.length * 2;
+		if (capacity < 0 || capacity > maxSize) {
+			capacity = maxSize;
+		}
+		Activity[] grown = new Activity[capacity];
+		int first = Math.min(size, elements.length - head);
+		System.arraycopy(elements, head, grown, 0, first);
+		System.arraycopy(elements, 0, grown, first, size - first);
+		elements = grown;
+		head = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(get(i));
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -1,25 +1,154 @@
 package com.leovandriel.reversible.activity;
 
-import java.util.LinkedList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.leovandriel.reversible.action.Action;
-import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.action.SizeEstimator;
 
-public class ActivityManager implements ActionRunner {
-	private LinkedList<Activity> undoActivities = new LinkedList<Activity>();
-	private LinkedList<Activity> redoActivities = new LinkedList<Activity>();
+public class ActivityManager implements OpcodeRunner {
+	private ActivityHistory undoActivities = new ActivityHistory();
+	private ActivityHistory redoActivities = new ActivityHistory();
 	private Activity current;
+	private SizeEstimator sizeEstimator;
+	private boolean coalescing;
+	private boolean recordingOpcodes;
+	private volatile boolean recording = true;
+	private volatile Thread loader;
+	private EvictionListener evictionListener;
+	private CopyOnWriteArrayList<ActivityMonitor> monitors = new CopyOnWriteArrayList<ActivityMonitor>();
+	private ActivitySpill spill;
+	private int spillDepth;
+
+	public ActivityManager() {
+		EvictionListener listener = new EvictionListener() {
+			public void evicted(Activity activity) {
+				if (activity instanceof SpilledActivity) {
+					((SpilledActivity) activity).release();
+				}
+				if (evictionListener != null) {
+					evictionListener.evicted(activity);
+				}
+			}
+		};
+		undoActivities.setEvictionListener(listener);
+		redoActivities.setEvictionListener(listener);
+	}
 
 	/**
 	 * Should only be called by {@link #run(Action)} to ensure synchronous
 	 * unnested calls.
 	 */
 	public <T> T run(Action<T> action) {
+		if (!isRecording()) {
+			return action.run();
+		}
+		if (current != null) {
+			return current.run(action);
+		}
+		Activity activity = startActivity();
+		T result = activity.run(action);
+		redoActivities.clear();
+		current = activity;
+		return result;
+	}
+
+	/**
+	 * Creates a new current activity. The caller clears the redo history once
+	 * the first write has succeeded, so a failing action leaves it intact.
+	 */
+	private Activity startActivity() {
+		Activity result = new Activity(sizeEstimator);
+		result.setCoalescing(coalescing);
+		return result;
+	}
+
+	/**
+	 * Applies a write to the table and records it in the current activity,
+	 * unless it left the table unchanged. If the write throws, nothing is
+	 * recorded and the redo history is kept.
+	 */
+	public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		if (!isRecording()) {
+			return table.applyOpcode(opcode, index, key, value);
+		}
+		Object previous = table.applyOpcode(opcode, index, key, value);
+		if (previous == OpcodeTable.UNCHANGED) {
+			return previous;
+		}
 		if (current == null) {
 			redoActivities.clear();
-			current = new Activity();
+			current = startActivity();
+		}
+		current.record(table, opcode, index, key, value, previous);
+		return previous;
+	}
+
+	/**
+	 * Returns false while the calling thread runs an unrecorded task.
+	 *
+	 * @throws IllegalStateException
+	 *             if another thread is running one
+	 */
+	public boolean isRecording() {
+		if (recording) {
+			return true;
+		}
+		if (Thread.currentThread() != loader) {
+			throw new IllegalStateException("Cannot write while another thread runs unrecorded.");
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the task without recording, for loading data at the speed of the
+	 * targets. Proxies write straight to their targets and other actions run
+	 * without being kept. The targets then no longer match the states that
+	 * history leads back to, so the current activity and the undo and redo
+	 * histories are discarded before the task runs.
+	 * <p>
+	 * The targets are written without any locking, so the task must be their
+	 * single writer. Writes through this manager from other threads are
+	 * rejected until it returns.
+	 */
+	public void runUnrecorded(Runnable task) {
+		if (!isRecording()) {
+			task.run();
+			return;
+		}
+		current = null;
+		undoActivities.clear();
+		redoActivities.clear();
+		loader = Thread.currentThread();
+		recording = false;
+		try {
+			task.run();
+		} finally {
+			recording = true;
+			loader = null;
 		}
-		return current.run(action);
+	}
+
+	public boolean isRecordingOpcodes() {
+		return recordingOpcodes;
+	}
+
+	/**
+	 * Lets proxies record their single element writes as opcodes instead of
+	 * running an action for each. Other writes and custom actions still run
+	 * as actions, in order with the opcodes.
+	 */
+	public void setRecordingOpcodes(boolean recordingOpcodes) {
+		this.recordingOpcodes = recordingOpcodes;
+	}
+
+	/**
+	 * Returns the activity that actions are run in, or null if none ran since
+	 * the last mark, undo or redo.
+	 */
+	public Activity getCurrentActivity() {
+		return current;
 	}
 
 	/**
@@ -27,8 +156,18 @@ public class ActivityManager implements ActionRunner {
 	 * current into history.
 	 */
 	public void mark() {
+		if (current != null && current.getTimestamp() == 0) {
+			current.setTimestamp(System.currentTimeMillis());
+		}
 		undoActivities.push(current);
 		current = null;
+		if (spill != null && undoActivities.size() > spillDepth) {
+			Activity activity = undoActivities.get(spillDepth);
+			Activity spilled = spill.spill(activity);
+			if (spilled != activity) {
+				undoActivities.set(spillDepth, spilled);
+			}
+		}
 	}
 
 	public void undo() {
@@ -60,17 +199,97 @@ public class ActivityManager implements ActionRunner {
 	}
 
 	public void trimUndo(int size) {
-		while (undoActivities.size() > size) {
-			undoActivities.removeLast();
-		}
+		long start = monitorStart();
+		int before = undoActivities.size();
+		undoActivities.trim(size);
+		trimmed(before - undoActivities.size(), start);
 	}
 
 	public void trimRedo(int size) {
-		while (redoActivities.size() > size) {
-			redoActivities.removeLast();
+		long start = monitorStart();
+		int before = redoActivities.size();
+		redoActivities.trim(size);
+		trimmed(before - redoActivities.size(), start);
+	}
+
+	/**
+	 * Returns the start time for {@link #trimmed(int, long)}, or 0 without
+	 * monitors.
+	 */
+	protected long monitorStart() {
+		return monitors.isEmpty() ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Reports evicted activities to the monitors, if there are any.
+	 */
+	protected void trimmed(int count, long start) {
+		if (count > 0 && !monitors.isEmpty()) {
+			long nanos = System.nanoTime() - start;
+			for (ActivityMonitor monitor : monitors) {
+				monitor.trimmed(count, nanos);
+			}
 		}
 	}
 
+	/**
+	 * Adds a monitor that receives timings of trimming and eviction.
+	 */
+	public void addActivityMonitor(ActivityMonitor monitor) {
+		monitors.add(monitor);
+	}
+
+	public void removeActivityMonitor(ActivityMonitor monitor) {
+		monitors.remove(monitor);
+	}
+
+	/**
+	 * Sets the listener that receives activities dropped from either the undo
+	 * or the redo history.
+	 */
+	public void setEvictionListener(EvictionListener listener) {
+		this.evictionListener = listener;
+	}
+
+	/**
+	 * Moves activities that are more than <code>depth</code> marks old out of
+	 * the heap into the spill, one per mark. They are loaded back when undone.
+	 * Activities holding actions the spill cannot encode stay on the heap.
+	 */
+	public void setSpill(ActivitySpill spill, int depth) {
+		this.spill = spill;
+		this.spillDepth = depth;
+	}
+
+	/**
+	 * Sets the estimator used to size activities started from now on.
+	 */
+	public void setSizeEstimator(SizeEstimator estimator) {
+		this.sizeEstimator = estimator;
+	}
+
+	public SizeEstimator getSizeEstimator() {
+		return sizeEstimator;
+	}
+
+	/**
+	 * Enables coalescing in activities started from now on, merging repeated
+	 * writes to the same location into a single action.
+	 *
+	 * @see com.leovandriel.reversible.action.Coalescable
+	 */
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	protected ActivityHistory getUndoHistory() {
+		return undoActivities;
+	}
+
+	protected ActivityHistory getRedoHistory() {
+		return redoActivities;
+	}
+
 	public int getUndoSize() {
 		return undoActivities.size() + (current != null ? 1 : 0);
 	}
@@ -79,6 +298,25 @@ public class ActivityManager implements ActionRunner {
 		return redoActivities.size();
 	}
 
+	/**
+	 * Returns the activity the next undo reverts, or null if it is empty or
+	 * there is none.
+	 */
+	public Activity getNextUndo() {
+		if (current != null) {
+			return current;
+		}
+		return undoActivities.isEmpty() ? null : undoActivities.get(0);
+	}
+
+	/**
+	 * Returns the activity the next redo reapplies, or null if it is empty or
+	 * there is none.
+	 */
+	public Activity getNextRedo() {
+		return redoActivities.isEmpty() ? null : redoActivities.get(0);
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + '(' + undoActivities.size()
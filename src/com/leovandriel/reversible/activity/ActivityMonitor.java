@@ -0,0 +1,12 @@
+package com.leovandriel.reversible.activity;
+
+/**
+ * Receives timings of history maintenance from an {@link ActivityManager}.
+ */
+public interface ActivityMonitor {
+	/**
+	 * Called after activities were evicted by trimming or by the retention
+	 * policy, with the number evicted and the time it took in nanoseconds.
+	 */
+	public void trimmed(int count, long nanos);
+}
@@ -0,0 +1,104 @@
+package com.leovandriel.reversible.activity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionLog;
+import com.leovandriel.reversible.io.ActionCodec;
+import com.leovandriel.reversible.io.MappedFile;
+
+/**
+ * Off-heap tier for old activities. Activities are encoded with an
+ * {@link ActionCodec} and appended to a memory-mapped segment file, leaving a
+ * small {@link SpilledActivity} in history. The file is rewound once no
+ * spilled activity is referenced by history anymore.
+ */
+public class ActivitySpill {
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	private MappedFile file;
+	private ActionCodec codec;
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private DataOutputStream out = new DataOutputStream(buffer);
+	private int live;
+
+	public ActivitySpill(File file, ActionCodec codec) throws IOException {
+		this(file, DEFAULT_SEGMENT_SIZE, codec);
+	}
+
+	public ActivitySpill(File file, int segmentSize, ActionCodec codec) throws IOException {
+		this.file = new MappedFile(file, segmentSize);
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns a spilled placeholder for a done activity, or the activity itself
+	 * if it cannot be encoded. An already spilled activity is unloaded.
+	 */
+	public Activity spill(Activity activity) {
+		if (activity == null) {
+			return null;
+		}
+		if (activity instanceof SpilledActivity) {
+			((SpilledActivity) activity).unload();
+			return activity;
+		}
+		ActionLog actions = activity.getActions();
+		for (Action<?> a : actions) {
+			if (!codec.canEncode(a)) {
+				return activity;
+			}
+		}
+		try {
+			buffer.reset();
+			for (Action<?> a : actions) {
+				codec.write(out, a);
+			}
+			out.flush();
+			byte[] data = buffer.toByteArray();
+			long position = file.append(data, 0, data.length);
+			live++;
+			return new SpilledActivity(this, position, data.length, actions.size(), activity.getTimestamp());
+		} catch (IOException e) {
+			return activity;
+		}
+	}
+
+	Activity load(SpilledActivity spilled) {
+		try {
+			byte[] data = new byte[spilled.getLength()];
+			file.read(spilled.getPosition(), data, data.length);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+			ActionLog actions = new ActionLog();
+			for (int i = spilled.size(); i > 0; i--) {
+				actions.add(codec.read(in));
+			}
+			return new Activity(actions);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load spilled activity", e);
+		}
+	}
+
+	void release() {
+		live--;
+		if (live == 0) {
+			file.reset();
+		}
+	}
+
+	/**
+	 * Returns the number of spilled activities still referenced by history.
+	 */
+	public int getLiveCount() {
+		return live;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -2,40 +2,93 @@ package com.leovandriel.reversible.activity;
 
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.AdvancedRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
 
 public class AdvancedManager extends ActivityManager implements AdvancedRunner {
 	private boolean running;
-	private int maxUndoSize = Integer.MAX_VALUE;
-	private int maxRedoSize = Integer.MAX_VALUE;
+	private int evictionBatch = 16;
 
 	/**
 	 * Runs the provided action in the current activity.
 	 */
 	@Override
 	public synchronized <T> T run(Action<T> action) {
+		return runGuarded(action);
+	}
+
+	/**
+	 * Runs the action, rejecting nested runs. If the action throws, it is not
+	 * recorded and the manager remains usable.
+	 */
+	protected <T> T runGuarded(Action<T> action) {
 		if (running) {
 			throw new RuntimeException("Cannot run an action within an action.");
 		}
 		running = true;
-		T result = super.run(action);
-		running = false;
-		return result;
+		try {
+			return super.run(action);
+		} finally {
+			running = false;
+		}
+	}
+
+	/**
+	 * Applies and records the write under the same lock as actions, so writes
+	 * are recorded in the order they were made.
+	 */
+	@Override
+	public synchronized Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		return applyGuarded(table, opcode, index, key, value);
+	}
+
+	/**
+	 * Applies and records the write, rejecting writes made from within an
+	 * action before the table is touched.
+	 */
+	protected Object applyGuarded(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		if (running) {
+			throw new RuntimeException("Cannot record within an action.");
+		}
+		return super.apply(table, opcode, index, key, value);
 	}
 
+	/**
+	 * Runs the task without recording, holding the lock for the whole task
+	 * instead of once per write.
+	 */
 	@Override
-	public void mark() {
+	public synchronized void runUnrecorded(Runnable task) {
+		runUnrecordedGuarded(task);
+	}
+
+	/**
+	 * Runs the task without recording, rejecting calls from within an action.
+	 */
+	protected void runUnrecordedGuarded(Runnable task) {
+		if (running) {
+			throw new RuntimeException("Cannot suspend recording within an action.");
+		}
+		super.runUnrecorded(task);
+	}
+
+	/**
+	 * Marks and then evicts old activities according to the retention policy.
+	 * Redoing marks as well.
+	 */
+	@Override
+	public synchronized void mark() {
 		super.mark();
-		trimUndo(maxUndoSize);
+		long start = monitorStart();
+		trimmed(getUndoHistory().evict(evictionBatch, System.currentTimeMillis()), start);
 	}
 
 	@Override
-	public void undo() {
+	public synchronized void undo() {
 		if (!canUndo()) {
 			throw new RuntimeException(
 					"Unable to undo because there are no done activities");
 		}
 		super.undo();
-		trimRedo(maxRedoSize);
 	}
 
 	/**
@@ -44,16 +97,14 @@ public class AdvancedManager extends ActivityManager implements AdvancedRunner {
 	 * @param count
 	 *            <= {@link #getUndoSize()}
 	 */
-	public void undo(int count) {
+	public synchronized void undo(int count) {
 		for (; count > 0; count--) {
 			super.undo();
 		}
-		trimRedo(maxRedoSize);
 	}
 
 	public void undoAll() {
 		undo(getUndoSize());
-		trimRedo(maxRedoSize);
 	}
 
 	/**
@@ -61,13 +112,12 @@ public class AdvancedManager extends ActivityManager implements AdvancedRunner {
 	 * future, which can be testen using {@link #canRedo()}.
 	 */
 	@Override
-	public void redo() {
+	public synchronized void redo() {
 		if (!canRedo()) {
 			throw new RuntimeException(
 					"Unable to redo because there is no undone activities");
 		}
 		super.redo();
-		trimUndo(maxUndoSize);
 	}
 
 	/**
@@ -76,24 +126,65 @@ public class AdvancedManager extends ActivityManager implements AdvancedRunner {
 	 * @param count
 	 *            <= {@link #getRedoSize()}
 	 */
-	public void redo(int count) {
+	public synchronized void redo(int count) {
 		for (; count > 0; count--) {
 			super.redo();
 		}
-		trimUndo(maxUndoSize);
 	}
 
 	public void redoAll() {
 		redo(getRedoSize());
-		trimUndo(maxUndoSize);
 	}
 
+	@Override
+	public synchronized void trimUndo(int size) {
+		super.trimUndo(size);
+	}
+
+	@Override
+	public synchronized void trimRedo(int size) {
+		super.trimRedo(size);
+	}
+
+	/**
+	 * Runs the task excluding runs, marks, undos and redos, for inspecting the
+	 * histories from another thread.
+	 */
+	protected synchronized void runExclusive(Runnable task) {
+		task.run();
+	}
+
+	/**
+	 * Bounds the undo history; marking or redoing beyond it evicts the oldest
+	 * activity in constant time.
+	 */
 	public void setMaxUndoSize(int size) {
-		this.maxUndoSize = size;
+		getUndoHistory().setMaxSize(size);
 	}
 
+	/**
+	 * Bounds the redo history; undoing beyond it evicts the oldest activity in
+	 * constant time.
+	 */
 	public void setMaxRedoSize(int size) {
-		this.maxRedoSize = size;
+		getRedoHistory().setMaxSize(size);
+	}
+
+	/**
+	 * Bounds the undo history by a retention policy, e.g. a
+	 * {@link ByteBudgetPolicy} or {@link MaxAgePolicy}. Policies are enforced
+	 * when marking, never when running actions.
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy) {
+		getUndoHistory().setRetentionPolicy(policy);
+	}
+
+	/**
+	 * Sets the maximum number of activities evicted by the retention policy
+	 * per mark, spreading the eviction of a large backlog over several marks.
+	 */
+	public void setEvictionBatch(int evictionBatch) {
+		this.evictionBatch = evictionBatch;
 	}
 
 	public boolean isRunningAction() {
@@ -0,0 +1,40 @@
+package com.leovandriel.reversible.activity;
+
+/**
+ * Evicts activities while the estimated bytes retained by the history exceed
+ * a budget. Sizes come from the {@link com.leovandriel.reversible.action.SizeEstimator}
+ * set on the manager; without one all activities count as zero bytes.
+ */
+public class ByteBudgetPolicy implements RetentionPolicy {
+	private long maxBytes;
+	private long bytes;
+
+	public ByteBudgetPolicy(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public void added(Activity activity) {
+		if (activity != null) {
+			bytes += activity.getEstimatedBytes();
+		}
+	}
+
+	public void removed(Activity activity) {
+		if (activity != null) {
+			bytes -= activity.getEstimatedBytes();
+		}
+	}
+
+	public boolean isExceeded(Activity oldest, long now) {
+		return bytes > maxBytes;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + bytes + '/' + maxBytes + ')';
+	}
+}
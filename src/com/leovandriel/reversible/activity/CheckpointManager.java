@@ -0,0 +1,409 @@
+package com.leovandriel.reversible.activity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.OpcodeLog;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.io.EncodableAction;
+
+/**
+ * Manager that periodically snapshots its registered targets, so that long
+ * jumps through history restore the nearest checkpoint and replay only the
+ * activities after it, instead of undoing or redoing every activity on the
+ * way.
+ * <p>
+ * Marked states are numbered by version: every mark or redo adds one and
+ * every undo subtracts one. {@link #undoTo(long)} and {@link #redoTo(long)}
+ * compare the cost of replaying, counted in actions, with the cost of
+ * restoring a checkpoint, counted in snapshot elements weighted by
+ * {@link #setRestoreCost(double)}, and take the cheaper path.
+ * <p>
+ * A checkpoint restores only the registered targets. Jumps therefore restore
+ * only when every action in the activities they skip or replay was recorded
+ * by a registered target, i.e. an {@link EncodableAction} decoded by it or an
+ * opcode of it. Activities with other actions, such as a
+ * {@link com.leovandriel.reversible.action.GroupAction}, or that are spilled,
+ * are undone and redone one by one instead.
+ * <p>
+ * Every checkpoint copies all registered targets, so none are taken until an
+ * interval is set, and at most {@link #setMaxCheckpoints(int)} are kept.
+ */
+public class CheckpointManager extends AdvancedManager {
+	private List<Checkpointable> targets = new ArrayList<Checkpointable>();
+	private TreeMap<Long, Checkpoint> checkpoints = new TreeMap<Long, Checkpoint>();
+	private int activityInterval;
+	private int actionInterval;
+	private int maxCheckpoints = 16;
+	private double restoreCost = 0.5;
+	private int activitiesSince;
+	private long actionsSince;
+
+	private static class Checkpoint {
+		private Object[] snapshots;
+		private long elements;
+
+		public Checkpoint(Object[] snapshots, long elements) {
+			this.snapshots = snapshots;
+			this.elements = elements;
+		}
+	}
+
+	/**
+	 * Adds a target to all future checkpoints. Existing checkpoints lack the
+	 * new target and are dropped. Targets that are not registered are never
+	 * restored, so activities that write to them are undone and redone one by
+	 * one.
+	 */
+	public void register(Checkpointable target) {
+		targets.add(target);
+		checkpoints.clear();
+	}
+
+	/**
+	 * Runs the action. Running after an undo discards the redo history, and
+	 * with it all checkpoints ahead of the current version.
+	 */
+	@Override
+	protected <T> T runGuarded(Action<T> action) {
+		boolean redoable = !getRedoHistory().isEmpty();
+		T result = super.runGuarded(action);
+		if (redoable && !checkpoints.isEmpty()) {
+			checkpoints.tailMap(Long.valueOf(getVersion() + 1)).clear();
+		}
+		return result;
+	}
+
+	@Override
+	protected Object applyGuarded(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		boolean redoable = !getRedoHistory().isEmpty();
+		Object result = super.applyGuarded(table, opcode, index, key, value);
+		if (redoable && getRedoHistory().isEmpty() && !checkpoints.isEmpty()) {
+			checkpoints.tailMap(Long.valueOf(getVersion() + 1)).clear();
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the task without recording. The checkpoints no longer match the
+	 * targets and are dropped.
+	 */
+	@Override
+	protected void runUnrecordedGuarded(Runnable task) {
+		checkpoints.clear();
+		activitiesSince = 0;
+		actionsSince = 0;
+		super.runUnrecordedGuarded(task);
+	}
+
+	/**
+	 * Marks and takes a checkpoint once the activity or action interval has
+	 * passed.
+	 */
+	@Override
+	public synchronized void mark() {
+		super.mark();
+		ActivityHistory undo = getUndoHistory();
+		activitiesSince++;
+		if (!undo.isEmpty() && undo.get(0) != null) {
+			actionsSince += undo.get(0).size();
+		}
+		if ((activityInterval > 0 && activitiesSince >= activityInterval)
+				|| (actionInterval > 0 && actionsSince >= actionInterval)) {
+			checkpoint();
+		}
+		if (!checkpoints.isEmpty() && checkpoints.firstKey().longValue() < undo.getRemovedCount()) {
+			checkpoints.headMap(Long.valueOf(undo.getRemovedCount())).clear();
+		}
+	}
+
+	/**
+	 * Snapshots all registered targets at the current version.
+	 *
+	 * @throws IllegalStateException
+	 *             if there are unmarked actions
+	 */
+	public synchronized void checkpoint() {
+		if (hasUnmarked()) {
+			throw new IllegalStateException("Unable to checkpoint unmarked actions");
+		}
+		Object[] snapshots = new Object[targets.size()];
+		long elements = 0;
+		for (int i = 0; i < snapshots.length; i++) {
+			Checkpointable target = targets.get(i);
+			snapshots[i] = target.snapshot();
+			elements += target.size();
+		}
+		checkpoints.put(Long.valueOf(getVersion()), new Checkpoint(snapshots, elements));
+		while (maxCheckpoints > 0 && checkpoints.size() > maxCheckpoints) {
+			checkpoints.remove(checkpoints.firstKey());
+		}
+		activitiesSince = 0;
+		actionsSince = 0;
+	}
+
+	private void restore(Checkpoint checkpoint) {
+		for (int i = 0; i < checkpoint.snapshots.length; i++) {
+			targets.get(i).restore(checkpoint.snapshots[i]);
+		}
+	}
+
+	/**
+	 * Returns true if restoring the registered targets covers every action of
+	 * <code>count</code> activities starting at the given depth.
+	 */
+	private boolean isRestorable(ActivityHistory history, int depth, int count) {
+		for (int i = depth, end = depth + count; i < end; i++) {
+			Activity activity = history.get(i);
+			if (activity instanceof SpilledActivity) {
+				return false;
+			}
+			if (activity != null) {
+				for (Action<?> action : activity.getActions()) {
+					if (!isRestorable(action)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isRestorable(Action<?> action) {
+		if (action instanceof OpcodeLog) {
+			for (OpcodeTable table : ((OpcodeLog) action).countTables().keySet()) {
+				if (!isRegistered(table)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return action instanceof EncodableAction && isRegistered(((EncodableAction) action).getDecoder());
+	}
+
+	private boolean isRegistered(Object target) {
+		for (Checkpointable registered : targets) {
+			if (registered == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasUnmarked() {
+		return getUndoSize() > getUndoHistory().size();
+	}
+
+	/**
+	 * Returns the version of the last marked state.
+	 */
+	public long getVersion() {
+		ActivityHistory undo = getUndoHistory();
+		return undo.getRemovedCount() + undo.size();
+	}
+
+	/**
+	 * Returns the lowest version that can still be undone to.
+	 */
+	public long getOldestVersion() {
+		return getUndoHistory().getRemovedCount();
+	}
+
+	/**
+	 * Returns the highest version that can still be redone to.
+	 */
+	public long getNewestVersion() {
+		return getVersion() + getRedoHistory().size();
+	}
+
+	/**
+	 * Sums the sizes of <code>count</code> activities starting at the given
+	 * depth.
+	 */
+	private static long cost(ActivityHistory history, int depth, int count) {
+		long result = 0;
+		for (int i = depth, end = depth + count; i < end; i++) {
+			Activity activity = history.get(i);
+			if (activity != null) {
+				result += activity.size();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the version of the latest checkpoint at or before the given
+	 * version, or null if there is none.
+	 */
+	private Long floorKey(long version) {
+		SortedMap<Long, Checkpoint> head = checkpoints.headMap(Long.valueOf(version + 1));
+		return head.isEmpty() ? null : head.lastKey();
+	}
+
+	private double cost(Checkpoint checkpoint) {
+		return checkpoint.elements * restoreCost;
+	}
+
+	/**
+	 * Undoes until the given version, marking unmarked actions first.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the version is not between {@link #getOldestVersion()}
+	 *             and {@link #getVersion()}
+	 */
+	public synchronized void undoTo(long version) {
+		if (hasUnmarked()) {
+			mark();
+		}
+		long now = getVersion();
+		if (version < getOldestVersion() || version > now) {
+			throw new IllegalArgumentException("Unable to undo to version " + version + ", range is "
+					+ getOldestVersion() + " to " + now);
+		}
+		int count = (int) (now - version);
+		ActivityHistory undo = getUndoHistory();
+		Long base = floorKey(version);
+		if (base != null && base.longValue() >= getOldestVersion()) {
+			Checkpoint checkpoint = checkpoints.get(base);
+			int replays = (int) (version - base.longValue());
+			if (cost(checkpoint) + cost(undo, count, replays) < cost(undo, 0, count)
+					&& isRestorable(undo, 0, count + replays)) {
+				restore(checkpoint);
+				for (int depth = count + replays - 1; depth >= count; depth--) {
+					Activity activity = undo.get(depth);
+					if (activity != null) {
+						activity.replay();
+					}
+				}
+				ActivityHistory redo = getRedoHistory();
+				for (int i = 0; i < count; i++) {
+					Activity activity = undo.pop();
+					if (activity != null) {
+						activity.setDone(false);
+					}
+					redo.push(activity);
+				}
+				return;
+			}
+		}
+		undo(count);
+	}
+
+	/**
+	 * Redoes until the given version.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the version is not between {@link #getVersion()} and
+	 *             {@link #getNewestVersion()}
+	 */
+	public synchronized void redoTo(long version) {
+		long now = getVersion();
+		if (hasUnmarked() || version < now || version > getNewestVersion()) {
+			throw new IllegalArgumentException("Unable to redo to version " + version + ", range is " + now
+					+ " to " + getNewestVersion());
+		}
+		int count = (int) (version - now);
+		ActivityHistory redo = getRedoHistory();
+		Long base = floorKey(version);
+		if (base != null && base.longValue() > now) {
+			Checkpoint checkpoint = checkpoints.get(base);
+			int skips = (int) (base.longValue() - now);
+			if (cost(checkpoint) + cost(redo, skips, count - skips) < cost(redo, 0, count)
+					&& isRestorable(redo, 0, skips)) {
+				restore(checkpoint);
+				ActivityHistory undo = getUndoHistory();
+				for (int i = 0; i < skips; i++) {
+					Activity activity = redo.pop();
+					if (activity != null) {
+						activity.setDone(true);
+					}
+					undo.push(activity);
+				}
+				count -= skips;
+			}
+		}
+		redo(count);
+	}
+
+	/**
+	 * Undoes all activities marked after the given time, finding them by
+	 * binary search over the activity timestamps.
+	 *
+	 * @param timestamp
+	 *            time in milliseconds
+	 */
+	public synchronized void undoToTime(long timestamp) {
+		if (hasUnmarked()) {
+			mark();
+		}
+		ActivityHistory undo = getUndoHistory();
+		int low = 0;
+		int high = undo.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (timestampAt(undo, mid) > timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		undoTo(getVersion() - low);
+	}
+
+	/**
+	 * Returns the timestamp of the activity at the given depth, or of the
+	 * first older one if it is empty.
+	 */
+	private static long timestampAt(ActivityHistory history, int depth) {
+		for (int i = depth; i < history.size(); i++) {
+			Activity activity = history.get(i);
+			if (activity != null) {
+				return activity.getTimestamp();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Sets the number of marks between checkpoints, or 0 to not count marks.
+	 * Defaults to 0.
+	 */
+	public void setActivityInterval(int activityInterval) {
+		this.activityInterval = activityInterval;
+	}
+
+	/**
+	 * Sets the number of marked actions between checkpoints, or 0 to not count
+	 * actions. Defaults to 0.
+	 */
+	public void setActionInterval(int actionInterval) {
+		this.actionInterval = actionInterval;
+	}
+
+	/**
+	 * Sets the maximum number of checkpoints kept, evicting the oldest first,
+	 * or 0 for no limit. Defaults to 16.
+	 */
+	public synchronized void setMaxCheckpoints(int maxCheckpoints) {
+		this.maxCheckpoints = maxCheckpoints;
+		while (maxCheckpoints > 0 && checkpoints.size() > maxCheckpoints) {
+			checkpoints.remove(checkpoints.firstKey());
+		}
+	}
+
+	/**
+	 * Sets the cost of restoring one snapshot element, relative to running one
+	 * action. Defaults to 0.5.
+	 */
+	public void setRestoreCost(double restoreCost) {
+		this.restoreCost = restoreCost;
+	}
+
+	public int getCheckpointCount() {
+		return checkpoints.size();
+	}
+}
@@ -0,0 +1,40 @@
+package com.leovandriel.reversible.activity;
+
+import java.util.Arrays;
+
+/**
+ * Combines policies, evicting as soon as any one of them is exceeded.
+ */
+public class CompositePolicy implements RetentionPolicy {
+	private RetentionPolicy[] policies;
+
+	public CompositePolicy(RetentionPolicy... policies) {
+		this.policies = policies.clone();
+	}
+
+	public void added(Activity activity) {
+		for (RetentionPolicy p : policies) {
+			p.added(activity);
+		}
+	}
+
+	public void removed(Activity activity) {
+		for (RetentionPolicy p : policies) {
+			p.removed(activity);
+		}
+	}
+
+	public boolean isExceeded(Activity oldest, long now) {
+		for (RetentionPolicy p : policies) {
+			if (p.isExceeded(oldest, now)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + Arrays.asList(policies);
+	}
+}
@@ -0,0 +1,98 @@
+package com.leovandriel.reversible.activity;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.OpcodeTable;
+
+/**
+ * Manager for a single writer thread. Instead of synchronizing every run, it
+ * checks that actions, marks, undos and redos come from the owner thread,
+ * which is the thread that created the manager unless specified otherwise.
+ */
+public class ConfinedManager extends AdvancedManager {
+	private final Thread owner;
+
+	public ConfinedManager() {
+		this(Thread.currentThread());
+	}
+
+	public ConfinedManager(Thread owner) {
+		this.owner = owner;
+	}
+
+	private void checkOwner() {
+		if (Thread.currentThread() != owner) {
+			throw new IllegalStateException("Manager is confined to " + owner.getName() + ", not "
+					+ Thread.currentThread().getName());
+		}
+	}
+
+	/**
+	 * Runs the provided action in the current activity, without locking.
+	 */
+	@Override
+	public <T> T run(Action<T> action) {
+		checkOwner();
+		return runGuarded(action);
+	}
+
+	/**
+	 * Applies and records the write in the current activity, without locking.
+	 */
+	@Override
+	public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		checkOwner();
+		return applyGuarded(table, opcode, index, key, value);
+	}
+
+	/**
+	 * Runs the task without recording, and without locking.
+	 */
+	@Override
+	public void runUnrecorded(Runnable task) {
+		checkOwner();
+		runUnrecordedGuarded(task);
+	}
+
+	@Override
+	public void mark() {
+		checkOwner();
+		super.mark();
+	}
+
+	@Override
+	public void undo() {
+		checkOwner();
+		super.undo();
+	}
+
+	@Override
+	public void undo(int count) {
+		checkOwner();
+		super.undo(count);
+	}
+
+	@Override
+	public void redo() {
+		checkOwner();
+		super.redo();
+	}
+
+	@Override
+	public void redo(int count) {
+		checkOwner();
+		super.redo(count);
+	}
+
+	/**
+	 * Runs the task on the owner thread, which excludes everything else.
+	 */
+	@Override
+	protected void runExclusive(Runnable task) {
+		checkOwner();
+		task.run();
+	}
+
+	public Thread getOwner() {
+		return owner;
+	}
+}
@@ -0,0 +1,9 @@
+package com.leovandriel.reversible.activity;
+
+/**
+ * Receives activities that are dropped from an {@link ActivityHistory}, either
+ * because the history reached its maximum size or because it was cleared.
+ */
+public interface EvictionListener {
+	public void evicted(Activity activity);
+}
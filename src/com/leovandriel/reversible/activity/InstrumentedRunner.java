@@ -0,0 +1,340 @@
+package com.leovandriel.reversible.activity;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.AdvancedRunner;
+import com.leovandriel.reversible.action.FixedSizeEstimator;
+import com.leovandriel.reversible.action.OpcodeLog;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.action.SizeEstimator;
+import com.leovandriel.reversible.io.EncodableAction;
+
+/**
+ * Runner that measures the actions, marks, undos and redos of a manager and
+ * exposes them as an {@link InstrumentedRunnerMBean}. Counting uses atomic
+ * counters and fixed histograms, so it takes no lock and allocates nothing
+ * once an action class has been seen. Run latency is sampled once every
+ * {@link #setSampleInterval(int)} runs, which keeps the clock reads off most
+ * runs. Opcode writes are counted as {@link OpcodeLog}.
+ * <p>
+ * As with the {@link JournalingRunner}, proxies must run on this runner, and
+ * marks, undos and redos must go through it to be measured. Trimming is
+ * measured through the manager's {@link ActivityMonitor}.
+ */
+public class InstrumentedRunner implements AdvancedRunner, OpcodeRunner, ActivityMonitor, InstrumentedRunnerMBean {
+	private static final SizeEstimator DEFAULT_ESTIMATOR = new FixedSizeEstimator(32);
+
+	private AdvancedManager manager;
+	private ConcurrentHashMap<Class<?>, AtomicLong> actionCounts = new ConcurrentHashMap<Class<?>, AtomicLong>();
+	private Histogram runLatencies = new Histogram();
+	private Histogram undoLatencies = new Histogram();
+	private Histogram redoLatencies = new Histogram();
+	private Histogram activitySizes = new Histogram();
+	private AtomicLong trimCount = new AtomicLong();
+	private AtomicLong trimNanos = new AtomicLong();
+	private int sampleMask = 63;
+	/**
+	 * Counts runs for sampling. Updated without synchronization, as a lost
+	 * update only shifts the next sample.
+	 */
+	private int sampleCount;
+	private Map<String, Long> rateCounts = new HashMap<String, Long>();
+	private long rateTime = System.nanoTime();
+
+	public InstrumentedRunner(AdvancedManager manager) {
+		this.manager = manager;
+		manager.addActivityMonitor(this);
+	}
+
+	/**
+	 * Histogram of non-negative values in power of two buckets, recorded
+	 * without locking.
+	 */
+	private static class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+		void record(long value) {
+			buckets.incrementAndGet(value > 0 ? 64 - Long.numberOfLeadingZeros(value) : 0);
+		}
+
+		long[] snapshot() {
+			int length = buckets.length();
+			while (length > 0 && buckets.get(length - 1) == 0) {
+				length--;
+			}
+			long[] result = new long[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = buckets.get(i);
+			}
+			return result;
+		}
+
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * Registers this runner with the platform MBean server.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName result = new ObjectName("com.leovandriel.reversible:type=InstrumentedRunner,name=" + name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, result);
+		return result;
+	}
+
+	private void count(Class<?> type) {
+		AtomicLong counter = actionCounts.get(type);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = actionCounts.putIfAbsent(type, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	private boolean sample() {
+		return (sampleCount++ & sampleMask) == 0;
+	}
+
+	public <T> T run(Action<T> action) {
+		count(action.getClass());
+		if (!sample()) {
+			return manager.run(action);
+		}
+		long start = System.nanoTime();
+		try {
+			return manager.run(action);
+		} finally {
+			runLatencies.record(System.nanoTime() - start);
+		}
+	}
+
+	public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+		count(OpcodeLog.class);
+		if (!sample()) {
+			return manager.apply(table, opcode, index, key, value);
+		}
+		long start = System.nanoTime();
+		try {
+			return manager.apply(table, opcode, index, key, value);
+		} finally {
+			runLatencies.record(System.nanoTime() - start);
+		}
+	}
+
+	public boolean isRecording() {
+		return manager.isRecording();
+	}
+
+	public boolean isRecordingOpcodes() {
+		return manager.isRecordingOpcodes();
+	}
+
+	public boolean isRunningAction() {
+		return manager.isRunningAction();
+	}
+
+	public void mark() {
+		Activity current = manager.getCurrentActivity();
+		if (current != null) {
+			activitySizes.record(current.size());
+		}
+		manager.mark();
+	}
+
+	public void undo() {
+		long start = System.nanoTime();
+		manager.undo();
+		undoLatencies.record(System.nanoTime() - start);
+	}
+
+	public void undo(int count) {
+		for (; count > 0; count--) {
+			undo();
+		}
+	}
+
+	public void redo() {
+		long start = System.nanoTime();
+		manager.redo();
+		redoLatencies.record(System.nanoTime() - start);
+	}
+
+	public void redo(int count) {
+		for (; count > 0; count--) {
+			redo();
+		}
+	}
+
+	public void trimmed(int count, long nanos) {
+		trimCount.addAndGet(count);
+		trimNanos.addAndGet(nanos);
+	}
+
+	public Map<String, Long> getActionCounts() {
+		Map<String, Long> result = new HashMap<String, Long>();
+		for (Map.Entry<Class<?>, AtomicLong> entry : actionCounts.entrySet()) {
+			result.put(entry.getKey().getName(), Long.valueOf(entry.getValue().get()));
+		}
+		return result;
+	}
+
+	public synchronized Map<String, Double> getActionRates() {
+		long now = System.nanoTime();
+		double seconds = (now - rateTime) / 1e9;
+		Map<String, Long> counts = getActionCounts();
+		Map<String, Double> result = new HashMap<String, Double>();
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			Long previous = rateCounts.get(entry.getKey());
+			long delta = entry.getValue().longValue() - (previous != null ? previous.longValue() : 0);
+			result.put(entry.getKey(), Double.valueOf(seconds > 0 ? delta / seconds : 0));
+		}
+		rateCounts = counts;
+		rateTime = now;
+		return result;
+	}
+
+	public long[] getRunLatencies() {
+		return runLatencies.snapshot();
+	}
+
+	public long[] getUndoLatencies() {
+		return undoLatencies.snapshot();
+	}
+
+	public long[] getRedoLatencies() {
+		return redoLatencies.snapshot();
+	}
+
+	public long[] getActivitySizes() {
+		return activitySizes.snapshot();
+	}
+
+	public int getUndoDepth() {
+		return manager.getUndoSize();
+	}
+
+	public int getRedoDepth() {
+		return manager.getRedoSize();
+	}
+
+	/**
+	 * Walks the history and estimates every action with the manager's
+	 * estimator, or 32 bytes per action without one. Spilled activities are
+	 * off the heap and skipped. The walk runs exclusively of the manager's
+	 * runs, marks, undos and redos, so for a {@link ConfinedManager} it must
+	 * be called from the owner thread.
+	 */
+	public Map<String, Long> getRetainedBytes() {
+		final SizeEstimator estimator = manager.getSizeEstimator() != null ? manager.getSizeEstimator()
+				: DEFAULT_ESTIMATOR;
+		final Map<Object, Long> totals = new IdentityHashMap<Object, Long>();
+		manager.runExclusive(new Runnable() {
+			public void run() {
+				addRetained(totals, manager.getUndoHistory(), estimator);
+				addRetained(totals, manager.getRedoHistory(), estimator);
+				Activity current = manager.getCurrentActivity();
+				if (current != null) {
+					addRetained(totals, current, estimator);
+				}
+			}
+		});
+		Map<String, Long> result = new HashMap<String, Long>();
+		for (Map.Entry<Object, Long> entry : totals.entrySet()) {
+			Object owner = entry.getKey();
+			String name = owner instanceof Class<?> ? ((Class<?>) owner).getName() : owner.getClass().getName()
+					+ '@' + Integer.toHexString(System.identityHashCode(owner));
+			result.put(name, entry.getValue());
+		}
+		return result;
+	}
+
+	private static void addRetained(Map<Object, Long> totals, ActivityHistory history, SizeEstimator estimator) {
+		for (int i = 0; i < history.size(); i++) {
+			Activity activity = history.get(i);
+			if (activity != null && !(activity instanceof SpilledActivity)) {
+				addRetained(totals, activity, estimator);
+			}
+		}
+	}
+
+	private static void addRetained(Map<Object, Long> totals, Activity activity, SizeEstimator estimator) {
+		for (Action<?> action : activity.getActions()) {
+			if (action instanceof OpcodeLog) {
+				for (Map.Entry<OpcodeTable, Integer> entry : ((OpcodeLog) action).countTables().entrySet()) {
+					add(totals, entry.getKey(), (long) entry.getValue().intValue() * OpcodeLog.ENTRY_BYTES);
+				}
+			} else if (action instanceof EncodableAction) {
+				add(totals, ((EncodableAction) action).getDecoder(), estimator.estimate(action));
+			} else {
+				add(totals, action.getClass(), estimator.estimate(action));
+			}
+		}
+	}
+
+	private static void add(Map<Object, Long> totals, Object owner, long bytes) {
+		Long total = totals.get(owner);
+		totals.put(owner, Long.valueOf(total != null ? total.longValue() + bytes : bytes));
+	}
+
+	public long getTrimCount() {
+		return trimCount.get();
+	}
+
+	public long getTrimNanos() {
+		return trimNanos.get();
+	}
+
+	public int getSampleInterval() {
+		return sampleMask + 1;
+	}
+
+	/**
+	 * Sets how many runs pass per latency sample, rounded up to a power of
+	 * two. The default is 64; 1 times every run.
+	 */
+	public void setSampleInterval(int interval) {
+		int mask = 0;
+		while (mask + 1 < interval) {
+			mask = mask * 2 + 1;
+		}
+		sampleMask = mask;
+	}
+
+	public void reset() {
+		for (AtomicLong counter : actionCounts.values()) {
+			counter.set(0);
+		}
+		runLatencies.reset();
+		undoLatencies.reset();
+		redoLatencies.reset();
+		activitySizes.reset();
+		trimCount.set(0);
+		trimNanos.set(0);
+	}
+
+	public AdvancedManager getManager() {
+		return manager;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + manager + ')';
+	}
+}
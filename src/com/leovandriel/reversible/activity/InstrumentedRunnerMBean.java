@@ -0,0 +1,70 @@
+package com.leovandriel.reversible.activity;
+
+import java.util.Map;
+
+/**
+ * Management interface of an {@link InstrumentedRunner}. Histograms are
+ * arrays of counts in power of two buckets, where bucket <code>i</code>
+ * counts values of at least <code>2^(i-1)</code> and below <code>2^i</code>.
+ */
+public interface InstrumentedRunnerMBean {
+	/**
+	 * Returns the number of actions run per action class.
+	 */
+	public Map<String, Long> getActionCounts();
+
+	/**
+	 * Returns the actions per second per action class, since the previous
+	 * call.
+	 */
+	public Map<String, Double> getActionRates();
+
+	/**
+	 * Returns the sampled run latencies in nanoseconds.
+	 */
+	public long[] getRunLatencies();
+
+	/**
+	 * Returns the undo latencies in nanoseconds.
+	 */
+	public long[] getUndoLatencies();
+
+	/**
+	 * Returns the redo latencies in nanoseconds.
+	 */
+	public long[] getRedoLatencies();
+
+	/**
+	 * Returns the number of actions per marked activity.
+	 */
+	public long[] getActivitySizes();
+
+	public int getUndoDepth();
+
+	public int getRedoDepth();
+
+	/**
+	 * Returns the estimated bytes retained by history per proxy, or per
+	 * action class for actions that do not name their proxy.
+	 */
+	public Map<String, Long> getRetainedBytes();
+
+	/**
+	 * Returns the number of activities evicted by trimming and retention.
+	 */
+	public long getTrimCount();
+
+	/**
+	 * Returns the time spent evicting activities, in nanoseconds.
+	 */
+	public long getTrimNanos();
+
+	public int getSampleInterval();
+
+	public void setSampleInterval(int interval);
+
+	/**
+	 * Zeroes all counters and histograms.
+	 */
+	public void reset();
+}
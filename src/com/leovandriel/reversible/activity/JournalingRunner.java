@@ -0,0 +1,394 @@
+package com.leovandriel.reversible.activity;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.AdvancedRunner;
+import com.leovandriel.reversible.io.ActionCodec;
+
+/**
+ * Runner that records every action, mark, undo and redo of a manager in an
+ * append-only journal file, so the state can be rebuilt after a restart.
+ * Actions are kept in memory as they run; marks, undos and redos encode them
+ * and commit them to the file as one checksummed frame. Commits are
+ * forced to disk every {@link #setSyncInterval(int)} frames.
+ * <p>
+ * To recover, create fresh targets with proxies running on this runner,
+ * register the proxies with the codec in the same order as before and call
+ * {@link #recover()} before running anything. Marks, undos and redos must go
+ * through this runner rather than the manager to be journaled, and so must
+ * unrecorded tasks, which discard history.
+ */
+public class JournalingRunner implements AdvancedRunner {
+	private static final byte RUN = 1;
+	private static final byte MARK = 2;
+	private static final byte UNDO = 3;
+	private static final byte REDO = 4;
+	private static final byte UNRECORDED = 5;
+	private static final int HEADER_SIZE = 8;
+
+	private AdvancedManager manager;
+	private ActionCodec codec;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private List<Action<?>> pending = new ArrayList<Action<?>>();
+	private FrameBuffer buffer = new FrameBuffer();
+	private DataOutputStream out = new DataOutputStream(buffer);
+	private CRC32 checksum = new CRC32();
+	private int syncInterval = 1;
+	private int unsynced;
+	private boolean unrecorded;
+
+	public JournalingRunner(AdvancedManager manager, File file, ActionCodec codec) throws IOException {
+		this.manager = manager;
+		this.codec = codec;
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+		channel.position(channel.size());
+		buffer.clear();
+	}
+
+	/**
+	 * Unsynchronized byte buffer that reserves room for the frame header and
+	 * exposes its contents without copying.
+	 */
+	private static class FrameBuffer extends OutputStream {
+		private byte[] buf = new byte[256];
+		private int count;
+
+		@Override
+		public void write(int b) {
+			if (count == buf.length) {
+				grow(1);
+			}
+			buf[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (count + len > buf.length) {
+				grow(len);
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		private void grow(int extra) {
+			byte[] grown = new byte[Math.max(buf.length * 2, count + extra)];
+			System.arraycopy(buf, 0, grown, 0, count);
+			buf = grown;
+		}
+
+		public void clear() {
+			count = HEADER_SIZE;
+		}
+
+		public boolean hasRecords() {
+			return count > HEADER_SIZE;
+		}
+
+		public ByteBuffer frame(CRC32 checksum) {
+			checksum.reset();
+			checksum.update(buf, HEADER_SIZE, count - HEADER_SIZE);
+			ByteBuffer result = ByteBuffer.wrap(buf, 0, count);
+			result.putInt(0, count - HEADER_SIZE);
+			result.putInt(4, (int) checksum.getValue());
+			return result;
+		}
+	}
+
+	/**
+	 * Runs the action on the manager and journals it. Actions that cannot be
+	 * encoded are rejected before they run, as are actions of an unrecorded
+	 * task run on the manager directly, since its discarded history would not
+	 * be journaled.
+	 */
+	public synchronized <T> T run(Action<T> action) {
+		if (!codec.canEncode(action)) {
+			throw new IllegalStateException("Unable to journal action: " + action);
+		}
+		if (!unrecorded && !manager.isRecording()) {
+			throw new IllegalStateException("Unable to journal unrecorded action: " + action);
+		}
+		T result = manager.run(action);
+		pending.add(action);
+		return result;
+	}
+
+	public synchronized void mark() {
+		flushPending();
+		manager.mark();
+		append(MARK);
+		commit();
+	}
+
+	public synchronized void undo() {
+		flushPending();
+		manager.undo();
+		append(UNDO, 1);
+		commit();
+	}
+
+	public synchronized void undo(int count) {
+		flushPending();
+		manager.undo(count);
+		append(UNDO, count);
+		commit();
+	}
+
+	public synchronized void redo() {
+		flushPending();
+		manager.redo();
+		append(REDO, 1);
+		commit();
+	}
+
+	public synchronized void redo(int count) {
+		flushPending();
+		manager.redo(count);
+		append(REDO, count);
+		commit();
+	}
+
+	/**
+	 * Runs the task unrecorded on the manager and commits its actions after a
+	 * marker, so recovery discards history at the same point and runs them
+	 * unrecorded too. The actions are journaled even if the task throws, as
+	 * the targets keep their writes.
+	 */
+	public synchronized void runUnrecorded(final Runnable task) {
+		flushPending();
+		try {
+			manager.runUnrecorded(new Runnable() {
+				public void run() {
+					unrecorded = true;
+					try {
+						task.run();
+					} finally {
+						unrecorded = false;
+					}
+				}
+			});
+		} finally {
+			try {
+				out.writeByte(UNRECORDED);
+				out.writeInt(pending.size());
+				for (int i = 0; i < pending.size(); i++) {
+					codec.write(out, pending.get(i));
+				}
+				pending.clear();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to journal", e);
+			}
+			commit();
+		}
+	}
+
+	/**
+	 * Encodes the actions run since the last commit. Encoding is deferred to
+	 * the commit so that actions that grow after running, like batched
+	 * removals, are journaled in full.
+	 */
+	private void encodePending() throws IOException {
+		for (int i = 0; i < pending.size(); i++) {
+			out.writeByte(RUN);
+			codec.write(out, pending.get(i));
+		}
+		pending.clear();
+	}
+
+	private void flushPending() {
+		try {
+			encodePending();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to journal", e);
+		}
+	}
+
+	private void append(byte type) {
+		try {
+			out.writeByte(type);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to journal", e);
+		}
+	}
+
+	private void append(byte type, int count) {
+		try {
+			out.writeByte(type);
+			out.writeInt(count);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to journal", e);
+		}
+	}
+
+	private void commit() {
+		try {
+			write();
+			if (syncInterval > 0 && unsynced >= syncInterval) {
+				force();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write journal", e);
+		}
+	}
+
+	private void write() throws IOException {
+		if (buffer.hasRecords()) {
+			ByteBuffer frame = buffer.frame(checksum);
+			while (frame.hasRemaining()) {
+				channel.write(frame);
+			}
+			buffer.clear();
+			unsynced++;
+		}
+	}
+
+	private void force() throws IOException {
+		if (unsynced > 0) {
+			channel.force(false);
+			unsynced = 0;
+		}
+	}
+
+	/**
+	 * Writes pending records and forces all commits to disk, regardless of the
+	 * sync interval.
+	 */
+	public synchronized void sync() throws IOException {
+		encodePending();
+		write();
+		force();
+	}
+
+	/**
+	 * Replays the journal into the manager, without journaling it again. A
+	 * torn or corrupt frame at the end, left by a crash during a commit, is
+	 * discarded and new frames are appended in its place.
+	 *
+	 * @return the number of frames replayed
+	 */
+	public synchronized int recover() throws IOException {
+		if (buffer.hasRecords() || !pending.isEmpty()) {
+			throw new IllegalStateException("Unable to recover after running actions");
+		}
+		long size = channel.size();
+		long position = 0;
+		int frames = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (position + HEADER_SIZE <= size) {
+			header.clear();
+			channel.read(header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || position + HEADER_SIZE + length > size) {
+				break;
+			}
+			byte[] data = new byte[length];
+			ByteBuffer payload = ByteBuffer.wrap(data);
+			while (payload.hasRemaining()) {
+				channel.read(payload, position + HEADER_SIZE + payload.position());
+			}
+			checksum.reset();
+			checksum.update(data, 0, length);
+			if ((int) checksum.getValue() != header.getInt(4)) {
+				break;
+			}
+			replay(new DataInputStream(new ByteArrayInputStream(data)));
+			position += HEADER_SIZE + length;
+			frames++;
+		}
+		channel.truncate(position);
+		channel.position(position);
+		return frames;
+	}
+
+	private void replay(DataInputStream in) throws IOException {
+		while (in.available() > 0) {
+			byte type = in.readByte();
+			switch (type) {
+			case RUN:
+				manager.run(codec.read(in));
+				break;
+			case MARK:
+				manager.mark();
+				break;
+			case UNDO:
+				manager.undo(in.readInt());
+				break;
+			case REDO:
+				manager.redo(in.readInt());
+				break;
+			case UNRECORDED:
+				replayUnrecorded(in, in.readInt());
+				break;
+			default:
+				throw new IOException("Unknown journal record: " + type);
+			}
+		}
+	}
+
+	private void replayUnrecorded(final DataInputStream in, final int count) throws IOException {
+		final IOException[] failure = new IOException[1];
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < count; i++) {
+						manager.run(codec.read(in));
+					}
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	/**
+	 * Sets the number of commits between forcing the journal to disk. One
+	 * forces every commit, larger values trade the last few commits on power
+	 * loss for throughput, and zero leaves flushing to the operating system.
+	 */
+	public synchronized void setSyncInterval(int syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+
+	public boolean isRunningAction() {
+		return manager.isRunningAction();
+	}
+
+	public boolean canUndo() {
+		return manager.canUndo();
+	}
+
+	public boolean canRedo() {
+		return manager.canRedo();
+	}
+
+	public AdvancedManager getManager() {
+		return manager;
+	}
+
+	public synchronized void close() throws IOException {
+		sync();
+		channel.close();
+		file.close();
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + manager + ')';
+	}
+}
@@ -0,0 +1,28 @@
+package com.leovandriel.reversible.activity;
+
+/**
+ * Evicts activities that were marked longer ago than a maximum age. Empty
+ * marks carry no undo data and are always evicted once they become oldest.
+ */
+public class MaxAgePolicy implements RetentionPolicy {
+	private long maxAgeMillis;
+
+	public MaxAgePolicy(long maxAgeMillis) {
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	public void added(Activity activity) {
+	}
+
+	public void removed(Activity activity) {
+	}
+
+	public boolean isExceeded(Activity oldest, long now) {
+		return oldest == null || now - oldest.getTimestamp() > maxAgeMillis;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + maxAgeMillis + ')';
+	}
+}
@@ -0,0 +1,21 @@
+package com.leovandriel.reversible.activity;
+
+/**
+ * Decides when the oldest activities of an {@link ActivityHistory} should be
+ * evicted. The history reports every activity that enters or leaves it, so
+ * policies can keep running totals instead of scanning the history.
+ * Activities can be null, representing an empty mark.
+ */
+public interface RetentionPolicy {
+	public void added(Activity activity);
+
+	public void removed(Activity activity);
+
+	/**
+	 * Returns true if the oldest activity should be evicted.
+	 *
+	 * @param now
+	 *            current time in milliseconds
+	 */
+	public boolean isExceeded(Activity oldest, long now);
+}
@@ -0,0 +1,287 @@
+package com.leovandriel.reversible.activity;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.AdvancedRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+
+/**
+ * Splits history over a fixed number of shards, each with its own lock, so
+ * that writers on different shards never contend. Proxies are created on the
+ * runner returned by {@link #getShard(int)} or {@link #getShard(Object)}.
+ * <p>
+ * Marking, undoing and redoing lock all shards and move them as one logical
+ * step: every shard marks, even if it has no current activity, so that all
+ * shards keep histories of equal length. Running an action on any shard after
+ * an undo discards the redo history of all shards.
+ */
+public class ShardedActivityManager {
+	private static class Shard extends AdvancedManager {
+		private final ReentrantLock lock = new ReentrantLock();
+
+		@Override
+		public <T> T run(Action<T> action) {
+			lock.lock();
+			try {
+				return runGuarded(action);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public Object apply(OpcodeTable table, int opcode, int index, Object key, Object value) {
+			lock.lock();
+			try {
+				return applyGuarded(table, opcode, index, key, value);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void runUnrecorded(Runnable task) {
+			lock.lock();
+			try {
+				runUnrecordedGuarded(task);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		protected void runExclusive(Runnable task) {
+			lock.lock();
+			try {
+				task.run();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean hasCurrent() {
+			return getUndoSize() > getUndoHistory().size();
+		}
+	}
+
+	private final Shard[] shards;
+
+	public ShardedActivityManager(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one shard required, not " + count);
+		}
+		shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public AdvancedRunner getShard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Returns the shard for a partition key, e.g. a tenant id.
+	 */
+	public AdvancedRunner getShard(Object key) {
+		int hash = key == null ? 0 : key.hashCode();
+		hash ^= hash >>> 16;
+		return shards[(hash & 0x7fffffff) % shards.length];
+	}
+
+	private void lockAll() {
+		for (Shard s : shards) {
+			s.lock.lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (int i = shards.length - 1; i >= 0; i--) {
+			shards[i].lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops the redo history of all shards if any shard ran an action since
+	 * the last undo. Requires all locks.
+	 */
+	private void alignRedo() {
+		int size = Integer.MAX_VALUE;
+		for (Shard s : shards) {
+			size = Math.min(size, s.getRedoSize());
+		}
+		for (Shard s : shards) {
+			s.trimRedo(size);
+		}
+	}
+
+	/**
+	 * Marks all shards if any of them has a current activity. Requires all
+	 * locks.
+	 */
+	private void markIfCurrent() {
+		for (Shard s : shards) {
+			if (s.hasCurrent()) {
+				for (Shard t : shards) {
+					t.mark();
+				}
+				return;
+			}
+		}
+	}
+
+	public void mark() {
+		lockAll();
+		try {
+			alignRedo();
+			for (Shard s : shards) {
+				s.mark();
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void undo() {
+		undo(1);
+	}
+
+	/**
+	 * Undoes <code>count</code> logical steps on all shards.
+	 */
+	public void undo(int count) {
+		lockAll();
+		try {
+			alignRedo();
+			markIfCurrent();
+			if (shards[0].getUndoSize() < count) {
+				throw new RuntimeException("Unable to undo because there are no done activities");
+			}
+			for (Shard s : shards) {
+				s.undo(count);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void redo() {
+		redo(1);
+	}
+
+	/**
+	 * Redoes <code>count</code> logical steps on all shards.
+	 */
+	public void redo(int count) {
+		lockAll();
+		try {
+			alignRedo();
+			markIfCurrent();
+			if (shards[0].getRedoSize() < count) {
+				throw new RuntimeException("Unable to redo because there is no undone activities");
+			}
+			for (Shard s : shards) {
+				s.redo(count);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public boolean canUndo() {
+		lockAll();
+		try {
+			for (Shard s : shards) {
+				if (s.canUndo()) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public boolean canRedo() {
+		return getRedoSize() > 0;
+	}
+
+	public int getUndoSize() {
+		lockAll();
+		try {
+			int result = shards[0].getUndoHistory().size();
+			for (Shard s : shards) {
+				if (s.hasCurrent()) {
+					return result + 1;
+				}
+			}
+			return result;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public int getRedoSize() {
+		lockAll();
+		try {
+			alignRedo();
+			return shards[0].getRedoSize();
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void setMaxUndoSize(int size) {
+		lockAll();
+		try {
+			for (Shard s : shards) {
+				s.setMaxUndoSize(size);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void setMaxRedoSize(int size) {
+		lockAll();
+		try {
+			for (Shard s : shards) {
+				s.setMaxRedoSize(size);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void setCoalescing(boolean coalescing) {
+		lockAll();
+		try {
+			for (Shard s : shards) {
+				s.setCoalescing(coalescing);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	public void setRecordingOpcodes(boolean recordingOpcodes) {
+		lockAll();
+		try {
+			for (Shard s : shards) {
+				s.setRecordingOpcodes(recordingOpcodes);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + shards.length + " shards)";
+	}
+}
@@ -0,0 +1,109 @@
+package com.leovandriel.reversible.activity;
+
+import com.leovandriel.reversible.action.Action;
+
+/**
+ * Placeholder for a done activity whose actions live in an
+ * {@link ActivitySpill}. The actions are decoded on the first undo and kept
+ * on the heap until the activity is spilled again. A spilled activity does not
+ * count towards estimated heap usage.
+ */
+public class SpilledActivity extends Activity {
+	private ActivitySpill spill;
+	private long position;
+	private int length;
+	private int count;
+	private Activity loaded;
+	private boolean released;
+
+	SpilledActivity(ActivitySpill spill, long position, int length, int count, long timestamp) {
+		this.spill = spill;
+		this.position = position;
+		this.length = length;
+		this.count = count;
+		setTimestamp(timestamp);
+	}
+
+	@Override
+	public <T> T run(Action<T> action) {
+		throw new IllegalStateException("Unable to run in a spilled activity");
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public void undo() {
+		if (loaded == null) {
+			loaded = spill.load(this);
+		}
+		loaded.undo();
+	}
+
+	@Override
+	public void redo() {
+		if (loaded == null) {
+			throw new IllegalStateException("Unable to redo an unloaded activity");
+		}
+		loaded.redo();
+	}
+
+	@Override
+	void replay() {
+		if (loaded == null) {
+			loaded = spill.load(this);
+		}
+		loaded.replay();
+	}
+
+	@Override
+	void setDone(boolean done) {
+		if (loaded == null) {
+			loaded = spill.load(this);
+		}
+		loaded.setDone(done);
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+		return 0;
+	}
+
+	public boolean isLoaded() {
+		return loaded != null;
+	}
+
+	/**
+	 * Drops the decoded actions, assuming they are done and therefore match
+	 * the spilled copy again.
+	 */
+	void unload() {
+		loaded = null;
+	}
+
+	/**
+	 * Tells the spill this activity is no longer referenced by history.
+	 */
+	void release() {
+		if (!released) {
+			released = true;
+			loaded = null;
+			spill.release();
+		}
+	}
+
+	long getPosition() {
+		return position;
+	}
+
+	int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + '(' + count + (loaded != null ? " loaded" : "") + ')';
+	}
+}
@@ -0,0 +1,91 @@
+package com.leovandriel.reversible.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.leovandriel.reversible.action.Action;
+
+/**
+ * Encodes actions of registered decoders, typically proxies. Each record holds
+ * the decoder id followed by the action itself. Decoders must be registered
+ * under the same ids on both ends, e.g. by registering them in the same order.
+ */
+public class ActionCodec {
+	private ValueCodec values;
+	private Map<ActionDecoder, Integer> ids = new IdentityHashMap<ActionDecoder, Integer>();
+	private Map<Integer, ActionDecoder> decoders = new HashMap<Integer, ActionDecoder>();
+	private int nextId;
+
+	public ActionCodec() {
+		this(new DefaultValueCodec());
+	}
+
+	public ActionCodec(ValueCodec values) {
+		this.values = values;
+	}
+
+	/**
+	 * Registers a decoder under the next free id.
+	 *
+	 * @return the id
+	 */
+	public synchronized int register(ActionDecoder decoder) {
+		while (decoders.containsKey(Integer.valueOf(nextId))) {
+			nextId++;
+		}
+		register(nextId, decoder);
+		return nextId;
+	}
+
+	public synchronized void register(int id, ActionDecoder decoder) {
+		Integer key = Integer.valueOf(id);
+		if (decoders.containsKey(key)) {
+			throw new IllegalArgumentException("Id already registered: " + id);
+		}
+		decoders.put(key, decoder);
+		ids.put(decoder, key);
+	}
+
+	/**
+	 * Returns true if the action is encodable and its decoder is registered.
+	 */
+	public synchronized boolean canEncode(Action<?> action) {
+		return action instanceof EncodableAction && ids.containsKey(((EncodableAction) action).getDecoder());
+	}
+
+	public void write(DataOutput out, Action<?> action) throws IOException {
+		if (!(action instanceof EncodableAction)) {
+			throw new IOException("Action not encodable: " + action);
+		}
+		EncodableAction encodable = (EncodableAction) action;
+		Integer id;
+		synchronized (this) {
+			id = ids.get(encodable.getDecoder());
+		}
+		if (id == null) {
+			throw new IOException("Decoder not registered: " + action);
+		}
+		out.writeInt(id.intValue());
+		encodable.encode(out, values);
+	}
+
+	public Action<?> read(DataInput in) throws IOException {
+		int id = in.readInt();
+		ActionDecoder decoder;
+		synchronized (this) {
+			decoder = decoders.get(Integer.valueOf(id));
+		}
+		if (decoder == null) {
+			throw new IOException("Unknown decoder id: " + id);
+		}
+		return decoder.decode(in, values);
+	}
+
+	public ValueCodec getValueCodec() {
+		return values;
+	}
+}
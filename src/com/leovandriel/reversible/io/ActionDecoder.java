@@ -0,0 +1,14 @@
+package com.leovandriel.reversible.io;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+
+/**
+ * Recreates actions written by {@link EncodableAction#encode}, in the state
+ * they were in after running.
+ */
+public interface ActionDecoder {
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException;
+}
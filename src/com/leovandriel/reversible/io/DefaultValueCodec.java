@@ -0,0 +1,117 @@
+package com.leovandriel.reversible.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Writes null, strings and boxed primitives in a compact tagged format, and
+ * falls back to Java serialization for other {@link Serializable} values.
+ */
+public class DefaultValueCodec implements ValueCodec {
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte SHORT = 6;
+	private static final byte BYTE = 7;
+	private static final byte CHARACTER = 8;
+	private static final byte FLOAT = 9;
+	private static final byte SERIALIZED = 10;
+
+	public void write(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			byte[] bytes = ((String) value).getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt(((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong(((Long) value).longValue());
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Double) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(((Boolean) value).booleanValue());
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort(((Short) value).shortValue());
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte(((Byte) value).byteValue());
+		} else if (value instanceof Character) {
+			out.writeByte(CHARACTER);
+			out.writeChar(((Character) value).charValue());
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat(((Float) value).floatValue());
+		} else if (value instanceof Serializable) {
+			out.writeByte(SERIALIZED);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			ObjectOutputStream stream = new ObjectOutputStream(buffer);
+			stream.writeObject(value);
+			stream.close();
+			out.writeInt(buffer.size());
+			out.write(buffer.toByteArray());
+		} else {
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
+	public Object read(DataInput in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING: {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+		case INTEGER:
+			return Integer.valueOf(in.readInt());
+		case LONG:
+			return Long.valueOf(in.readLong());
+		case DOUBLE:
+			return Double.valueOf(in.readDouble());
+		case BOOLEAN:
+			return Boolean.valueOf(in.readBoolean());
+		case SHORT:
+			return Short.valueOf(in.readShort());
+		case BYTE:
+			return Byte.valueOf(in.readByte());
+		case CHARACTER:
+			return Character.valueOf(in.readChar());
+		case FLOAT:
+			return Float.valueOf(in.readFloat());
+		case SERIALIZED: {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return stream.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unable to read value: " + e.getMessage());
+			} finally {
+				stream.close();
+			}
+		}
+		default:
+			throw new IOException("Unknown value tag: " + tag);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.leovandriel.reversible.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Action that can write itself, including the values it captured while
+ * running, so that its {@link ActionDecoder} can recreate it later.
+ */
+public interface EncodableAction {
+	/**
+	 * Returns the object that decodes this action, typically the proxy that
+	 * created it.
+	 */
+	public ActionDecoder getDecoder();
+
+	public void encode(DataOutput out, ValueCodec codec) throws IOException;
+}
@@ -0,0 +1,55 @@
+package com.leovandriel.reversible.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Helpers for encoding the collections captured by actions.
+ */
+public class Encoding {
+	private Encoding() {
+	}
+
+	public static void writeValues(DataOutput out, ValueCodec codec, Collection<?> values) throws IOException {
+		out.writeInt(values.size());
+		for (Object o : values) {
+			codec.write(out, o);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> readValues(DataInput in, ValueCodec codec) throws IOException {
+		int size = in.readInt();
+		List<T> result = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++) {
+			result.add((T) codec.read(in));
+		}
+		return result;
+	}
+
+	public static void writeEntries(DataOutput out, ValueCodec codec, Map<?, ?> entries) throws IOException {
+		out.writeInt(entries.size());
+		for (Entry<?, ?> e : entries.entrySet()) {
+			codec.write(out, e.getKey());
+			codec.write(out, e.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> Map<K, V> readEntries(DataInput in, ValueCodec codec) throws IOException {
+		int size = in.readInt();
+		Map<K, V> result = new HashMap<K, V>(size * 2);
+		for (int i = 0; i < size; i++) {
+			K key = (K) codec.read(in);
+			result.put(key, (V) codec.read(in));
+		}
+		return result;
+	}
+}
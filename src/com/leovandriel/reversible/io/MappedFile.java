@@ -0,0 +1,84 @@
+package com.leovandriel.reversible.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only record file, memory-mapped in fixed-size segments. A record
+ * never spans two segments, so records can be at most one segment long.
+ * Segments are mapped on first use and stay mapped until {@link #close()}.
+ */
+public class MappedFile {
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int segmentSize;
+	private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long position;
+
+	public MappedFile(File file, int segmentSize) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @return the position to read the record from
+	 * @throws IOException
+	 *             if the record is larger than a segment
+	 */
+	public long append(byte[] data, int offset, int length) throws IOException {
+		if (length > segmentSize) {
+			throw new IOException("Record of " + length + " bytes exceeds segment size " + segmentSize);
+		}
+		if (position % segmentSize + length > segmentSize) {
+			position += segmentSize - position % segmentSize;
+		}
+		long result = position;
+		MappedByteBuffer segment = segment((int) (position / segmentSize));
+		segment.position((int) (position % segmentSize));
+		segment.put(data, offset, length);
+		position += length;
+		return result;
+	}
+
+	public void read(long position, byte[] into, int length) throws IOException {
+		MappedByteBuffer segment = segment((int) (position / segmentSize));
+		segment.position((int) (position % segmentSize));
+		segment.get(into, 0, length);
+	}
+
+	private MappedByteBuffer segment(int index) throws IOException {
+		while (segments.size() <= index) {
+			long start = (long) segments.size() * segmentSize;
+			segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+		}
+		return segments.get(index);
+	}
+
+	/**
+	 * Discards all records, reusing the mapped segments for new ones.
+	 */
+	public void reset() {
+		position = 0;
+	}
+
+	/**
+	 * Returns the number of bytes appended since the last reset.
+	 */
+	public long size() {
+		return position;
+	}
+
+	public void close() throws IOException {
+		segments.clear();
+		channel.close();
+		file.close();
+	}
+}
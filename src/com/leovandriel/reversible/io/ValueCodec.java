@@ -0,0 +1,15 @@
+package com.leovandriel.reversible.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts the values captured by actions, e.g. list elements and map keys,
+ * to and from bytes.
+ */
+public interface ValueCodec {
+	public void write(DataOutput out, Object value) throws IOException;
+
+	public Object read(DataInput in) throws IOException;
+}
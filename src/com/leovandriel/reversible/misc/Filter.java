@@ -0,0 +1,8 @@
+package com.leovandriel.reversible.misc;
+
+/**
+ * Condition on a value, for bulk operations that decide per element.
+ */
+public interface Filter<T> {
+	public boolean accept(T value);
+}
@@ -0,0 +1,399 @@
+package com.leovandriel.reversible.misc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Coalescable;
+
+/**
+ * Reversible hash map with open addressing, recording changes as slot writes
+ * instead of map operations. Every put or remove rewrites exactly one slot,
+ * leaving a tombstone on removal, and its action keeps the slot index with
+ * the old and new contents. Undo and redo restore the slot directly, without
+ * hashing or probing, so they never trigger a rehash.
+ * <p>
+ * A rehash, when the table fills with entries and tombstones, is recorded as
+ * an action of its own that keeps both tables. Its undo brings back the old
+ * table, against which the slot writes before it were recorded.
+ * <p>
+ * Slot indexes depend on the hash codes of the keys, so the actions of this
+ * map are not encodable and it takes no part in checkpoints.
+ */
+public class ReversibleHashMap<K, V> extends AbstractMap<K, V> {
+	private static final byte FREE = 0;
+	private static final byte FULL = 1;
+	private static final byte DELETED = 2;
+	private static final int MIN_CAPACITY = 16;
+	private static final Object NULL_KEY = new Object();
+
+	private Object[] keys;
+	private Object[] values;
+	private byte[] states;
+	private int size;
+	private int deleted;
+	private ActionRunner runner;
+	private EntrySet entrySet;
+
+	public ReversibleHashMap(ActionRunner runner) {
+		this.runner = runner;
+		this.keys = new Object[MIN_CAPACITY];
+		this.values = new Object[MIN_CAPACITY];
+		this.states = new byte[MIN_CAPACITY];
+	}
+
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> K unmask(Object key) {
+		return key == NULL_KEY ? null : (K) key;
+	}
+
+	private static int slot(Object key, int mask) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot holding the key, or if it is absent, minus one minus
+	 * the slot where it would be inserted.
+	 */
+	private int find(Object key) {
+		int mask = keys.length - 1;
+		int insert = -1;
+		for (int i = slot(key, mask);; i = (i + 1) & mask) {
+			byte state = states[i];
+			if (state == FREE) {
+				return -1 - (insert >= 0 ? insert : i);
+			}
+			if (state == DELETED) {
+				if (insert < 0) {
+					insert = i;
+				}
+			} else if (keys[i] == key || keys[i].equals(key)) {
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * Writes the slot and adjusts the entry and tombstone counts.
+	 */
+	private void store(int slot, Object key, Object value, byte state) {
+		byte previous = states[slot];
+		if (previous == FULL) {
+			size--;
+		} else if (previous == DELETED) {
+			deleted--;
+		}
+		if (state == FULL) {
+			size++;
+		} else if (state == DELETED) {
+			deleted++;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		states[slot] = state;
+	}
+
+	public class Write implements Action<V>, Coalescable {
+		private int slot;
+		private Object key;
+		private Object value;
+		private byte state;
+		private Object oldKey;
+		private Object oldValue;
+		private byte oldState;
+
+		private Write(int slot, Object key, Object value, byte state) {
+			this.slot = slot;
+			this.key = key;
+			this.value = value;
+			this.state = state;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V run() {
+			oldKey = keys[slot];
+			oldValue = values[slot];
+			oldState = states[slot];
+			store(slot, key, value, state);
+			return oldState == FULL ? (V) oldValue : null;
+		}
+
+		public void unrun() {
+			store(slot, oldKey, oldValue, oldState);
+		}
+
+		/**
+		 * Absorbs a following write to the same slot, keeping the oldest
+		 * contents.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ReversibleHashMap.Write) {
+				Write other = (Write) next;
+				if (other.getMap() == ReversibleHashMap.this && other.slot == slot) {
+					key = other.key;
+					value = other.value;
+					state = other.state;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private ReversibleHashMap<K, V> getMap() {
+			return ReversibleHashMap.this;
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + slot + ',' + unmask(key) + ',' + value + ')';
+		}
+	}
+
+	/**
+	 * Replaces the whole table, for rehashing and clearing. Undo and redo only
+	 * swap the array references, as the slot writes recorded since take each
+	 * table back to its state at the swap.
+	 */
+	public class Swap implements Action<Void> {
+		private int capacity;
+		private boolean rehash;
+		private Object[] newKeys;
+		private Object[] newValues;
+		private byte[] newStates;
+		private int newSize;
+		private Object[] oldKeys;
+		private Object[] oldValues;
+		private byte[] oldStates;
+		private int oldSize;
+		private int oldDeleted;
+
+		private Swap(int capacity, boolean rehash) {
+			this.capacity = capacity;
+			this.rehash = rehash;
+		}
+
+		/**
+		 * Builds the new table on the first run and swaps it in.
+		 */
+		public Void run() {
+			if (newKeys == null) {
+				oldKeys = keys;
+				oldValues = values;
+				oldStates = states;
+				oldSize = size;
+				oldDeleted = deleted;
+				keys = new Object[capacity];
+				values = new Object[capacity];
+				states = new byte[capacity];
+				size = 0;
+				deleted = 0;
+				if (rehash) {
+					for (int i = 0; i < oldKeys.length; i++) {
+						if (oldStates[i] == FULL) {
+							store(-1 - find(oldKeys[i]), oldKeys[i], oldValues[i], FULL);
+						}
+					}
+				}
+				newKeys = keys;
+				newValues = values;
+				newStates = states;
+				newSize = size;
+			} else {
+				keys = newKeys;
+				values = newValues;
+				states = newStates;
+				size = newSize;
+				deleted = 0;
+			}
+			return null;
+		}
+
+		public void unrun() {
+			keys = oldKeys;
+			values = oldValues;
+			states = oldStates;
+			size = oldSize;
+			deleted = oldDeleted;
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + capacity + ')';
+		}
+	}
+
+	/**
+	 * Puts the value with a single probe. If the key is new and the table is
+	 * full, records a rehash first.
+	 */
+	@Override
+	public V put(K key, V value) {
+		Object masked = mask(key);
+		int slot = find(masked);
+		if (slot < 0 && (size + deleted + 1) * 4 > keys.length * 3) {
+			int capacity = keys.length;
+			while ((size + 1) * 2 > capacity) {
+				capacity *= 2;
+			}
+			runner.run(new Swap(capacity, true));
+			slot = find(masked);
+		}
+		return runner.run(new Write(slot >= 0 ? slot : -1 - slot, masked, value, FULL));
+	}
+
+	/**
+	 * Removes the key by leaving a tombstone in its slot. Nothing is recorded
+	 * if the key is absent.
+	 */
+	@Override
+	public V remove(Object key) {
+		int slot = find(mask(key));
+		if (slot < 0) {
+			return null;
+		}
+		return runner.run(new Write(slot, null, null, DELETED));
+	}
+
+	/**
+	 * Clears the map in constant time, keeping the table in history.
+	 */
+	@Override
+	public void clear() {
+		runner.run(new Swap(MIN_CAPACITY, false));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int slot = find(mask(key));
+		return slot >= 0 ? (V) values[slot] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(mask(key)) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the entries, with removal and setting values recorded.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K, V>> {
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			ReversibleHashMap.this.clear();
+		}
+	}
+
+	/**
+	 * Iterates the slots of the current table. Removal leaves a tombstone and
+	 * never moves other entries, so it is safe during iteration.
+	 */
+	private class EntryIterator implements Iterator<Entry<K, V>> {
+		private int next = advance(0);
+		private SlotEntry current;
+
+		private int advance(int from) {
+			int i = from;
+			while (i < states.length && states[i] != FULL) {
+				i++;
+			}
+			return i;
+		}
+
+		public boolean hasNext() {
+			return next < states.length;
+		}
+
+		public Entry<K, V> next() {
+			if (next >= states.length) {
+				throw new NoSuchElementException();
+			}
+			current = new SlotEntry(ReversibleHashMap.<K> unmask(keys[next]));
+			next = advance(next + 1);
+			return current;
+		}
+
+		public void remove() {
+			if (current == null) {
+				throw new IllegalStateException();
+			}
+			ReversibleHashMap.this.remove(current.key);
+			current = null;
+		}
+	}
+
+	private class SlotEntry implements Entry<K, V> {
+		private K key;
+
+		public SlotEntry(K key) {
+			this.key = key;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return get(key);
+		}
+
+		public V setValue(V value) {
+			return put(key, value);
+		}
+
+		@Override
+		public int hashCode() {
+			V value = getValue();
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry<?, ?>)) {
+				return false;
+			}
+			Entry<?, ?> other = (Entry<?, ?>) o;
+			V value = getValue();
+			return (key == null ? other.getKey() == null : key.equals(other.getKey()))
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + getValue();
+		}
+	}
+}
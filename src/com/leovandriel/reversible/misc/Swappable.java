@@ -0,0 +1,20 @@
+package com.leovandriel.reversible.misc;
+
+/**
+ * Collection or map that can hand over its backing storage in constant time.
+ * Proxies use this to clear by moving the contents into history instead of
+ * copying them, and to undo the clear by moving them back.
+ */
+public interface Swappable {
+	/**
+	 * Returns the backing storage and continues with fresh empty storage. The
+	 * caller becomes the owner of the returned storage.
+	 */
+	public Object detach();
+
+	/**
+	 * Continues with storage previously returned by {@link #detach()},
+	 * dropping the current storage.
+	 */
+	public void attach(Object storage);
+}
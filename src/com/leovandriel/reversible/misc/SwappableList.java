@@ -0,0 +1,116 @@
+package com.leovandriel.reversible.misc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List backed by a swappable {@link ArrayList}. Override
+ * {@link #createStorage()} to back it by another list.
+ */
+public class SwappableList<T> extends AbstractList<T> implements RandomAccess, Swappable {
+	private List<T> storage;
+
+	public SwappableList() {
+		storage = createStorage();
+	}
+
+	public SwappableList(Collection<? extends T> c) {
+		storage = createStorage();
+		storage.addAll(c);
+	}
+
+	/**
+	 * Creates empty backing storage.
+	 */
+	protected List<T> createStorage() {
+		return new ArrayList<T>();
+	}
+
+	public Object detach() {
+		List<T> result = storage;
+		storage = createStorage();
+		modCount++;
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void attach(Object storage) {
+		this.storage = (List<T>) storage;
+		modCount++;
+	}
+
+	@Override
+	public T get(int index) {
+		return storage.get(index);
+	}
+
+	@Override
+	public T set(int index, T element) {
+		return storage.set(index, element);
+	}
+
+	@Override
+	public boolean add(T e) {
+		modCount++;
+		return storage.add(e);
+	}
+
+	@Override
+	public void add(int index, T element) {
+		modCount++;
+		storage.add(index, element);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		modCount++;
+		return storage.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends T> c) {
+		modCount++;
+		return storage.addAll(index, c);
+	}
+
+	@Override
+	public T remove(int index) {
+		modCount++;
+		return storage.remove(index);
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		modCount++;
+		storage.subList(fromIndex, toIndex).clear();
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		return storage.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return storage.lastIndexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return storage.contains(o);
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		storage.clear();
+	}
+
+	@Override
+	public int size() {
+		return storage.size();
+	}
+}
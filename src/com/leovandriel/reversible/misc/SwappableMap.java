@@ -0,0 +1,97 @@
+package com.leovandriel.reversible.misc;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map backed by a swappable {@link HashMap}. Override
+ * {@link #createStorage()} to back it by another map.
+ */
+public class SwappableMap<K, V> extends AbstractMap<K, V> implements Swappable {
+	private Map<K, V> storage;
+
+	public SwappableMap() {
+		storage = createStorage();
+	}
+
+	public SwappableMap(Map<? extends K, ? extends V> m) {
+		storage = createStorage();
+		storage.putAll(m);
+	}
+
+	/**
+	 * Creates empty backing storage.
+	 */
+	protected Map<K, V> createStorage() {
+		return new HashMap<K, V>();
+	}
+
+	public Object detach() {
+		Map<K, V> result = storage;
+		storage = createStorage();
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void attach(Object storage) {
+		this.storage = (Map<K, V>) storage;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return storage.entrySet();
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return storage.keySet();
+	}
+
+	@Override
+	public Collection<V> values() {
+		return storage.values();
+	}
+
+	@Override
+	public V get(Object key) {
+		return storage.get(key);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return storage.put(key, value);
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		storage.putAll(m);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return storage.remove(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return storage.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return storage.containsValue(value);
+	}
+
+	@Override
+	public void clear() {
+		storage.clear();
+	}
+
+	@Override
+	public int size() {
+		return storage.size();
+	}
+}
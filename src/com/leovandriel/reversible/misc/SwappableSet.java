@@ -0,0 +1,77 @@
+package com.leovandriel.reversible.misc;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set backed by a swappable {@link HashSet}. Override
+ * {@link #createStorage()} to back it by another set.
+ */
+public class SwappableSet<T> extends AbstractSet<T> implements Swappable {
+	private Set<T> storage;
+
+	public SwappableSet() {
+		storage = createStorage();
+	}
+
+	public SwappableSet(Collection<? extends T> c) {
+		storage = createStorage();
+		storage.addAll(c);
+	}
+
+	/**
+	 * Creates empty backing storage.
+	 */
+	protected Set<T> createStorage() {
+		return new HashSet<T>();
+	}
+
+	public Object detach() {
+		Set<T> result = storage;
+		storage = createStorage();
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void attach(Object storage) {
+		this.storage = (Set<T>) storage;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return storage.iterator();
+	}
+
+	@Override
+	public boolean add(T e) {
+		return storage.add(e);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		return storage.addAll(c);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return storage.remove(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return storage.contains(o);
+	}
+
+	@Override
+	public void clear() {
+		storage.clear();
+	}
+
+	@Override
+	public int size() {
+		return storage.size();
+	}
+}
@@ -0,0 +1,9 @@
+package com.leovandriel.reversible.misc;
+
+/**
+ * Function from a value to its replacement, for bulk operations that replace
+ * per element.
+ */
+public interface Transform<T> {
+	public T apply(T value);
+}
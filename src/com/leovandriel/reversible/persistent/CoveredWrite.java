@@ -0,0 +1,10 @@
+package com.leovandriel.reversible.persistent;
+
+/**
+ * Write of a persistent collection. Once an earlier swap in its activity
+ * covers it, it does nothing on undo and redo, so the swap of any persistent
+ * collection may absorb it, even when their writes interleave.
+ */
+interface CoveredWrite {
+	public boolean isCovered();
+}
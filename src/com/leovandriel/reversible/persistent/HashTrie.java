@@ -0,0 +1,385 @@
+package com.leovandriel.reversible.persistent;
+
+/**
+ * Persistent hash array mapped trie, where writes copy the path to the
+ * changed node. As in {@link VectorTrie}, nodes created since the last
+ * {@link #freeze()} are changed in place. Keys must not be null.
+ */
+final class HashTrie {
+	static final Object NOT_FOUND = new Object();
+	private static final Object[] EMPTY = new Object[0];
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	/**
+	 * Immutable state of the trie, as captured by {@link HashTrie#freeze()}.
+	 */
+	static final class Root {
+		private final Node root;
+		private final int size;
+
+		private Root(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Outcome of a write: the previous value, or {@link HashTrie#NOT_FOUND}.
+	 */
+	private static final class Box {
+		private Object previous = NOT_FOUND;
+	}
+
+	/**
+	 * Node holding key and value pairs in one array. In a bitmap node, a null
+	 * key marks a pair whose value is a child node.
+	 */
+	private abstract static class Node {
+		protected Object edit;
+		protected Object[] array;
+
+		Node(Object edit, Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+
+		abstract Object find(int shift, int hash, Object key);
+
+		abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box);
+
+		abstract Node without(Object edit, int shift, int hash, Object key, Box box);
+	}
+
+	private static final class BitmapNode extends Node {
+		private int bitmap;
+
+		BitmapNode(Object edit, int bitmap, Object[] array) {
+			super(edit, array);
+			this.bitmap = bitmap;
+		}
+
+		private BitmapNode editable(Object edit) {
+			return this.edit == edit ? this : new BitmapNode(edit, bitmap, array.clone());
+		}
+
+		private int index(int bit) {
+			return 2 * Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Object find(int shift, int hash, Object key) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) {
+				return NOT_FOUND;
+			}
+			int i = index(bit);
+			Object k = array[i];
+			if (k == null) {
+				return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+			}
+			return equal(key, k) ? array[i + 1] : NOT_FOUND;
+		}
+
+		@Override
+		Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int i = index(bit);
+			if ((bitmap & bit) != 0) {
+				Object k = array[i];
+				Object v = array[i + 1];
+				if (k == null) {
+					Node child = ((Node) v).assoc(edit, shift + BITS, hash, key, value, box);
+					return child == v ? this : set(edit, i + 1, child);
+				}
+				if (equal(key, k)) {
+					box.previous = v;
+					return v == value ? this : set(edit, i + 1, value);
+				}
+				BitmapNode result = set(edit, i, null);
+				result.array[i + 1] = createNode(edit, shift + BITS, k, v, hash, key, value);
+				return result;
+			}
+			Object[] grown = new Object[array.length + 2];
+			System.arraycopy(array, 0, grown, 0, i);
+			grown[i] = key;
+			grown[i + 1] = value;
+			System.arraycopy(array, i, grown, i + 2, array.length - i);
+			if (this.edit == edit) {
+				array = grown;
+				bitmap |= bit;
+				return this;
+			}
+			return new BitmapNode(edit, bitmap | bit, grown);
+		}
+
+		@Override
+		Node without(Object edit, int shift, int hash, Object key, Box box) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int i = index(bit);
+			Object k = array[i];
+			Object v = array[i + 1];
+			if (k == null) {
+				Node child = ((Node) v).without(edit, shift + BITS, hash, key, box);
+				if (child == v) {
+					return this;
+				}
+				if (child != null) {
+					return set(edit, i + 1, child);
+				}
+			} else if (equal(key, k)) {
+				box.previous = v;
+			} else {
+				return this;
+			}
+			if (bitmap == bit) {
+				return null;
+			}
+			Object[] shrunk = new Object[array.length - 2];
+			System.arraycopy(array, 0, shrunk, 0, i);
+			System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+			if (this.edit == edit) {
+				array = shrunk;
+				bitmap ^= bit;
+				return this;
+			}
+			return new BitmapNode(edit, bitmap ^ bit, shrunk);
+		}
+
+		private BitmapNode set(Object edit, int i, Object value) {
+			BitmapNode result = editable(edit);
+			result.array[i] = value;
+			return result;
+		}
+	}
+
+	/**
+	 * Leaf for keys whose full hashes are equal.
+	 */
+	private static final class CollisionNode extends Node {
+		private final int hash;
+
+		CollisionNode(Object edit, int hash, Object[] array) {
+			super(edit, array);
+			this.hash = hash;
+		}
+
+		private int indexOf(Object key) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (equal(key, array[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		Object find(int shift, int hash, Object key) {
+			int i = hash == this.hash ? indexOf(key) : -1;
+			return i >= 0 ? array[i + 1] : NOT_FOUND;
+		}
+
+		@Override
+		Node assoc(Object edit, int shift, int hash, Object key, Object value, Box box) {
+			if (hash != this.hash) {
+				Node parent = new BitmapNode(edit, 1 << ((this.hash >>> shift) & MASK), new Object[] { null, this });
+				return parent.assoc(edit, shift, hash, key, value, box);
+			}
+			int i = indexOf(key);
+			Object[] changed;
+			if (i >= 0) {
+				box.previous = array[i + 1];
+				if (array[i + 1] == value) {
+					return this;
+				}
+				changed = this.edit == edit ? array : array.clone();
+				changed[i + 1] = value;
+			} else {
+				changed = new Object[array.length + 2];
+				System.arraycopy(array, 0, changed, 0, array.length);
+				changed[array.length] = key;
+				changed[array.length + 1] = value;
+			}
+			if (this.edit == edit) {
+				array = changed;
+				return this;
+			}
+			return new CollisionNode(edit, hash, changed);
+		}
+
+		@Override
+		Node without(Object edit, int shift, int hash, Object key, Box box) {
+			int i = hash == this.hash ? indexOf(key) : -1;
+			if (i < 0) {
+				return this;
+			}
+			box.previous = array[i + 1];
+			if (array.length == 2) {
+				return null;
+			}
+			Object[] shrunk = new Object[array.length - 2];
+			System.arraycopy(array, 0, shrunk, 0, i);
+			System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+			if (this.edit == edit) {
+				array = shrunk;
+				return this;
+			}
+			return new CollisionNode(edit, hash, shrunk);
+		}
+	}
+
+	private Node root;
+	private int size;
+	private Object edit = new Object();
+
+	static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == b || a.equals(b);
+	}
+
+	private static Node createNode(Object edit, int shift, Object key1, Object value1, int hash2, Object key2,
+			Object value2) {
+		int hash1 = hash(key1);
+		if (hash1 == hash2) {
+			return new CollisionNode(edit, hash1, new Object[] { key1, value1, key2, value2 });
+		}
+		Box box = new Box();
+		Node result = new BitmapNode(edit, 0, EMPTY).assoc(edit, shift, hash1, key1, value1, box);
+		return result.assoc(edit, shift, hash2, key2, value2, box);
+	}
+
+	/**
+	 * Captures the current state and stops changing its nodes in place.
+	 */
+	Root freeze() {
+		edit = new Object();
+		return new Root(root, size);
+	}
+
+	/**
+	 * Makes a captured state current.
+	 */
+	void thaw(Root state) {
+		root = state.root;
+		size = state.size;
+		edit = new Object();
+	}
+
+	int size() {
+		return size;
+	}
+
+	Object get(Object key) {
+		return root == null ? NOT_FOUND : root.find(0, hash(key), key);
+	}
+
+	/**
+	 * Returns the previous value, or {@link #NOT_FOUND} if the key was added.
+	 */
+	Object put(Object key, Object value) {
+		Box box = new Box();
+		Node node = root != null ? root : new BitmapNode(edit, 0, EMPTY);
+		root = node.assoc(edit, 0, hash(key), key, value, box);
+		if (box.previous == NOT_FOUND) {
+			size++;
+		}
+		return box.previous;
+	}
+
+	/**
+	 * Returns the removed value, or {@link #NOT_FOUND} if the key was absent.
+	 */
+	Object remove(Object key) {
+		if (root == null) {
+			return NOT_FOUND;
+		}
+		Box box = new Box();
+		root = root.without(edit, 0, hash(key), key, box);
+		if (box.previous != NOT_FOUND) {
+			size--;
+		}
+		return box.previous;
+	}
+
+	void clear() {
+		root = null;
+		size = 0;
+	}
+
+	/**
+	 * Returns a cursor over the current entries. The trie is frozen first, so
+	 * later writes copy the nodes the cursor walks instead of changing them.
+	 */
+	Cursor cursor() {
+		return new Cursor(freeze().root);
+	}
+
+	/**
+	 * Depth first walk over the entries of a frozen trie.
+	 */
+	static final class Cursor {
+		private Object[][] arrays = new Object[8][];
+		private int[] indexes = new int[8];
+		private int depth = -1;
+		private Object key;
+		private Object value;
+
+		private Cursor(Node root) {
+			if (root != null) {
+				push(root);
+			}
+		}
+
+		private void push(Node node) {
+			depth++;
+			if (depth == arrays.length) {
+				Object[][] grownArrays = new Object[depth * 2][];
+				System.arraycopy(arrays, 0, grownArrays, 0, depth);
+				arrays = grownArrays;
+				int[] grownIndexes = new int[depth * 2];
+				System.arraycopy(indexes, 0, grownIndexes, 0, depth);
+				indexes = grownIndexes;
+			}
+			arrays[depth] = node.array;
+			indexes[depth] = 0;
+		}
+
+		/**
+		 * Moves to the next entry, returning false when there is none.
+		 */
+		boolean advance() {
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int i = indexes[depth];
+				if (i >= array.length) {
+					arrays[depth--] = null;
+					continue;
+				}
+				indexes[depth] = i + 2;
+				if (array[i] == null) {
+					push((Node) array[i + 1]);
+				} else {
+					key = array[i];
+					value = array[i + 1];
+					return true;
+				}
+			}
+			return false;
+		}
+
+		Object key() {
+			return key;
+		}
+
+		Object value() {
+			return value;
+		}
+	}
+}
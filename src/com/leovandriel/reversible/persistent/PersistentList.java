@@ -0,0 +1,198 @@
+package com.leovandriel.reversible.persistent;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityManager;
+
+/**
+ * Reversible list on a persistent vector. Every write runs as a
+ * {@link RootSwap} through the manager, but only the first write in each
+ * activity keeps the root from before it. Undo and redo swap roots, which
+ * takes constant time however many writes the activity made.
+ * <p>
+ * Get and set take time logarithmic in the size, as do add and remove at the
+ * end. Insertion and removal elsewhere move all later values. The swap is not
+ * encodable, so activities that change this list are never spilled or
+ * journaled.
+ */
+public class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+	private static final int SET = 0;
+	private static final int APPEND = 1;
+	private static final int INSERT = 2;
+	private static final int REMOVE = 3;
+	private static final int CLEAR = 4;
+
+	private VectorTrie vector = new VectorTrie();
+	private ActivityManager manager;
+	private Activity recorded;
+
+	public PersistentList(ActivityManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Write to the list. The first write in an activity keeps the root from
+	 * before it, and its undo and redo swap between that root and the one
+	 * after the activity. Later writes in the same activity are covered by
+	 * that swap, so they do nothing on undo and redo and merge into the
+	 * action before them.
+	 */
+	public class RootSwap implements Action<Object>, Coalescable, Continuation, CoveredWrite {
+		private int opcode;
+		private int index;
+		private Object value;
+		private boolean done;
+		private VectorTrie.Root before;
+		private VectorTrie.Root after;
+
+		private RootSwap(int opcode, int index, Object value) {
+			this.opcode = opcode;
+			this.index = index;
+			this.value = value;
+		}
+
+		/**
+		 * Writes on the first run, checking under the manager's guard whether
+		 * this is the first write in the current activity.
+		 */
+		public Object run() {
+			if (done) {
+				if (before != null) {
+					vector.thaw(after);
+					modCount++;
+				}
+				return null;
+			}
+			Activity current = manager.getCurrentActivity();
+			VectorTrie.Root root = current == null || current != recorded ? vector.freeze() : null;
+			Object result = apply(opcode, index, value);
+			before = root;
+			recorded = current;
+			done = true;
+			value = null;
+			return result;
+		}
+
+		public void unrun() {
+			if (before != null) {
+				after = vector.freeze();
+				vector.thaw(before);
+				modCount++;
+			}
+		}
+
+		public boolean isCovered() {
+			return done && before == null;
+		}
+
+		/**
+		 * Absorbs a following write that a swap in this activity already
+		 * covers, whichever persistent collection it was made to.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof CoveredWrite && ((CoveredWrite) next).isCovered()) {
+				return this;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + (before != null) + ')';
+		}
+	}
+
+	/**
+	 * Applies the write to the vector, returning the value it replaced or
+	 * removed. Indexes are checked here, against the size at the write.
+	 */
+	private Object apply(int opcode, int index, Object value) {
+		switch (opcode) {
+		case SET:
+			checkIndex(index, vector.size());
+			modCount++;
+			return vector.set(index, value);
+		case APPEND:
+			modCount++;
+			vector.add(value);
+			return null;
+		case INSERT:
+			checkIndex(index, vector.size() + 1);
+			modCount++;
+			vector.insert(index, value);
+			return null;
+		case REMOVE:
+			checkIndex(index, vector.size());
+			modCount++;
+			return vector.remove(index);
+		case CLEAR:
+			modCount++;
+			vector.clear();
+			return null;
+		default:
+			throw new IllegalStateException("Unknown list opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Runs the write through the manager, or applies it directly while the
+	 * calling thread runs unrecorded.
+	 */
+	private Object write(int opcode, int index, Object value) {
+		if (!manager.isRecording()) {
+			return apply(opcode, index, value);
+		}
+		return manager.run(new RootSwap(opcode, index, value));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		checkIndex(index, vector.size());
+		return (T) vector.get(index);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T set(int index, T value) {
+		return (T) write(SET, index, value);
+	}
+
+	@Override
+	public boolean add(T value) {
+		write(APPEND, 0, value);
+		return true;
+	}
+
+	@Override
+	public void add(int index, T value) {
+		write(INSERT, index, value);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T remove(int index) {
+		return (T) write(REMOVE, index, null);
+	}
+
+	@Override
+	public void clear() {
+		write(CLEAR, 0, null);
+	}
+
+	@Override
+	public int size() {
+		return vector.size();
+	}
+
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
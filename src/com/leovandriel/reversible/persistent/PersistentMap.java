@@ -0,0 +1,285 @@
+package com.leovandriel.reversible.persistent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityManager;
+
+/**
+ * Reversible map on a hash array mapped trie. Like {@link PersistentList},
+ * every write runs as a {@link RootSwap}, only the first in each activity
+ * keeps a root, and undo and redo swap roots in constant time. The swap is not encodable, so activities
+ * that change this map are never spilled or journaled.
+ */
+public class PersistentMap<K, V> extends AbstractMap<K, V> {
+	private static final int PUT = 0;
+	private static final int REMOVE = 1;
+	private static final int CLEAR = 2;
+	private static final Object NULL_KEY = new Object();
+
+	private HashTrie trie = new HashTrie();
+	private ActivityManager manager;
+	private Activity recorded;
+	private EntrySet entrySet;
+
+	public PersistentMap(ActivityManager manager) {
+		this.manager = manager;
+	}
+
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> K unmask(Object key) {
+		return key == NULL_KEY ? null : (K) key;
+	}
+
+	/**
+	 * Write to the map, keeping the root from before it only if it is the
+	 * first in its activity, as in {@link PersistentList.RootSwap}.
+	 */
+	public class RootSwap implements Action<Object>, Coalescable, Continuation, CoveredWrite {
+		private int opcode;
+		private Object key;
+		private Object value;
+		private boolean done;
+		private HashTrie.Root before;
+		private HashTrie.Root after;
+
+		private RootSwap(int opcode, Object key, Object value) {
+			this.opcode = opcode;
+			this.key = key;
+			this.value = value;
+		}
+
+		/**
+		 * Writes on the first run, checking under the manager's guard whether
+		 * this is the first write in the current activity.
+		 */
+		public Object run() {
+			if (done) {
+				if (before != null) {
+					trie.thaw(after);
+				}
+				return null;
+			}
+			Activity current = manager.getCurrentActivity();
+			HashTrie.Root root = current == null || current != recorded ? trie.freeze() : null;
+			Object result = apply(opcode, key, value);
+			before = root;
+			recorded = current;
+			done = true;
+			key = null;
+			value = null;
+			return result;
+		}
+
+		public void unrun() {
+			if (before != null) {
+				after = trie.freeze();
+				trie.thaw(before);
+			}
+		}
+
+		public boolean isCovered() {
+			return done && before == null;
+		}
+
+		/**
+		 * Absorbs a following write that a swap in this activity already
+		 * covers, whichever persistent collection it was made to.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof CoveredWrite && ((CoveredWrite) next).isCovered()) {
+				return this;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + (before != null) + ')';
+		}
+	}
+
+	/**
+	 * Applies the write to the trie, returning the value it replaced or
+	 * removed, or {@link HashTrie#NOT_FOUND}.
+	 */
+	private Object apply(int opcode, Object key, Object value) {
+		switch (opcode) {
+		case PUT:
+			return trie.put(key, value);
+		case REMOVE:
+			return trie.remove(key);
+		case CLEAR:
+			trie.clear();
+			return HashTrie.NOT_FOUND;
+		default:
+			throw new IllegalStateException("Unknown map opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Runs the write through the manager, or applies it directly while the
+	 * calling thread runs unrecorded.
+	 */
+	private Object write(int opcode, Object key, Object value) {
+		if (!manager.isRecording()) {
+			return apply(opcode, key, value);
+		}
+		return manager.run(new RootSwap(opcode, key, value));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		Object result = trie.get(mask(key));
+		return result != HashTrie.NOT_FOUND ? (V) result : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return trie.get(mask(key)) != HashTrie.NOT_FOUND;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		Object result = write(PUT, mask(key), value);
+		return result != HashTrie.NOT_FOUND ? (V) result : null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		Object result = write(REMOVE, mask(key), null);
+		return result != HashTrie.NOT_FOUND ? (V) result : null;
+	}
+
+	@Override
+	public void clear() {
+		write(CLEAR, null, null);
+	}
+
+	@Override
+	public int size() {
+		return trie.size();
+	}
+
+	/**
+	 * Returns the entries, with removal and setting values recorded.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K, V>> {
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return trie.size();
+		}
+
+		@Override
+		public void clear() {
+			PersistentMap.this.clear();
+		}
+	}
+
+	/**
+	 * Iterates the trie as it was when the iterator was created, so writes
+	 * during iteration do not disturb it.
+	 */
+	private class EntryIterator implements Iterator<Entry<K, V>> {
+		private HashTrie.Cursor cursor = trie.cursor();
+		private boolean pending = cursor.advance();
+		private K current;
+		private boolean removable;
+
+		public boolean hasNext() {
+			return pending;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Entry<K, V> next() {
+			if (!pending) {
+				throw new NoSuchElementException();
+			}
+			current = PersistentMap.<K> unmask(cursor.key());
+			Entry<K, V> result = new TrieEntry(current, (V) cursor.value());
+			removable = true;
+			pending = cursor.advance();
+			return result;
+		}
+
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+			PersistentMap.this.remove(current);
+			removable = false;
+		}
+	}
+
+	private class TrieEntry implements Entry<K, V> {
+		private K key;
+		private V value;
+
+		public TrieEntry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public V setValue(V value) {
+			V result = this.value;
+			put(key, value);
+			this.value = value;
+			return result;
+		}
+
+		@Override
+		public int hashCode() {
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry<?, ?>)) {
+				return false;
+			}
+			Entry<?, ?> other = (Entry<?, ?>) o;
+			return (key == null ? other.getKey() == null : key.equals(other.getKey()))
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.leovandriel.reversible.persistent;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityManager;
+
+/**
+ * Reversible set on a hash array mapped trie, running every write as a
+ * {@link RootSwap} that keeps a root only for the first write in each
+ * activity, like {@link PersistentMap}.
+ */
+public class PersistentSet<T> extends AbstractSet<T> {
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int CLEAR = 2;
+	private static final Object NULL_VALUE = new Object();
+
+	private HashTrie trie = new HashTrie();
+	private ActivityManager manager;
+	private Activity recorded;
+
+	public PersistentSet(ActivityManager manager) {
+		this.manager = manager;
+	}
+
+	private static Object mask(Object value) {
+		return value == null ? NULL_VALUE : value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T unmask(Object value) {
+		return value == NULL_VALUE ? null : (T) value;
+	}
+
+	/**
+	 * Write to the set, keeping the root from before it only if it is the
+	 * first in its activity, as in {@link PersistentList.RootSwap}.
+	 */
+	public class RootSwap implements Action<Object>, Coalescable, Continuation, CoveredWrite {
+		private int opcode;
+		private Object key;
+		private Object value;
+		private boolean done;
+		private HashTrie.Root before;
+		private HashTrie.Root after;
+
+		private RootSwap(int opcode, Object key, Object value) {
+			this.opcode = opcode;
+			this.key = key;
+			this.value = value;
+		}
+
+		/**
+		 * Writes on the first run, checking under the manager's guard whether
+		 * this is the first write in the current activity.
+		 */
+		public Object run() {
+			if (done) {
+				if (before != null) {
+					trie.thaw(after);
+				}
+				return null;
+			}
+			Activity current = manager.getCurrentActivity();
+			HashTrie.Root root = current == null || current != recorded ? trie.freeze() : null;
+			Object result = apply(opcode, key, value);
+			before = root;
+			recorded = current;
+			done = true;
+			key = null;
+			value = null;
+			return result;
+		}
+
+		public void unrun() {
+			if (before != null) {
+				after = trie.freeze();
+				trie.thaw(before);
+			}
+		}
+
+		public boolean isCovered() {
+			return done && before == null;
+		}
+
+		/**
+		 * Absorbs a following write that a swap in this activity already
+		 * covers, whichever persistent collection it was made to.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof CoveredWrite && ((CoveredWrite) next).isCovered()) {
+				return this;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + (before != null) + ')';
+		}
+	}
+
+	/**
+	 * Applies the write to the trie, returning {@link HashTrie#NOT_FOUND} if
+	 * the value was absent.
+	 */
+	private Object apply(int opcode, Object key, Object value) {
+		switch (opcode) {
+		case ADD:
+			return trie.put(key, value);
+		case REMOVE:
+			return trie.remove(key);
+		case CLEAR:
+			trie.clear();
+			return HashTrie.NOT_FOUND;
+		default:
+			throw new IllegalStateException("Unknown set opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Runs the write through the manager, or applies it directly while the
+	 * calling thread runs unrecorded.
+	 */
+	private Object write(int opcode, Object key, Object value) {
+		if (!manager.isRecording()) {
+			return apply(opcode, key, value);
+		}
+		return manager.run(new RootSwap(opcode, key, value));
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return trie.get(mask(o)) != HashTrie.NOT_FOUND;
+	}
+
+	@Override
+	public boolean add(T value) {
+		return write(ADD, mask(value), Boolean.TRUE) == HashTrie.NOT_FOUND;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return write(REMOVE, mask(o), null) != HashTrie.NOT_FOUND;
+	}
+
+	@Override
+	public void clear() {
+		write(CLEAR, null, null);
+	}
+
+	@Override
+	public int size() {
+		return trie.size();
+	}
+
+	/**
+	 * Iterates the set as it was when the iterator was created.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private HashTrie.Cursor cursor = trie.cursor();
+			private boolean pending = cursor.advance();
+			private T current;
+			private boolean removable;
+
+			public boolean hasNext() {
+				return pending;
+			}
+
+			public T next() {
+				if (!pending) {
+					throw new NoSuchElementException();
+				}
+				current = PersistentSet.<T> unmask(cursor.key());
+				removable = true;
+				pending = cursor.advance();
+				return current;
+			}
+
+			public void remove() {
+				if (!removable) {
+					throw new IllegalStateException();
+				}
+				PersistentSet.this.remove(current);
+				removable = false;
+			}
+		};
+	}
+}
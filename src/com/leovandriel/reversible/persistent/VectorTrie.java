@@ -0,0 +1,256 @@
+package com.leovandriel.reversible.persistent;
+
+/**
+ * Persistent vector as a 32-way trie with a separate tail, where writes copy
+ * the path to the changed leaf. Nodes created since the last
+ * {@link #freeze()} carry the current edit token and are changed in place, so
+ * a long run of writes between freezes copies each path only once.
+ */
+final class VectorTrie {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final class Node {
+		private final Object edit;
+		private final Object[] array;
+
+		Node(Object edit, Object[] array) {
+			this.edit = edit;
+			this.array = array;
+		}
+	}
+
+	/**
+	 * Immutable state of the vector, as captured by {@link VectorTrie#freeze()}.
+	 */
+	static final class Root {
+		private final int size;
+		private final int shift;
+		private final Node root;
+		private final Object[] tail;
+
+		private Root(int size, int shift, Node root, Object[] tail) {
+			this.size = size;
+			this.shift = shift;
+			this.root = root;
+			this.tail = tail;
+		}
+	}
+
+	private int size;
+	private int shift = BITS;
+	private Node root;
+	private Object[] tail = new Object[WIDTH];
+	private boolean tailOwned = true;
+	private Object edit = new Object();
+
+	VectorTrie() {
+		root = new Node(edit, new Object[WIDTH]);
+	}
+
+	/**
+	 * Captures the current state and stops changing its nodes in place.
+	 */
+	Root freeze() {
+		edit = new Object();
+		tailOwned = false;
+		return new Root(size, shift, root, tail);
+	}
+
+	/**
+	 * Makes a captured state current.
+	 */
+	void thaw(Root state) {
+		size = state.size;
+		shift = state.shift;
+		root = state.root;
+		tail = state.tail;
+		edit = new Object();
+		tailOwned = false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int tailOffset() {
+		return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+	}
+
+	private Object[] arrayFor(int index) {
+		if (index >= tailOffset()) {
+			return tail;
+		}
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Node) node.array[(index >>> level) & MASK];
+		}
+		return node.array;
+	}
+
+	private Node editable(Node node) {
+		return node.edit == edit ? node : new Node(edit, node.array.clone());
+	}
+
+	private void ownTail() {
+		if (!tailOwned) {
+			tail = tail.clone();
+			tailOwned = true;
+		}
+	}
+
+	Object get(int index) {
+		return arrayFor(index)[index & MASK];
+	}
+
+	Object set(int index, Object value) {
+		Object[] array;
+		if (index >= tailOffset()) {
+			ownTail();
+			array = tail;
+		} else {
+			root = editable(root);
+			Node node = root;
+			for (int level = shift; level > 0; level -= BITS) {
+				int sub = (index >>> level) & MASK;
+				Node child = editable((Node) node.array[sub]);
+				node.array[sub] = child;
+				node = child;
+			}
+			array = node.array;
+		}
+		Object result = array[index & MASK];
+		array[index & MASK] = value;
+		return result;
+	}
+
+	void add(Object value) {
+		if (size - tailOffset() < WIDTH) {
+			ownTail();
+			tail[size & MASK] = value;
+		} else {
+			Node tailNode = new Node(tailOwned ? edit : null, tail);
+			if ((size >>> BITS) > (1 << shift)) {
+				Node grown = new Node(edit, new Object[WIDTH]);
+				grown.array[0] = root;
+				grown.array[1] = newPath(shift, tailNode);
+				root = grown;
+				shift += BITS;
+			} else {
+				root = pushTail(shift, root, tailNode);
+			}
+			tail = new Object[WIDTH];
+			tailOwned = true;
+			tail[0] = value;
+		}
+		size++;
+	}
+
+	private Node pushTail(int level, Node parent, Node tailNode) {
+		int sub = ((size - 1) >>> level) & MASK;
+		Node result = editable(parent);
+		if (level == BITS) {
+			result.array[sub] = tailNode;
+		} else {
+			Node child = (Node) parent.array[sub];
+			result.array[sub] = child != null ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS,
+					tailNode);
+		}
+		return result;
+	}
+
+	private Node newPath(int level, Node node) {
+		if (level == 0) {
+			return node;
+		}
+		Node result = new Node(edit, new Object[WIDTH]);
+		result.array[0] = newPath(level - BITS, node);
+		return result;
+	}
+
+	Object removeLast() {
+		Object result = get(size - 1);
+		if (size == 1) {
+			clear();
+		} else if (size - tailOffset() > 1) {
+			ownTail();
+			tail[(size - 1) & MASK] = null;
+			size--;
+		} else {
+			Object[] newTail = arrayFor(size - 2);
+			Node newRoot = popTail(shift, root);
+			if (newRoot == null) {
+				newRoot = new Node(edit, new Object[WIDTH]);
+			}
+			if (shift > BITS && newRoot.array[1] == null) {
+				root = (Node) newRoot.array[0];
+				shift -= BITS;
+			} else {
+				root = newRoot;
+			}
+			tail = newTail;
+			tailOwned = false;
+			size--;
+		}
+		return result;
+	}
+
+	private Node popTail(int level, Node node) {
+		int sub = ((size - 2) >>> level) & MASK;
+		if (level > BITS) {
+			Node child = popTail(level - BITS, (Node) node.array[sub]);
+			if (child == null && sub == 0) {
+				return null;
+			}
+			Node result = editable(node);
+			result.array[sub] = child;
+			return result;
+		}
+		if (sub == 0) {
+			return null;
+		}
+		Node result = editable(node);
+		result.array[sub] = null;
+		return result;
+	}
+
+	/**
+	 * Inserts by removing and re-adding the values after the index, which
+	 * costs time proportional to their number.
+	 */
+	void insert(int index, Object value) {
+		Object[] moved = truncate(index);
+		add(value);
+		for (int i = 0; i < moved.length; i++) {
+			add(moved[i]);
+		}
+	}
+
+	Object remove(int index) {
+		Object[] moved = truncate(index);
+		for (int i = 1; i < moved.length; i++) {
+			add(moved[i]);
+		}
+		return moved[0];
+	}
+
+	/**
+	 * Removes and returns the values from the index on.
+	 */
+	private Object[] truncate(int index) {
+		Object[] result = new Object[size - index];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = removeLast();
+		}
+		return result;
+	}
+
+	void clear() {
+		size = 0;
+		shift = BITS;
+		root = new Node(edit, new Object[WIDTH]);
+		tail = new Object[WIDTH];
+		tailOwned = true;
+	}
+}
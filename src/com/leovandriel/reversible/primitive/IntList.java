@@ -0,0 +1,505 @@
+package com.leovandriel.reversible.primitive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.ValueCodec;
+
+/**
+ * Reversible list of int values, stored unboxed in a growable array. Its
+ * actions capture int fields and arrays, so neither the list nor its history
+ * boxes, and consecutive adds coalesce into a single {@link AddRange}.
+ */
+public class IntList implements ActionDecoder, Checkpointable {
+	private static final byte ADD = 1;
+	private static final byte ADD_RANGE = 2;
+	private static final byte ADD_AT = 3;
+	private static final byte REMOVE_AT = 4;
+	private static final byte SET = 5;
+	private static final byte CLEAR = 6;
+
+	private int[] values;
+	private int size;
+	private ActionRunner runner;
+	private OpcodeRunner recorder;
+
+	public IntList(ActionRunner runner) {
+		this(runner, 10);
+	}
+
+	public IntList(ActionRunner runner, int capacity) {
+		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
+		this.values = new int[capacity];
+	}
+
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			int[] grown = new int[Math.max(capacity, values.length * 2)];
+			System.arraycopy(values, 0, grown, 0, size);
+			values = grown;
+		}
+	}
+
+	private void insert(int index, int value) {
+		ensureCapacity(size + 1);
+		System.arraycopy(values, index, values, index + 1, size - index);
+		values[index] = value;
+		size++;
+	}
+
+	private int delete(int index) {
+		int result = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		return result;
+	}
+
+	private void checkIndex(int index, int bound) {
+		if (index < 0 || index >= bound) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	public class Add implements Action<Void>, Coalescable, EncodableAction {
+		private int value;
+
+		public Add(int value) {
+			this.value = value;
+		}
+
+		public Void run() {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+			return null;
+		}
+
+		public void unrun() {
+			size--;
+		}
+
+		/**
+		 * Merges a following add on the same list into an {@link AddRange}.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof IntList.Add && ((Add) next).getList() == IntList.this) {
+				AddRange result = new AddRange(value);
+				result.append(((Add) next).value);
+				return result;
+			}
+			return null;
+		}
+
+		private IntList getList() {
+			return IntList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD);
+			out.writeInt(value);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ')';
+		}
+	}
+
+	public void add(int value) {
+		if (unrecorded()) {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+			return;
+		}
+		runner.run(new Add(value));
+	}
+
+	/**
+	 * Contiguous run of values appended to the end of the list, produced by
+	 * coalescing {@link Add} actions.
+	 */
+	public class AddRange implements Action<Void>, Coalescable, EncodableAction {
+		private int[] added = new int[4];
+		private int count;
+
+		public AddRange(int value) {
+			append(value);
+		}
+
+		private AddRange() {
+		}
+
+		private void append(int value) {
+			if (count == added.length) {
+				int[] grown = new int[count * 2];
+				System.arraycopy(added, 0, grown, 0, count);
+				added = grown;
+			}
+			added[count++] = value;
+		}
+
+		public Void run() {
+			ensureCapacity(size + count);
+			System.arraycopy(added, 0, values, size, count);
+			size += count;
+			return null;
+		}
+
+		public void unrun() {
+			size -= count;
+		}
+
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof IntList.Add && ((Add) next).getList() == IntList.this) {
+				append(((Add) next).value);
+				return this;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_RANGE);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeInt(added[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + count + ')';
+		}
+	}
+
+	public class AddAt implements Action<Void>, EncodableAction {
+		private int index;
+		private int value;
+
+		public AddAt(int index, int value) {
+			this.index = index;
+			this.value = value;
+		}
+
+		public Void run() {
+			insert(index, value);
+			return null;
+		}
+
+		public void unrun() {
+			delete(index);
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_AT);
+			out.writeInt(index);
+			out.writeInt(value);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ',' + index + ')';
+		}
+	}
+
+	public void add(int index, int value) {
+		checkIndex(index, size + 1);
+		if (unrecorded()) {
+			insert(index, value);
+			return;
+		}
+		runner.run(new AddAt(index, value));
+	}
+
+	public class RemoveAt implements Action<Void>, EncodableAction {
+		private int index;
+		private int backup;
+
+		public RemoveAt(int index) {
+			this.index = index;
+		}
+
+		public Void run() {
+			backup = delete(index);
+			return null;
+		}
+
+		public void unrun() {
+			insert(index, backup);
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_AT);
+			out.writeInt(index);
+			out.writeInt(backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + index + ')';
+		}
+	}
+
+	/**
+	 * Removes the value at the index.
+	 *
+	 * @return the removed value
+	 */
+	public int removeAt(int index) {
+		checkIndex(index, size);
+		if (unrecorded()) {
+			return delete(index);
+		}
+		RemoveAt action = new RemoveAt(index);
+		runner.run(action);
+		return action.backup;
+	}
+
+	public class Set implements Action<Void>, Coalescable, EncodableAction {
+		private int index;
+		private int value;
+		private int backup;
+
+		public Set(int index, int value) {
+			this.index = index;
+			this.value = value;
+		}
+
+		public Void run() {
+			backup = values[index];
+			values[index] = value;
+			return null;
+		}
+
+		public void unrun() {
+			values[index] = backup;
+		}
+
+		/**
+		 * Absorbs a following set on the same index, keeping the oldest backup.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof IntList.Set) {
+				Set other = (Set) next;
+				if (other.getList() == IntList.this && other.index == index) {
+					value = other.value;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private IntList getList() {
+			return IntList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SET);
+			out.writeInt(index);
+			out.writeInt(value);
+			out.writeInt(backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ',' + index + ')';
+		}
+	}
+
+	/**
+	 * Replaces the value at the index.
+	 *
+	 * @return the previous value
+	 */
+	public int set(int index, int value) {
+		checkIndex(index, size);
+		if (unrecorded()) {
+			int result = values[index];
+			values[index] = value;
+			return result;
+		}
+		Set action = new Set(index, value);
+		runner.run(action);
+		return action.backup;
+	}
+
+	public class Clear implements Action<Void>, EncodableAction {
+		private int[] backup;
+		private int backupSize;
+
+		/**
+		 * Hands the storage over to history and starts from an empty array.
+		 */
+		public Void run() {
+			backup = values;
+			backupSize = size;
+			values = new int[Math.min(backup.length, 10)];
+			size = 0;
+			return null;
+		}
+
+		public void unrun() {
+			values = backup;
+			size = backupSize;
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			out.writeInt(backupSize);
+			for (int i = 0; i < backupSize; i++) {
+				out.writeInt(backup[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + ')';
+		}
+	}
+
+	/**
+	 * Clears the list in constant time, keeping its storage in history.
+	 */
+	public void clear() {
+		if (unrecorded()) {
+			size = 0;
+			return;
+		}
+		runner.run(new Clear());
+	}
+
+	public int get(int index) {
+		checkIndex(index, size);
+		return values[index];
+	}
+
+	public int indexOf(int value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(int value) {
+		return indexOf(value) >= 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int[] toArray() {
+		int[] result = new int[size];
+		System.arraycopy(values, 0, result, 0, size);
+		return result;
+	}
+
+	public Object snapshot() {
+		return toArray();
+	}
+
+	public void restore(Object snapshot) {
+		int[] restored = (int[]) snapshot;
+		values = new int[Math.max(restored.length, 10)];
+		System.arraycopy(restored, 0, values, 0, restored.length);
+		size = restored.length;
+	}
+
+	/**
+	 * Recreates an action of this list, as written by its encode method.
+	 */
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case ADD:
+			return new Add(in.readInt());
+		case ADD_RANGE: {
+			AddRange result = new AddRange();
+			for (int i = in.readInt(); i > 0; i--) {
+				result.append(in.readInt());
+			}
+			return result;
+		}
+		case ADD_AT: {
+			int index = in.readInt();
+			return new AddAt(index, in.readInt());
+		}
+		case REMOVE_AT: {
+			RemoveAt result = new RemoveAt(in.readInt());
+			result.backup = in.readInt();
+			return result;
+		}
+		case SET: {
+			int index = in.readInt();
+			Set result = new Set(index, in.readInt());
+			result.backup = in.readInt();
+			return result;
+		}
+		case CLEAR: {
+			Clear result = new Clear();
+			result.backupSize = in.readInt();
+			result.backup = new int[result.backupSize];
+			for (int i = 0; i < result.backupSize; i++) {
+				result.backup[i] = in.readInt();
+			}
+			return result;
+		}
+		default:
+			throw new IOException("Unknown int list opcode: " + opcode);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(values[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
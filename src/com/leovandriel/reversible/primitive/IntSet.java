@@ -0,0 +1,338 @@
+package com.leovandriel.reversible.primitive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.ValueCodec;
+
+/**
+ * Reversible set of int values, stored unboxed in an open addressing table
+ * with linear probing. Removal shifts later entries back instead of leaving
+ * tombstones, so undoing many removals does not degrade lookups.
+ */
+public class IntSet implements ActionDecoder, Checkpointable {
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private boolean[] used;
+	private int size;
+	private ActionRunner runner;
+	private OpcodeRunner recorder;
+
+	public IntSet(ActionRunner runner) {
+		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
+		allocate(MIN_CAPACITY);
+	}
+
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		used = new boolean[capacity];
+	}
+
+	private static int slot(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot holding the key, or the free slot where it belongs.
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		while (used[i] && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private boolean insert(int key) {
+		int i = find(key);
+		if (used[i]) {
+			return false;
+		}
+		keys[i] = key;
+		used[i] = true;
+		if (++size * 4 > keys.length * 3) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int j = find(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				used[j] = true;
+			}
+		}
+	}
+
+	private boolean delete(int key) {
+		int gap = find(key);
+		if (!used[gap]) {
+			return false;
+		}
+		int mask = keys.length - 1;
+		for (int i = (gap + 1) & mask; used[i]; i = (i + 1) & mask) {
+			if (((i - slot(keys[i], mask)) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				gap = i;
+			}
+		}
+		used[gap] = false;
+		size--;
+		return true;
+	}
+
+	public class Add implements Action<Void>, EncodableAction {
+		private int value;
+		private boolean addedOnRun;
+
+		public Add(int value) {
+			this.value = value;
+		}
+
+		public Void run() {
+			addedOnRun = insert(value);
+			return null;
+		}
+
+		public void unrun() {
+			if (addedOnRun) {
+				delete(value);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntSet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD);
+			out.writeInt(value);
+			out.writeBoolean(addedOnRun);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ')';
+		}
+	}
+
+	public boolean add(int value) {
+		if (unrecorded()) {
+			return insert(value);
+		}
+		Add action = new Add(value);
+		runner.run(action);
+		return action.addedOnRun;
+	}
+
+	public class Remove implements Action<Void>, EncodableAction {
+		private int value;
+		private boolean removedOnRun;
+
+		public Remove(int value) {
+			this.value = value;
+		}
+
+		public Void run() {
+			removedOnRun = delete(value);
+			return null;
+		}
+
+		public void unrun() {
+			if (removedOnRun) {
+				insert(value);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntSet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			out.writeInt(value);
+			out.writeBoolean(removedOnRun);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ')';
+		}
+	}
+
+	public boolean remove(int value) {
+		if (unrecorded()) {
+			return delete(value);
+		}
+		Remove action = new Remove(value);
+		runner.run(action);
+		return action.removedOnRun;
+	}
+
+	public class Clear implements Action<Void>, EncodableAction {
+		private int[] backupKeys;
+		private boolean[] backupUsed;
+		private int backupSize;
+
+		/**
+		 * Hands the table over to history and starts from an empty one.
+		 */
+		public Void run() {
+			backupKeys = keys;
+			backupUsed = used;
+			backupSize = size;
+			allocate(MIN_CAPACITY);
+			size = 0;
+			return null;
+		}
+
+		public void unrun() {
+			keys = backupKeys;
+			used = backupUsed;
+			size = backupSize;
+		}
+
+		public ActionDecoder getDecoder() {
+			return IntSet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			out.writeInt(backupKeys.length);
+			out.writeInt(backupSize);
+			for (int i = 0; i < backupKeys.length; i++) {
+				if (backupUsed[i]) {
+					out.writeInt(backupKeys[i]);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + ')';
+		}
+	}
+
+	/**
+	 * Clears the set in constant time, keeping its table in history.
+	 */
+	public void clear() {
+		if (unrecorded()) {
+			allocate(MIN_CAPACITY);
+			size = 0;
+			return;
+		}
+		runner.run(new Clear());
+	}
+
+	public boolean contains(int value) {
+		return used[find(value)];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int[] toArray() {
+		int[] result = new int[size];
+		for (int i = 0, j = 0; i < keys.length; i++) {
+			if (used[i]) {
+				result[j++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	public Object snapshot() {
+		return toArray();
+	}
+
+	public void restore(Object snapshot) {
+		int[] restored = (int[]) snapshot;
+		allocate(MIN_CAPACITY);
+		size = 0;
+		for (int i = 0; i < restored.length; i++) {
+			insert(restored[i]);
+		}
+	}
+
+	/**
+	 * Recreates an action of this set, as written by its encode method.
+	 */
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case ADD: {
+			Add result = new Add(in.readInt());
+			result.addedOnRun = in.readBoolean();
+			return result;
+		}
+		case REMOVE: {
+			Remove result = new Remove(in.readInt());
+			result.removedOnRun = in.readBoolean();
+			return result;
+		}
+		case CLEAR: {
+			Clear result = new Clear();
+			int mask = in.readInt() - 1;
+			result.backupKeys = new int[mask + 1];
+			result.backupUsed = new boolean[mask + 1];
+			result.backupSize = in.readInt();
+			for (int n = 0; n < result.backupSize; n++) {
+				int key = in.readInt();
+				int i = slot(key, mask);
+				while (result.backupUsed[i]) {
+					i = (i + 1) & mask;
+				}
+				result.backupKeys[i] = key;
+				result.backupUsed[i] = true;
+			}
+			return result;
+		}
+		default:
+			throw new IOException("Unknown int set opcode: " + opcode);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int i = 0, j = 0; i < keys.length; i++) {
+			if (used[i]) {
+				if (j++ > 0) {
+					builder.append(", ");
+				}
+				builder.append(keys[i]);
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
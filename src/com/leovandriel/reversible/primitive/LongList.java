@@ -0,0 +1,505 @@
+package com.leovandriel.reversible.primitive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.ValueCodec;
+
+/**
+ * Reversible list of long values, stored unboxed in a growable array. Its
+ * actions capture long fields and arrays, so neither the list nor its history
+ * boxes, and consecutive adds coalesce into a single {@link AddRange}.
+ */
+public class LongList implements ActionDecoder, Checkpointable {
+	private static final byte ADD = 1;
+	private static final byte ADD_RANGE = 2;
+	private static final byte ADD_AT = 3;
+	private static final byte REMOVE_AT = 4;
+	private static final byte SET = 5;
+	private static final byte CLEAR = 6;
+
+	private long[] values;
+	private int size;
+	private ActionRunner runner;
+	private OpcodeRunner recorder;
+
+	public LongList(ActionRunner runner) {
+		this(runner, 10);
+	}
+
+	public LongList(ActionRunner runner, int capacity) {
+		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
+		this.values = new long[capacity];
+	}
+
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			long[] grown = new long[Math.max(capacity, values.length * 2)];
+			System.arraycopy(values, 0, grown, 0, size);
+			values = grown;
+		}
+	}
+
+	private void insert(int index, long value) {
+		ensureCapacity(size + 1);
+		System.arraycopy(values, index, values, index + 1, size - index);
+		values[index] = value;
+		size++;
+	}
+
+	private long delete(int index) {
+		long result = values[index];
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		return result;
+	}
+
+	private void checkIndex(int index, int bound) {
+		if (index < 0 || index >= bound) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	public class Add implements Action<Void>, Coalescable, EncodableAction {
+		private long value;
+
+		public Add(long value) {
+			this.value = value;
+		}
+
+		public Void run() {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+			return null;
+		}
+
+		public void unrun() {
+			size--;
+		}
+
+		/**
+		 * Merges a following add on the same list into an {@link AddRange}.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof LongList.Add && ((Add) next).getList() == LongList.this) {
+				AddRange result = new AddRange(value);
+				result.append(((Add) next).value);
+				return result;
+			}
+			return null;
+		}
+
+		private LongList getList() {
+			return LongList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD);
+			out.writeLong(value);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ')';
+		}
+	}
+
+	public void add(long value) {
+		if (unrecorded()) {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+			return;
+		}
+		runner.run(new Add(value));
+	}
+
+	/**
+	 * Contiguous run of values appended to the end of the list, produced by
+	 * coalescing {@link Add} actions.
+	 */
+	public class AddRange implements Action<Void>, Coalescable, EncodableAction {
+		private long[] added = new long[4];
+		private int count;
+
+		public AddRange(long value) {
+			append(value);
+		}
+
+		private AddRange() {
+		}
+
+		private void append(long value) {
+			if (count == added.length) {
+				long[] grown = new long[count * 2];
+				System.arraycopy(added, 0, grown, 0, count);
+				added = grown;
+			}
+			added[count++] = value;
+		}
+
+		public Void run() {
+			ensureCapacity(size + count);
+			System.arraycopy(added, 0, values, size, count);
+			size += count;
+			return null;
+		}
+
+		public void unrun() {
+			size -= count;
+		}
+
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof LongList.Add && ((Add) next).getList() == LongList.this) {
+				append(((Add) next).value);
+				return this;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_RANGE);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeLong(added[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + count + ')';
+		}
+	}
+
+	public class AddAt implements Action<Void>, EncodableAction {
+		private int index;
+		private long value;
+
+		public AddAt(int index, long value) {
+			this.index = index;
+			this.value = value;
+		}
+
+		public Void run() {
+			insert(index, value);
+			return null;
+		}
+
+		public void unrun() {
+			delete(index);
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_AT);
+			out.writeInt(index);
+			out.writeLong(value);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ',' + index + ')';
+		}
+	}
+
+	public void add(int index, long value) {
+		checkIndex(index, size + 1);
+		if (unrecorded()) {
+			insert(index, value);
+			return;
+		}
+		runner.run(new AddAt(index, value));
+	}
+
+	public class RemoveAt implements Action<Void>, EncodableAction {
+		private int index;
+		private long backup;
+
+		public RemoveAt(int index) {
+			this.index = index;
+		}
+
+		public Void run() {
+			backup = delete(index);
+			return null;
+		}
+
+		public void unrun() {
+			insert(index, backup);
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_AT);
+			out.writeInt(index);
+			out.writeLong(backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + index + ')';
+		}
+	}
+
+	/**
+	 * Removes the value at the index.
+	 *
+	 * @return the removed value
+	 */
+	public long removeAt(int index) {
+		checkIndex(index, size);
+		if (unrecorded()) {
+			return delete(index);
+		}
+		RemoveAt action = new RemoveAt(index);
+		runner.run(action);
+		return action.backup;
+	}
+
+	public class Set implements Action<Void>, Coalescable, EncodableAction {
+		private int index;
+		private long value;
+		private long backup;
+
+		public Set(int index, long value) {
+			this.index = index;
+			this.value = value;
+		}
+
+		public Void run() {
+			backup = values[index];
+			values[index] = value;
+			return null;
+		}
+
+		public void unrun() {
+			values[index] = backup;
+		}
+
+		/**
+		 * Absorbs a following set on the same index, keeping the oldest backup.
+		 */
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof LongList.Set) {
+				Set other = (Set) next;
+				if (other.getList() == LongList.this && other.index == index) {
+					value = other.value;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private LongList getList() {
+			return LongList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SET);
+			out.writeInt(index);
+			out.writeLong(value);
+			out.writeLong(backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ',' + index + ')';
+		}
+	}
+
+	/**
+	 * Replaces the value at the index.
+	 *
+	 * @return the previous value
+	 */
+	public long set(int index, long value) {
+		checkIndex(index, size);
+		if (unrecorded()) {
+			long result = values[index];
+			values[index] = value;
+			return result;
+		}
+		Set action = new Set(index, value);
+		runner.run(action);
+		return action.backup;
+	}
+
+	public class Clear implements Action<Void>, EncodableAction {
+		private long[] backup;
+		private int backupSize;
+
+		/**
+		 * Hands the storage over to history and starts from an empty array.
+		 */
+		public Void run() {
+			backup = values;
+			backupSize = size;
+			values = new long[Math.min(backup.length, 10)];
+			size = 0;
+			return null;
+		}
+
+		public void unrun() {
+			values = backup;
+			size = backupSize;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			out.writeInt(backupSize);
+			for (int i = 0; i < backupSize; i++) {
+				out.writeLong(backup[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + ')';
+		}
+	}
+
+	/**
+	 * Clears the list in constant time, keeping its storage in history.
+	 */
+	public void clear() {
+		if (unrecorded()) {
+			size = 0;
+			return;
+		}
+		runner.run(new Clear());
+	}
+
+	public long get(int index) {
+		checkIndex(index, size);
+		return values[index];
+	}
+
+	public int indexOf(long value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(long value) {
+		return indexOf(value) >= 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long[] toArray() {
+		long[] result = new long[size];
+		System.arraycopy(values, 0, result, 0, size);
+		return result;
+	}
+
+	public Object snapshot() {
+		return toArray();
+	}
+
+	public void restore(Object snapshot) {
+		long[] restored = (long[]) snapshot;
+		values = new long[Math.max(restored.length, 10)];
+		System.arraycopy(restored, 0, values, 0, restored.length);
+		size = restored.length;
+	}
+
+	/**
+	 * Recreates an action of this list, as written by its encode method.
+	 */
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case ADD:
+			return new Add(in.readLong());
+		case ADD_RANGE: {
+			AddRange result = new AddRange();
+			for (int i = in.readInt(); i > 0; i--) {
+				result.append(in.readLong());
+			}
+			return result;
+		}
+		case ADD_AT: {
+			int index = in.readInt();
+			return new AddAt(index, in.readLong());
+		}
+		case REMOVE_AT: {
+			RemoveAt result = new RemoveAt(in.readInt());
+			result.backup = in.readLong();
+			return result;
+		}
+		case SET: {
+			int index = in.readInt();
+			Set result = new Set(index, in.readLong());
+			result.backup = in.readLong();
+			return result;
+		}
+		case CLEAR: {
+			Clear result = new Clear();
+			result.backupSize = in.readInt();
+			result.backup = new long[result.backupSize];
+			for (int i = 0; i < result.backupSize; i++) {
+				result.backup[i] = in.readLong();
+			}
+			return result;
+		}
+		default:
+			throw new IOException("Unknown long list opcode: " + opcode);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('[');
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(values[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,457 @@
+package com.leovandriel.reversible.primitive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.ValueCodec;
+
+/**
+ * Reversible map from long keys to objects, with the slot write history of
+ * {@link com.leovandriel.reversible.misc.ReversibleHashMap}: every put or
+ * remove rewrites one slot of an open addressing table, removal leaves a
+ * tombstone, and undo and redo restore the slot without probing. Keys are
+ * never boxed, in the table or in the actions. Their hash is deterministic,
+ * so unlike the object map, the actions are encodable.
+ */
+public class LongObjectMap<V> implements ActionDecoder, Checkpointable {
+	private static final byte WRITE = 1;
+	private static final byte SWAP = 2;
+	private static final byte FREE = 0;
+	private static final byte FULL = 1;
+	private static final byte DELETED = 2;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private byte[] states;
+	private int size;
+	private int deleted;
+	/**
+	 * Whether the installed arrays are also held by a swap or a checkpoint,
+	 * which needs them as they are. The next write copies them first.
+	 */
+	private boolean shared;
+	private ActionRunner runner;
+	private OpcodeRunner recorder;
+
+	public LongObjectMap(ActionRunner runner) {
+		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
+		this.keys = new long[MIN_CAPACITY];
+		this.values = new Object[MIN_CAPACITY];
+		this.states = new byte[MIN_CAPACITY];
+	}
+
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Returns the slot holding the key, or if it is absent, minus one minus
+	 * the slot where it would be inserted.
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int insert = -1;
+		for (int i = slot(key, mask);; i = (i + 1) & mask) {
+			byte state = states[i];
+			if (state == FREE) {
+				return -1 - (insert >= 0 ? insert : i);
+			}
+			if (state == DELETED) {
+				if (insert < 0) {
+					insert = i;
+				}
+			} else if (keys[i] == key) {
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * Writes the slot and adjusts the entry and tombstone counts.
+	 */
+	private void store(int slot, long key, Object value, byte state) {
+		if (shared) {
+			keys = keys.clone();
+			values = values.clone();
+			states = states.clone();
+			shared = false;
+		}
+		byte previous = states[slot];
+		if (previous == FULL) {
+			size--;
+		} else if (previous == DELETED) {
+			deleted--;
+		}
+		if (state == FULL) {
+			size++;
+		} else if (state == DELETED) {
+			deleted++;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		states[slot] = state;
+	}
+
+	/**
+	 * Installs an empty table of the given capacity and, if rehashing, moves
+	 * the entries of the current table into it.
+	 */
+	private void rebuild(int capacity, boolean rehash) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		byte[] oldStates = states;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		states = new byte[capacity];
+		size = 0;
+		deleted = 0;
+		shared = false;
+		if (rehash) {
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldStates[i] == FULL) {
+					store(-1 - find(oldKeys[i]), oldKeys[i], oldValues[i], FULL);
+				}
+			}
+		}
+	}
+
+	public class Write implements Action<V>, Coalescable, EncodableAction {
+		private int slot;
+		private long key;
+		private Object value;
+		private byte state;
+		private long oldKey;
+		private Object oldValue;
+		private byte oldState;
+
+		private Write(int slot, long key, Object value, byte state) {
+			this.slot = slot;
+			this.key = key;
+			this.value = value;
+			this.state = state;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V run() {
+			oldKey = keys[slot];
+			oldValue = values[slot];
+			oldState = states[slot];
+			store(slot, key, value, state);
+			return oldState == FULL ? (V) oldValue : null;
+		}
+
+		public void unrun() {
+			store(slot, oldKey, oldValue, oldState);
+		}
+
+		/**
+		 * Absorbs a following write to the same slot, keeping the oldest
+		 * contents.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof LongObjectMap.Write) {
+				Write other = (Write) next;
+				if (other.getMap() == LongObjectMap.this && other.slot == slot) {
+					key = other.key;
+					value = other.value;
+					state = other.state;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private LongObjectMap<V> getMap() {
+			return LongObjectMap.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongObjectMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(WRITE);
+			out.writeInt(slot);
+			out.writeLong(key);
+			codec.write(out, value);
+			out.writeByte(state);
+			out.writeLong(oldKey);
+			codec.write(out, oldValue);
+			out.writeByte(oldState);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + slot + ',' + key + ',' + value + ')';
+		}
+	}
+
+	/**
+	 * Replaces the whole table, for rehashing and clearing. Undo and redo only
+	 * swap the array references. A checkpoint restore may skip the writes
+	 * that would take a table back to its state at the swap, so both tables
+	 * are kept as they were and a write to an installed one copies it first.
+	 */
+	public class Swap implements Action<Void>, EncodableAction {
+		private int capacity;
+		private boolean rehash;
+		private long[] newKeys;
+		private Object[] newValues;
+		private byte[] newStates;
+		private int newSize;
+		private long[] oldKeys;
+		private Object[] oldValues;
+		private byte[] oldStates;
+		private int oldSize;
+		private int oldDeleted;
+
+		private Swap(int capacity, boolean rehash) {
+			this.capacity = capacity;
+			this.rehash = rehash;
+		}
+
+		/**
+		 * Builds the new table on the first run and swaps it in.
+		 */
+		public Void run() {
+			if (newKeys == null) {
+				oldKeys = keys;
+				oldValues = values;
+				oldStates = states;
+				oldSize = size;
+				oldDeleted = deleted;
+				rebuild(capacity, rehash);
+				newKeys = keys;
+				newValues = values;
+				newStates = states;
+				newSize = size;
+			} else {
+				keys = newKeys;
+				values = newValues;
+				states = newStates;
+				size = newSize;
+				deleted = 0;
+			}
+			shared = true;
+			return null;
+		}
+
+		public void unrun() {
+			keys = oldKeys;
+			values = oldValues;
+			states = oldStates;
+			size = oldSize;
+			deleted = oldDeleted;
+			shared = true;
+		}
+
+		public ActionDecoder getDecoder() {
+			return LongObjectMap.this;
+		}
+
+		/**
+		 * Writes the old table, which no later action changes. The new one is
+		 * rebuilt from it when the decoded action runs.
+		 */
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SWAP);
+			out.writeInt(capacity);
+			out.writeBoolean(rehash);
+			out.writeInt(oldKeys.length);
+			out.writeInt(oldSize + oldDeleted);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldStates[i] != FREE) {
+					out.writeInt(i);
+					out.writeByte(oldStates[i]);
+					out.writeLong(oldKeys[i]);
+					codec.write(out, oldValues[i]);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + capacity + ')';
+		}
+	}
+
+	/**
+	 * Puts the value with a single probe. If the key is new and the table is
+	 * full, records a rehash first.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		boolean direct = unrecorded();
+		int slot = find(key);
+		if (slot < 0 && (size + deleted + 1) * 4 > keys.length * 3) {
+			int capacity = keys.length;
+			while ((size + 1) * 2 > capacity) {
+				capacity *= 2;
+			}
+			if (direct) {
+				rebuild(capacity, true);
+			} else {
+				runner.run(new Swap(capacity, true));
+			}
+			slot = find(key);
+		}
+		if (slot < 0) {
+			slot = -1 - slot;
+		}
+		if (direct) {
+			Object result = states[slot] == FULL ? values[slot] : null;
+			store(slot, key, value, FULL);
+			return (V) result;
+		}
+		return runner.run(new Write(slot, key, value, FULL));
+	}
+
+	/**
+	 * Removes the key by leaving a tombstone in its slot. Nothing is recorded
+	 * if the key is absent.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		if (unrecorded()) {
+			Object result = values[slot];
+			store(slot, 0, null, DELETED);
+			return (V) result;
+		}
+		return runner.run(new Write(slot, 0, null, DELETED));
+	}
+
+	/**
+	 * Clears the map in constant time, keeping its table in history.
+	 */
+	public void clear() {
+		if (unrecorded()) {
+			rebuild(MIN_CAPACITY, false);
+			return;
+		}
+		runner.run(new Swap(MIN_CAPACITY, false));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int slot = find(key);
+		return slot >= 0 ? (V) values[slot] : null;
+	}
+
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long[] keys() {
+		long[] result = new long[size];
+		for (int i = 0, j = 0; i < keys.length; i++) {
+			if (states[i] == FULL) {
+				result[j++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the table arrays with the entry and tombstone counts, sharing
+	 * the arrays until the next write. The write actions in history refer to
+	 * slots, so a restore brings back the exact layout instead of rehashing
+	 * the entries.
+	 */
+	public Object snapshot() {
+		shared = true;
+		return new Object[] { keys, values, states, Integer.valueOf(size), Integer.valueOf(deleted) };
+	}
+
+	public void restore(Object snapshot) {
+		Object[] table = (Object[]) snapshot;
+		keys = (long[]) table[0];
+		values = (Object[]) table[1];
+		states = (byte[]) table[2];
+		size = ((Integer) table[3]).intValue();
+		deleted = ((Integer) table[4]).intValue();
+		shared = true;
+	}
+
+	/**
+	 * Recreates an action of this map, as written by its encode method.
+	 */
+	@SuppressWarnings("unchecked")
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case WRITE: {
+			int slot = in.readInt();
+			long key = in.readLong();
+			Write result = new Write(slot, key, codec.read(in), in.readByte());
+			result.oldKey = in.readLong();
+			result.oldValue = codec.read(in);
+			result.oldState = in.readByte();
+			return result;
+		}
+		case SWAP: {
+			Swap result = new Swap(in.readInt(), in.readBoolean());
+			int length = in.readInt();
+			result.oldKeys = new long[length];
+			result.oldValues = new Object[length];
+			result.oldStates = new byte[length];
+			for (int n = in.readInt(); n > 0; n--) {
+				int i = in.readInt();
+				result.oldStates[i] = in.readByte();
+				result.oldKeys[i] = in.readLong();
+				result.oldValues[i] = codec.read(in);
+				if (result.oldStates[i] == FULL) {
+					result.oldSize++;
+				} else {
+					result.oldDeleted++;
+				}
+			}
+			return result;
+		}
+		default:
+			throw new IOException("Unknown long map opcode: " + opcode);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append('{');
+		for (int i = 0, j = 0; i < keys.length; i++) {
+			if (states[i] == FULL) {
+				if (j++ > 0) {
+					builder.append(", ");
+				}
+				builder.append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		return builder.append('}').toString();
+	}
+}
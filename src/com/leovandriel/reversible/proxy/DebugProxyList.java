@@ -53,7 +53,7 @@ public class DebugProxyList<T> implements List<T> {
 
 		public Boolean run() {
 			preRun();
-			Boolean result = new Boolean(target.add(value));
+			Boolean result = Boolean.valueOf(target.add(value));
 			postRun();
 			return result;
 		}
@@ -115,7 +115,7 @@ public class DebugProxyList<T> implements List<T> {
 
 		public Boolean run() {
 			preRun();
-			Boolean result = new Boolean(target.addAll(values));
+			Boolean result = Boolean.valueOf(target.addAll(values));
 			postRun();
 			return result;
 		}
@@ -149,7 +149,7 @@ public class DebugProxyList<T> implements List<T> {
 
 		public Boolean run() {
 			preRun();
-			Boolean result = new Boolean(target.addAll(index, values));
+			Boolean result = Boolean.valueOf(target.addAll(index, values));
 			postRun();
 			return result;
 		}
@@ -270,7 +270,7 @@ public class DebugProxyList<T> implements List<T> {
 		public Boolean run() {
 			preRun();
 			index = target.indexOf(value);
-			Boolean result = new Boolean(target.remove(value));
+			Boolean result = Boolean.valueOf(target.remove(value));
 			postRun();
 			return result;
 		}
@@ -360,7 +360,7 @@ public class DebugProxyList<T> implements List<T> {
 				}
 				i++;
 			}
-			Boolean result = new Boolean(target.removeAll(values));
+			Boolean result = Boolean.valueOf(target.removeAll(values));
 			postRun();
 			return result;
 		}
@@ -401,7 +401,7 @@ public class DebugProxyList<T> implements List<T> {
 				}
 				i++;
 			}
-			Boolean result = new Boolean(target.removeAll(values));
+			Boolean result = Boolean.valueOf(target.removeAll(values));
 			postRun();
 			return result;
 		}
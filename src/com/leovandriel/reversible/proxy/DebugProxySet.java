@@ -59,7 +59,7 @@ public class DebugProxySet<T> implements Set<T> {
 			sizeBeforeRun = target.size();
 			addedOnRun = target.add(value);
 			sizeAfterRun = target.size();
-			return new Boolean(addedOnRun);
+			return Boolean.valueOf(addedOnRun);
 		}
 
 		public void unrun() {
@@ -108,7 +108,7 @@ public class DebugProxySet<T> implements Set<T> {
 			sizeBeforeRun = target.size();
 			boolean result = target.addAll(values);
 			sizeAfterRun = target.size();
-			return new Boolean(result);
+			return Boolean.valueOf(result);
 		}
 
 		public void unrun() {
@@ -223,7 +223,7 @@ public class DebugProxySet<T> implements Set<T> {
 			sizeBeforeRun = target.size();
 			removedOnRun = target.remove(value);
 			sizeAfterRun = target.size();
-			return new Boolean(removedOnRun);
+			return Boolean.valueOf(removedOnRun);
 		}
 
 		@SuppressWarnings("unchecked")
@@ -274,7 +274,7 @@ public class DebugProxySet<T> implements Set<T> {
 			sizeBeforeRun = target.size();
 			boolean result = target.removeAll(values);
 			sizeAfterRun = target.size();
-			return new Boolean(result);
+			return Boolean.valueOf(result);
 		}
 
 		public void unrun() {
@@ -324,7 +324,7 @@ public class DebugProxySet<T> implements Set<T> {
 			sizeBeforeRun = target.size();
 			boolean result = target.retainAll(values);
 			sizeAfterRun = target.size();
-			return new Boolean(result);
+			return Boolean.valueOf(result);
 		}
 
 		public void unrun() {
@@ -0,0 +1,191 @@
+package com.leovandriel.reversible.proxy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+import com.leovandriel.reversible.misc.Filter;
+
+/**
+ * Elements removed from a list, as ascending positions in the original list
+ * with their values. Both the removal and the reinsertion take a single pass
+ * over the list.
+ */
+class IndexedValues {
+	private int[] indexes;
+	private Object[] values;
+	private int size;
+
+	IndexedValues(int capacity) {
+		indexes = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	/**
+	 * Appends a removed element, at a position after all others.
+	 */
+	void add(int index, Object value) {
+		if (size == indexes.length) {
+			int capacity = Math.max(size * 2, 8);
+			int[] grownIndexes = new int[capacity];
+			Object[] grownValues = new Object[capacity];
+			System.arraycopy(indexes, 0, grownIndexes, 0, size);
+			System.arraycopy(values, 0, grownValues, 0, size);
+			indexes = grownIndexes;
+			values = grownValues;
+		}
+		indexes[size] = index;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the elements that are contained in the lookup, or with
+	 * <code>retain</code> set, the elements that are not.
+	 *
+	 * @return the removed elements
+	 */
+	static IndexedValues removeMatching(List<?> list, final Collection<?> lookup, final boolean retain) {
+		return removeIf(list, new Filter<Object>() {
+			public boolean accept(Object value) {
+				return lookup.contains(value) != retain;
+			}
+		});
+	}
+
+	/**
+	 * Removes the elements accepted by the filter. All elements are offered
+	 * to the filter before the first removal, so a filter that throws leaves
+	 * the list unchanged.
+	 *
+	 * @return the removed elements
+	 */
+	@SuppressWarnings("unchecked")
+	static IndexedValues removeIf(List<?> list, Filter<?> filter) {
+		Filter<Object> accepted = (Filter<Object>) filter;
+		IndexedValues result = new IndexedValues(0);
+		int i = 0;
+		for (Object o : list) {
+			if (accepted.accept(o)) {
+				result.add(i, o);
+			}
+			i++;
+		}
+		result.removeFrom(list);
+		return result;
+	}
+
+	/**
+	 * Removes the elements at the recorded positions again, after they have
+	 * been put back.
+	 */
+	void removeFrom(List<?> list) {
+		if (size == 0) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> target = (List<Object>) list;
+		if (target instanceof RandomAccess) {
+			int length = target.size();
+			int kept = indexes[0];
+			for (int i = indexes[0], next = 0; i < length; i++) {
+				if (next < size && indexes[next] == i) {
+					next++;
+				} else {
+					target.set(kept++, target.get(i));
+				}
+			}
+			target.subList(kept, length).clear();
+		} else {
+			ListIterator<Object> iterator = target.listIterator();
+			int i = 0;
+			for (int next = 0; next < size; next++) {
+				for (; i <= indexes[next]; i++) {
+					iterator.next();
+				}
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Puts the removed elements back at their original positions.
+	 */
+	void insert(List<?> list) {
+		if (size == 0) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> target = (List<Object>) list;
+		if (target instanceof RandomAccess) {
+			int from = target.size() - 1;
+			target.addAll(Collections.nCopies(size, null));
+			int next = size - 1;
+			for (int to = target.size() - 1; next >= 0; to--) {
+				if (indexes[next] == to) {
+					target.set(to, values[next--]);
+				} else {
+					target.set(to, target.get(from--));
+				}
+			}
+		} else {
+			ListIterator<Object> iterator = target.listIterator();
+			int i = 0;
+			for (int next = 0; next < size; next++) {
+				for (; i < indexes[next]; i++) {
+					iterator.next();
+				}
+				iterator.add(values[next]);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Overwrites the elements at the recorded positions with the recorded
+	 * values, without changing the size of the list.
+	 */
+	void setInto(List<?> list) {
+		@SuppressWarnings("unchecked")
+		List<Object> target = (List<Object>) list;
+		if (target instanceof RandomAccess) {
+			for (int i = 0; i < size; i++) {
+				target.set(indexes[i], values[i]);
+			}
+		} else {
+			ListIterator<Object> iterator = target.listIterator();
+			int i = 0;
+			for (int next = 0; next < size; next++) {
+				for (; i <= indexes[next]; i++) {
+					iterator.next();
+				}
+				iterator.set(values[next]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getIndex(int i) {
+		return indexes[i];
+	}
+
+	Object getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Recreates removed elements from their positions and values.
+	 */
+	static IndexedValues of(int[] indexes, Object[] values) {
+		IndexedValues result = new IndexedValues(0);
+		result.indexes = indexes;
+		result.values = values;
+		result.size = indexes.length;
+		return result;
+	}
+}
@@ -0,0 +1,88 @@
+package com.leovandriel.reversible.proxy;
+
+import java.util.Comparator;
+
+/**
+ * Stable sorting by index, for actions that record how elements moved instead
+ * of the elements themselves. A permutation maps each new position to the
+ * old position of the element that moved there.
+ */
+class Permutation {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private Permutation() {
+	}
+
+	/**
+	 * Returns the permutation that stably sorts the values, using their
+	 * natural ordering if the comparator is null.
+	 */
+	static int[] sort(Object[] values, Comparator<Object> comparator) {
+		int[] result = new int[values.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = i;
+		}
+		int[] buffer = new int[values.length];
+		mergeSort(result, buffer, 0, result.length, values, comparator);
+		return result;
+	}
+
+	private static void mergeSort(int[] indexes, int[] buffer, int from, int to, Object[] values,
+			Comparator<Object> comparator) {
+		if (to - from <= INSERTION_SORT_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				int index = indexes[i];
+				int j = i;
+				for (; j > from && compare(values[indexes[j - 1]], values[index], comparator) > 0; j--) {
+					indexes[j] = indexes[j - 1];
+				}
+				indexes[j] = index;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(indexes, buffer, from, middle, values, comparator);
+		mergeSort(indexes, buffer, middle, to, values, comparator);
+		if (compare(values[indexes[middle - 1]], values[indexes[middle]], comparator) <= 0) {
+			return;
+		}
+		System.arraycopy(indexes, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && compare(values[buffer[left]], values[buffer[right]], comparator) <= 0)) {
+				indexes[i] = buffer[left++];
+			} else {
+				indexes[i] = buffer[right++];
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compare(Object a, Object b, Comparator<Object> comparator) {
+		return comparator != null ? comparator.compare(a, b) : ((Comparable<Object>) a).compareTo(b);
+	}
+
+	/**
+	 * Returns the values in permuted order.
+	 */
+	static Object[] apply(int[] permutation, Object[] values) {
+		Object[] result = new Object[values.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = values[permutation[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the values in the order from before the permutation was
+	 * applied.
+	 */
+	static Object[] revert(int[] permutation, Object[] values) {
+		Object[] result = new Object[values.length];
+		for (int i = 0; i < result.length; i++) {
+			result[permutation[i]] = values[i];
+		}
+		return result;
+	}
+}
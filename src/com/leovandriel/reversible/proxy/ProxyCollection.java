@@ -3,9 +3,9 @@ package com.leovandriel.reversible.proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.misc.Swappable;
 
 public class ProxyCollection<T> implements Collection<T> {
 	private Collection<T> target;
@@ -25,16 +25,27 @@ public class ProxyCollection<T> implements Collection<T> {
 	}
 
 	public class Clear implements Action<Void> {
-		private List<T> backup;
+		private Collection<T> backup;
+		private boolean swapped;
 
+		@SuppressWarnings("unchecked")
 		public Void run() {
-			backup = new ArrayList<T>(target);
-			target.clear();
+			swapped = target instanceof Swappable;
+			if (swapped) {
+				backup = (Collection<T>) ((Swappable) target).detach();
+			} else {
+				backup = new ArrayList<T>(target);
+				target.clear();
+			}
 			return null;
 		}
 
 		public void unrun() {
-			target.addAll(backup);
+			if (swapped) {
+				((Swappable) target).attach(backup);
+			} else {
+				target.addAll(backup);
+			}
 		}
 
 		@Override
@@ -43,6 +54,10 @@ public class ProxyCollection<T> implements Collection<T> {
 		}
 	}
 
+	/**
+	 * Clears the target. A {@link Swappable} target hands its storage over to
+	 * history in constant time, any other target is copied.
+	 */
 	public void clear() {
 		runner.run(new Clear());
 	}
@@ -1,23 +1,66 @@
 package com.leovandriel.reversible.proxy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.Encoding;
+import com.leovandriel.reversible.io.ValueCodec;
+import com.leovandriel.reversible.misc.Filter;
+import com.leovandriel.reversible.misc.Swappable;
+import com.leovandriel.reversible.misc.Transform;
+
+public class ProxyList<T> implements List<T>, ActionDecoder, Checkpointable, OpcodeTable {
+	private static final byte ADD = 1;
+	private static final byte ADD_RANGE = 2;
+	private static final byte ADD_AT = 3;
+	private static final byte ADD_ALL = 4;
+	private static final byte ADD_ALL_AT = 5;
+	private static final byte REMOVE = 6;
+	private static final byte REMOVE_AT = 7;
+	private static final byte SET = 8;
+	private static final byte CLEAR = 9;
+	private static final byte REMOVE_ALL = 10;
+	private static final byte RETAIN_ALL = 11;
+	private static final byte SORT = 12;
+	private static final byte REMOVE_BATCH = 13;
+	private static final byte TRANSFORM_ALL = 14;
 
-public class ProxyList<T> implements List<T> {
 	private List<T> target;
 	private ActionRunner runner;
+	private OpcodeRunner recorder;
 
 	public ProxyList(List<T> target, ActionRunner runner) {
 		this.target = target;
 		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
 	}
 
-	public class Add implements Action<Boolean> {
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private boolean recordingOpcodes() {
+		return recorder != null && recorder.isRecordingOpcodes();
+	}
+
+	public class Add implements Action<Boolean>, Coalescable, EncodableAction {
 		private T value;
 
 		public Add(T value) {
@@ -25,13 +68,39 @@ public class ProxyList<T> implements List<T> {
 		}
 
 		public Boolean run() {
-			return new Boolean(target.add(value));
+			return Boolean.valueOf(target.add(value));
 		}
 
 		public void unrun() {
 			target.remove(target.size() - 1);
 		}
 
+		/**
+		 * Merges a following add on the same list into an {@link AddRange}.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyList.Add && ((Add) next).getList() == ProxyList.this) {
+				AddRange result = new AddRange(value);
+				result.append(((Add) next).value);
+				return result;
+			}
+			return null;
+		}
+
+		private ProxyList<T> getList() {
+			return ProxyList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD);
+			codec.write(out, value);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ')';
@@ -39,10 +108,86 @@ public class ProxyList<T> implements List<T> {
 	}
 
 	public boolean add(T e) {
+		if (unrecorded()) {
+			return target.add(e);
+		}
+		if (recordingOpcodes()) {
+			recorder.apply(this, ADD, 0, null, e);
+			return true;
+		}
 		return runner.run(new Add(e)).booleanValue();
 	}
 
-	public class AddAt implements Action<Void> {
+	/**
+	 * Contiguous run of values appended to the end of the list, produced by
+	 * coalescing {@link Add} actions.
+	 */
+	public class AddRange implements Action<Boolean>, Coalescable, EncodableAction {
+		private Object[] values = new Object[4];
+		private int count;
+
+		public AddRange(T value) {
+			append(value);
+		}
+
+		private void append(T value) {
+			if (count == values.length) {
+				Object[] grown = new Object[count * 2];
+				System.arraycopy(values, 0, grown, 0, count);
+				values = grown;
+			}
+			values[count++] = value;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Boolean run() {
+			for (int i = 0; i < count; i++) {
+				target.add((T) values[i]);
+			}
+			return Boolean.TRUE;
+		}
+
+		public void unrun() {
+			int size = target.size();
+			target.subList(size - count, size).clear();
+		}
+
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyList.Add && ((Add) next).getList() == ProxyList.this) {
+				append(((Add) next).value);
+				return this;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_RANGE);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				codec.write(out, values[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(this.getClass().getSimpleName()).append('(');
+			for (int i = 0; i < count; i++) {
+				if (i > 0) {
+					builder.append(',');
+				}
+				builder.append(values[i]);
+			}
+			return builder.append(')').toString();
+		}
+	}
+
+	public class AddAt implements Action<Void>, EncodableAction {
 		private int index;
 		private T value;
 
@@ -60,6 +205,16 @@ public class ProxyList<T> implements List<T> {
 			target.remove(index);
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_AT);
+			out.writeInt(index);
+			codec.write(out, value);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + index + ',' + value + ')';
@@ -67,10 +222,18 @@ public class ProxyList<T> implements List<T> {
 	}
 
 	public void add(int index, T element) {
+		if (unrecorded()) {
+			target.add(index, element);
+			return;
+		}
+		if (recordingOpcodes()) {
+			recorder.apply(this, ADD_AT, index, null, element);
+			return;
+		}
 		runner.run(new AddAt(index, element));
 	}
 
-	public class AddAll implements Action<Boolean> {
+	public class AddAll implements Action<Boolean>, EncodableAction {
 		private List<T> values;
 
 		public AddAll(Collection<? extends T> values) {
@@ -78,7 +241,7 @@ public class ProxyList<T> implements List<T> {
 		}
 
 		public Boolean run() {
-			return new Boolean(target.addAll(values));
+			return Boolean.valueOf(target.addAll(values));
 		}
 
 		public void unrun() {
@@ -87,6 +250,15 @@ public class ProxyList<T> implements List<T> {
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_ALL);
+			Encoding.writeValues(out, codec, values);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + values + ')';
@@ -94,10 +266,13 @@ public class ProxyList<T> implements List<T> {
 	}
 
 	public boolean addAll(Collection<? extends T> c) {
+		if (unrecorded()) {
+			return target.addAll(c);
+		}
 		return runner.run(new AddAll(c)).booleanValue();
 	}
 
-	public class AddAllAt implements Action<Boolean> {
+	public class AddAllAt implements Action<Boolean>, EncodableAction {
 		private int index;
 		private List<T> values;
 
@@ -107,7 +282,7 @@ public class ProxyList<T> implements List<T> {
 		}
 
 		public Boolean run() {
-			return new Boolean(target.addAll(index, values));
+			return Boolean.valueOf(target.addAll(index, values));
 		}
 
 		public void unrun() {
@@ -116,6 +291,16 @@ public class ProxyList<T> implements List<T> {
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_ALL_AT);
+			out.writeInt(index);
+			Encoding.writeValues(out, codec, values);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + index + ',' + values + ')';
@@ -123,11 +308,61 @@ public class ProxyList<T> implements List<T> {
 	}
 
 	public boolean addAll(int index, Collection<? extends T> c) {
+		if (unrecorded()) {
+			return target.addAll(index, c);
+		}
 		return runner.run(new AddAllAt(index, c)).booleanValue();
 	}
 
+	public class Clear implements Action<Void>, EncodableAction {
+		private List<T> backup;
+		private boolean swapped;
+
+		@SuppressWarnings("unchecked")
+		public Void run() {
+			swapped = target instanceof Swappable;
+			if (swapped) {
+				backup = (List<T>) ((Swappable) target).detach();
+			} else {
+				backup = new ArrayList<T>(target);
+				target.clear();
+			}
+			return null;
+		}
+
+		public void unrun() {
+			if (swapped) {
+				((Swappable) target).attach(backup);
+			} else {
+				target.addAll(backup);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			Encoding.writeValues(out, codec, backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + ')';
+		}
+	}
+
+	/**
+	 * Clears the target. A {@link Swappable} target hands its storage over to
+	 * history in constant time, any other target is copied.
+	 */
 	public void clear() {
-		runner.run(new ProxyCollection<T>(target, runner).new Clear());
+		if (unrecorded()) {
+			target.clear();
+			return;
+		}
+		runner.run(new Clear());
 	}
 
 	public boolean contains(Object o) {
@@ -150,9 +385,166 @@ public class ProxyList<T> implements List<T> {
 		return target.isEmpty();
 	}
 
+	/**
+	 * Removal of the current element of a {@link ProxyIterator}, at its
+	 * position in the list at that time. Consecutive removals of the same
+	 * traversal merge into a {@link RemoveBatch}.
+	 */
+	public class IteratorRemove implements Action<Void>, Coalescable, Continuation, EncodableAction {
+		private ProxyIterator source;
+		private Iterator<T> live;
+		private int index;
+		private T value;
+
+		private IteratorRemove(ProxyIterator source, Iterator<T> live, int index, T value) {
+			this.source = source;
+			this.live = live;
+			this.index = index;
+			this.value = value;
+		}
+
+		public Void run() {
+			if (live != null) {
+				live.remove();
+				live = null;
+			} else {
+				target.remove(index);
+			}
+			return null;
+		}
+
+		public void unrun() {
+			target.add(index, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyList.IteratorRemove && ((IteratorRemove) next).source == source) {
+				RemoveBatch result = new RemoveBatch(source);
+				result.append(this);
+				result.append((IteratorRemove) next);
+				return result;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_AT);
+			out.writeInt(index);
+			codec.write(out, value);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + index + ')';
+		}
+	}
+
+	public class RemoveBatch implements Action<Void>, Coalescable, EncodableAction {
+		private IndexedValues removed;
+		private ProxyIterator source;
+
+		private RemoveBatch(ProxyIterator source) {
+			this.source = source;
+			this.removed = new IndexedValues(8);
+		}
+
+		private RemoveBatch(IndexedValues removed) {
+			this.removed = removed;
+		}
+
+		public Void run() {
+			removed.removeFrom(target);
+			return null;
+		}
+
+		public void unrun() {
+			removed.insert(target);
+		}
+
+		/**
+		 * Absorbs the next removal of the same traversal.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (source != null && next instanceof ProxyList.IteratorRemove
+					&& ((IteratorRemove) next).source == source) {
+				append((IteratorRemove) next);
+				return this;
+			}
+			return null;
+		}
+
+		/**
+		 * Appends a removal, shifting its index by the removals before it to a
+		 * position in the list before the batch.
+		 */
+		private void append(IteratorRemove remove) {
+			removed.add(remove.index + removed.size(), remove.value);
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_BATCH);
+			writeRemoved(out, codec, removed);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + removed.size() + ')';
+		}
+	}
+
+	/**
+	 * Iterator that reads straight from the target and runs each removal as
+	 * an {@link IteratorRemove}. The removals of one traversal merge into a
+	 * single {@link RemoveBatch} that undoes in one pass, unless something
+	 * else is recorded in between, such as a mark.
+	 */
+	public class ProxyIterator implements Iterator<T> {
+		private Iterator<T> iterator;
+		private T current;
+		/** Index of the current element in the list. */
+		private int index = -1;
+		private boolean removable;
+
+		public ProxyIterator(Iterator<T> iterator) {
+			this.iterator = iterator;
+		}
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public T next() {
+			current = iterator.next();
+			index++;
+			removable = true;
+			return current;
+		}
+
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+			runner.run(new IteratorRemove(this, iterator, index, current));
+			index--;
+			removable = false;
+		}
+	}
+
+	/**
+	 * Returns an iterator whose removals are undone as one action.
+	 */
 	public Iterator<T> iterator() {
-		assert(false); // TODO: implement
-		return target.iterator();
+		return new ProxyIterator(target.iterator());
 	}
 
 	public int lastIndexOf(Object o) {
@@ -167,9 +559,18 @@ public class ProxyList<T> implements List<T> {
 		return new ProxyListIterator(target.listIterator(index));
 	}
 
+	/**
+	 * List iterator that reads straight from the target and records only
+	 * mutations, as actions on absolute indexes. A mutation first runs on the
+	 * underlying iterator so that iteration can continue, while undo and redo
+	 * use the index. Undoing invalidates the iterator, like any other change to
+	 * the list.
+	 */
 	public class ProxyListIterator implements ListIterator<T> {
 		private ListIterator<T> iterator;
 		private T current;
+		/** Index of the element last returned, or -1 after a mutation. */
+		private int last = -1;
 
 		public ProxyListIterator(ListIterator<T> iterator) {
 			this.iterator = iterator;
@@ -177,28 +578,47 @@ public class ProxyList<T> implements List<T> {
 
 		@Override
 		public void add(T element) {
-			runner.run(new Add(element));
+			runner.run(new Add(iterator.nextIndex(), element));
+			last = -1;
 		}
 
-		public class Add implements Action<Void> {
+		public class Add implements Action<Void>, EncodableAction {
+			private int index;
 			private T value;
+			private boolean live = true;
 
-			public Add(T value) {
+			public Add(int index, T value) {
+				this.index = index;
 				this.value = value;
 			}
 
 			public Void run() {
-				iterator.add(value);
+				if (live) {
+					live = false;
+					iterator.add(value);
+				} else {
+					target.add(index, value);
+				}
 				return null;
 			}
 
 			public void unrun() {
-				iterator.remove();
+				target.remove(index);
+			}
+
+			public ActionDecoder getDecoder() {
+				return ProxyList.this;
+			}
+
+			public void encode(DataOutput out, ValueCodec codec) throws IOException {
+				out.writeByte(ADD_AT);
+				out.writeInt(index);
+				codec.write(out, value);
 			}
 
 			@Override
 			public String toString() {
-				return this.getClass().getSimpleName() + '(' + value + ')';
+				return this.getClass().getSimpleName() + '(' + index + ',' + value + ')';
 			}
 		}
 
@@ -206,6 +626,7 @@ public class ProxyList<T> implements List<T> {
 		public boolean hasNext() {
 			return iterator.hasNext();
 		}
+
 		@Override
 		public boolean hasPrevious() {
 			return iterator.hasPrevious();
@@ -213,27 +634,9 @@ public class ProxyList<T> implements List<T> {
 
 		@Override
 		public T next() {
-			return runner.run(new Next());
-		}
-
-		public class Next implements Action<T> {
-			private T previous;
-
-			public T run() {
-				previous = current;
-				current = iterator.next();
-				return current;
-			}
-
-			public void unrun() {
-				current = previous;
-				iterator.previous();
-			}
-
-			@Override
-			public String toString() {
-				return this.getClass().getSimpleName()+ '(' + previous + ')';
-			}
+			current = iterator.next();
+			last = iterator.previousIndex();
+			return current;
 		}
 
 		@Override
@@ -243,27 +646,9 @@ public class ProxyList<T> implements List<T> {
 
 		@Override
 		public T previous() {
-			return iterator.previous();
-		}
-
-		public class Previous implements Action<T> {
-			private T next;
-
-			public T run() {
-				next = current;
-				current = iterator.previous();
-				return current;
-			}
-
-			public void unrun() {
-				current = next;
-				iterator.next();
-			}
-
-			@Override
-			public String toString() {
-				return this.getClass().getSimpleName()+ '(' + next + ')';
-			}
+			current = iterator.previous();
+			last = iterator.nextIndex();
+			return current;
 		}
 
 		@Override
@@ -273,51 +658,97 @@ public class ProxyList<T> implements List<T> {
 
 		@Override
 		public void remove() {
-			runner.run(new Remove());
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			runner.run(new Remove(last, current));
+			last = -1;
 		}
 
-		public class Remove implements Action<Void> {
+		public class Remove implements Action<Void>, EncodableAction {
+			private int index;
 			private T value;
+			private boolean live = true;
+
+			public Remove(int index, T value) {
+				this.index = index;
+				this.value = value;
+			}
 
 			public Void run() {
-				value = current;
-				iterator.remove();
+				if (live) {
+					live = false;
+					iterator.remove();
+				} else {
+					target.remove(index);
+				}
 				return null;
 			}
 
 			public void unrun() {
-				iterator.add(value);
+				target.add(index, value);
+			}
+
+			public ActionDecoder getDecoder() {
+				return ProxyList.this;
+			}
+
+			public void encode(DataOutput out, ValueCodec codec) throws IOException {
+				out.writeByte(REMOVE_AT);
+				out.writeInt(index);
+				codec.write(out, value);
 			}
 
 			@Override
 			public String toString() {
-				return this.getClass().getSimpleName() + '(' + value + ')';
+				return this.getClass().getSimpleName() + '(' + index + ',' + value + ')';
 			}
 		}
 
 		@Override
 		public void set(T element) {
-			runner.run(new Set(element));
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			runner.run(new Set(last, element));
+			current = element;
 		}
 
-		public class Set implements Action<Void> {
+		public class Set implements Action<Void>, EncodableAction {
+			private int index;
 			private T newValue;
 			private T oldValue;
+			private boolean live = true;
 
-			public Set(T value) {
+			public Set(int index, T value) {
+				this.index = index;
 				newValue = value;
 			}
 
 			public Void run() {
-				oldValue = current;
-				iterator.set(newValue);
+				if (live) {
+					live = false;
+					oldValue = current;
+					iterator.set(newValue);
+				} else {
+					target.set(index, newValue);
+				}
 				return null;
 			}
 
 			public void unrun() {
-				iterator.previous();
-				iterator.next();
-				iterator.set(oldValue);
+				target.set(index, oldValue);
+			}
+
+			public ActionDecoder getDecoder() {
+				return ProxyList.this;
+			}
+
+			public void encode(DataOutput out, ValueCodec codec) throws IOException {
+				out.writeByte(SET);
+				out.writeInt(index);
+				codec.write(out, newValue);
+				codec.write(out, oldValue);
 			}
 
 			@Override
@@ -328,7 +759,7 @@ public class ProxyList<T> implements List<T> {
 
 	}
 
-	public class Remove implements Action<Boolean> {
+	public class Remove implements Action<Boolean>, EncodableAction {
 		private Object value;
 		private int index;
 
@@ -338,7 +769,7 @@ public class ProxyList<T> implements List<T> {
 
 		public Boolean run() {
 			index = target.indexOf(value);
-			return new Boolean(target.remove(value));
+			return Boolean.valueOf(target.remove(value));
 		}
 
 		@SuppressWarnings("unchecked")
@@ -348,6 +779,16 @@ public class ProxyList<T> implements List<T> {
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			codec.write(out, value);
+			out.writeInt(index);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ')';
@@ -355,10 +796,13 @@ public class ProxyList<T> implements List<T> {
 	}
 
 	public boolean remove(Object o) {
+		if (unrecorded()) {
+			return target.remove(o);
+		}
 		return runner.run(new Remove(o)).booleanValue();
 	}
 
-	public class RemoveAt implements Action<T> {
+	public class RemoveAt implements Action<T>, EncodableAction {
 		private T value;
 		private int index;
 
@@ -375,58 +819,102 @@ public class ProxyList<T> implements List<T> {
 			target.add(index, value);
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_AT);
+			out.writeInt(index);
+			codec.write(out, value);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + index + ')';
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public T remove(int index) {
+		if (unrecorded()) {
+			return target.remove(index);
+		}
+		if (recordingOpcodes()) {
+			return (T) recorder.apply(this, REMOVE_AT, index, null, null);
+		}
 		return runner.run(new RemoveAt(index));
 	}
 
-	private class IntObjectPair {
-		private int i;
-		private Object o;
+	public class RemoveAll implements Action<Boolean>, EncodableAction {
+		private HashSet<Object> values;
+		private IndexedValues removedOnRun;
 
-		public IntObjectPair(int i, Object o) {
-			this.i = i;
-			this.o = o;
+		public RemoveAll(Collection<?> values) {
+			this.values = new HashSet<Object>(values);
 		}
 
-		public int getInt() {
-			return i;
+		public Boolean run() {
+			removedOnRun = IndexedValues.removeMatching(target, values, false);
+			return Boolean.valueOf(removedOnRun.size() > 0);
+		}
+
+		public void unrun() {
+			removedOnRun.insert(target);
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_ALL);
+			Encoding.writeValues(out, codec, values);
+			writeRemoved(out, codec, removedOnRun);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + values + ')';
 		}
+	}
 
-		public Object getObject() {
-			return o;
+	/**
+	 * Removes all elements contained in the collection, hashing it for lookup
+	 * and recording the removed positions in a single pass.
+	 */
+	public boolean removeAll(Collection<?> c) {
+		if (unrecorded()) {
+			return target.removeAll(new HashSet<Object>(c));
 		}
+		return runner.run(new RemoveAll(c)).booleanValue();
 	}
 
-	public class RemoveAll implements Action<Boolean> {
-		private List<Object> values;
-		private List<IntObjectPair> removedOnRun;
+	public class RetainAll implements Action<Boolean>, EncodableAction {
+		private HashSet<Object> values;
+		private IndexedValues removedOnRun;
 
-		public RemoveAll(Collection<?> values) {
-			this.values = new ArrayList<Object>(values);
+		public RetainAll(Collection<?> values) {
+			this.values = new HashSet<Object>(values);
 		}
 
 		public Boolean run() {
-			int i = 0;
-			for (Object o : values) {
-				if (target.contains(o)) {
-					removedOnRun.add(new IntObjectPair(i, o));
-				}
-				i++;
-			}
-			return new Boolean(target.removeAll(values));
+			removedOnRun = IndexedValues.removeMatching(target, values, true);
+			return Boolean.valueOf(removedOnRun.size() > 0);
 		}
 
-		@SuppressWarnings("unchecked")
 		public void unrun() {
-			for (IntObjectPair pair : removedOnRun) {
-				target.add(pair.getInt(), (T) pair.getObject());
-			}
+			removedOnRun.insert(target);
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(RETAIN_ALL);
+			Encoding.writeValues(out, codec, values);
+			writeRemoved(out, codec, removedOnRun);
 		}
 
 		@Override
@@ -435,47 +923,167 @@ public class ProxyList<T> implements List<T> {
 		}
 	}
 
-	public boolean removeAll(Collection<?> c) {
-		return runner.run(new RemoveAll(c)).booleanValue();
+	/**
+	 * Removes all elements not contained in the collection, hashing it for
+	 * lookup and recording the removed positions in a single pass.
+	 */
+	public boolean retainAll(Collection<?> c) {
+		if (unrecorded()) {
+			return target.retainAll(new HashSet<Object>(c));
+		}
+		return runner.run(new RetainAll(c)).booleanValue();
 	}
 
-	public class RetainAll implements Action<Boolean> {
-		private List<Object> values;
-		private List<IntObjectPair> removedOnRun;
+	public class RemoveMatching implements Action<Boolean>, EncodableAction {
+		private Filter<? super T> filter;
+		private IndexedValues removedOnRun;
 
-		public RetainAll(Collection<?> values) {
-			this.values = new ArrayList<Object>(values);
+		public RemoveMatching(Filter<? super T> filter) {
+			this.filter = filter;
 		}
 
+		/**
+		 * Asks the filter on the first run only, and removes the recorded
+		 * positions again on redo.
+		 */
 		public Boolean run() {
-			int i = 0;
-			for (T t : target) {
-				if (!values.contains(t)) {
-					removedOnRun.add(new IntObjectPair(i, t));
-				}
-				i++;
+			if (removedOnRun == null) {
+				removedOnRun = IndexedValues.removeIf(target, filter);
+				filter = null;
+			} else {
+				removedOnRun.removeFrom(target);
 			}
-			return new Boolean(target.removeAll(values));
+			return Boolean.valueOf(removedOnRun.size() > 0);
 		}
 
-		@SuppressWarnings("unchecked")
 		public void unrun() {
-			for (IntObjectPair p : removedOnRun) {
-				target.add(p.getInt(), (T) p.getObject());
+			removedOnRun.insert(target);
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_BATCH);
+			writeRemoved(out, codec, removedOnRun);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + filter + ')';
+		}
+	}
+
+	/**
+	 * Removes all elements accepted by the filter in a single pass, as one
+	 * action that records the removed positions. This is the bulk counterpart
+	 * of <code>removeIf</code>, which on Java 8 and later goes through
+	 * {@link #iterator()} instead.
+	 */
+	public boolean removeMatching(Filter<? super T> filter) {
+		if (unrecorded()) {
+			return IndexedValues.removeIf(target, filter).size() > 0;
+		}
+		return runner.run(new RemoveMatching(filter)).booleanValue();
+	}
+
+	public class TransformAll implements Action<Void>, EncodableAction {
+		private Transform<T> transform;
+		private IndexedValues before;
+		private IndexedValues after;
+
+		public TransformAll(Transform<T> transform) {
+			this.transform = transform;
+		}
+
+		/**
+		 * Applies the transform on the first run only, recording the elements
+		 * it replaced, and writes the recorded replacements again on redo.
+		 * Every replacement is computed before the first write, so a
+		 * transform that throws leaves the list unchanged.
+		 */
+		public Void run() {
+			if (before == null) {
+				IndexedValues replacedValues = new IndexedValues(0);
+				IndexedValues replacements = new IndexedValues(0);
+				int i = 0;
+				for (T value : target) {
+					T replaced = transform.apply(value);
+					if (replaced != value) {
+						replacedValues.add(i, value);
+						replacements.add(i, replaced);
+					}
+					i++;
+				}
+				before = replacedValues;
+				after = replacements;
+				transform = null;
 			}
+			after.setInto(target);
+			return null;
+		}
+
+		public void unrun() {
+			before.setInto(target);
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(TRANSFORM_ALL);
+			writeRemoved(out, codec, before);
+			writeRemoved(out, codec, after);
 		}
 
 		@Override
 		public String toString() {
-			return this.getClass().getSimpleName() + '(' + values + ')';
+			return this.getClass().getSimpleName() + '(' + transform + ')';
 		}
 	}
 
-	public boolean retainAll(Collection<?> c) {
-		return runner.run(new RetainAll(c)).booleanValue();
+	/**
+	 * Replaces every element by the result of the transform in a single pass,
+	 * as one action that records only the elements that changed. This is the
+	 * bulk counterpart of <code>replaceAll</code>, which on Java 8 and later
+	 * records one {@link Set} per element.
+	 */
+	public void transformAll(Transform<T> transform) {
+		if (unrecorded()) {
+			for (ListIterator<T> iterator = target.listIterator(); iterator.hasNext();) {
+				T value = iterator.next();
+				T replaced = transform.apply(value);
+				if (replaced != value) {
+					iterator.set(replaced);
+				}
+			}
+			return;
+		}
+		runner.run(new TransformAll(transform));
+	}
+
+	private static void writeRemoved(DataOutput out, ValueCodec codec, IndexedValues removed) throws IOException {
+		out.writeInt(removed.size());
+		for (int i = 0; i < removed.size(); i++) {
+			out.writeInt(removed.getIndex(i));
+			codec.write(out, removed.getValue(i));
+		}
 	}
 
-	public class Set implements Action<T> {
+	private static IndexedValues readRemoved(DataInput in, ValueCodec codec) throws IOException {
+		int size = in.readInt();
+		int[] indexes = new int[size];
+		Object[] values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			indexes[i] = in.readInt();
+			values[i] = codec.read(in);
+		}
+		return IndexedValues.of(indexes, values);
+	}
+
+	public class Set implements Action<T>, Coalescable, EncodableAction {
 		private int index;
 		private T value;
 		private T backup;
@@ -494,20 +1102,272 @@ public class ProxyList<T> implements List<T> {
 			target.set(index, backup);
 		}
 
+		/**
+		 * Absorbs a following set on the same index, keeping the oldest backup.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyList.Set) {
+				Set other = (Set) next;
+				if (other.getList() == ProxyList.this && other.index == index) {
+					value = other.value;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private ProxyList<T> getList() {
+			return ProxyList.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SET);
+			out.writeInt(index);
+			codec.write(out, value);
+			codec.write(out, backup);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ',' + index + ')';
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public T set(int index, T element) {
+		if (unrecorded()) {
+			return target.set(index, element);
+		}
+		if (recordingOpcodes()) {
+			return (T) recorder.apply(this, SET, index, null, element);
+		}
 		return runner.run(new Set(index, element));
 	}
 
+	public class Sort implements Action<Void>, EncodableAction {
+		private Comparator<Object> comparator;
+		private int[] permutation;
+
+		@SuppressWarnings("unchecked")
+		public Sort(Comparator<? super T> comparator) {
+			this.comparator = (Comparator<Object>) comparator;
+		}
+
+		public Void run() {
+			Object[] values = target.toArray();
+			if (permutation == null) {
+				permutation = Permutation.sort(values, comparator);
+			}
+			write(Permutation.apply(permutation, values));
+			return null;
+		}
+
+		public void unrun() {
+			write(Permutation.revert(permutation, target.toArray()));
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyList.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SORT);
+			out.writeInt(permutation.length);
+			for (int i = 0; i < permutation.length; i++) {
+				out.writeInt(permutation[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + comparator + ')';
+		}
+	}
+
+	/**
+	 * Overwrites all elements in a single pass.
+	 */
+	@SuppressWarnings("unchecked")
+	private void write(Object[] values) {
+		ListIterator<T> iterator = target.listIterator();
+		for (int i = 0; i < values.length; i++) {
+			iterator.next();
+			iterator.set((T) values[i]);
+		}
+	}
+
+	/**
+	 * Stably sorts the list as a single action that records only the
+	 * permutation, also when sorting through {@link java.util.Collections#sort}
+	 * on Java 8 and later. Redo reapplies the permutation without comparing.
+	 *
+	 * @param comparator
+	 *            the comparator, or null for natural ordering
+	 */
+	public void sort(Comparator<? super T> comparator) {
+		if (unrecorded()) {
+			Collections.sort(target, comparator);
+			return;
+		}
+		runner.run(new Sort(comparator));
+	}
+
 	public int size() {
 		return target.size();
 	}
 
+	public Object snapshot() {
+		return new ArrayList<T>(target);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void restore(Object snapshot) {
+		target.clear();
+		target.addAll((List<T>) snapshot);
+	}
+
+	/**
+	 * Recreates an action of this list, as written by its encode method.
+	 */
+	@SuppressWarnings("unchecked")
+	public Object applyOpcode(int opcode, int index, Object key, Object value) {
+		switch (opcode) {
+		case ADD:
+			target.add((T) value);
+			return null;
+		case ADD_AT:
+			target.add(index, (T) value);
+			return null;
+		case REMOVE_AT:
+			return target.remove(index);
+		case SET:
+			return target.set(index, (T) value);
+		default:
+			throw new IllegalStateException("Unknown list opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void runOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case ADD:
+			target.add((T) value);
+			break;
+		case ADD_AT:
+			target.add(index, (T) value);
+			break;
+		case REMOVE_AT:
+			target.remove(index);
+			break;
+		case SET:
+			target.set(index, (T) value);
+			break;
+		default:
+			throw new IllegalStateException("Unknown list opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void unrunOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case ADD:
+			target.remove(target.size() - 1);
+			break;
+		case ADD_AT:
+			target.remove(index);
+			break;
+		case REMOVE_AT:
+			target.add(index, (T) previous);
+			break;
+		case SET:
+			target.set(index, (T) previous);
+			break;
+		default:
+			throw new IllegalStateException("Unknown list opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case ADD:
+			return new Add((T) codec.read(in));
+		case ADD_RANGE: {
+			int count = in.readInt();
+			AddRange result = new AddRange((T) codec.read(in));
+			for (int i = 1; i < count; i++) {
+				result.append((T) codec.read(in));
+			}
+			return result;
+		}
+		case ADD_AT: {
+			int index = in.readInt();
+			return new AddAt(index, (T) codec.read(in));
+		}
+		case ADD_ALL:
+			return new AddAll(Encoding.<T> readValues(in, codec));
+		case ADD_ALL_AT: {
+			int index = in.readInt();
+			return new AddAllAt(index, Encoding.<T> readValues(in, codec));
+		}
+		case REMOVE: {
+			Remove result = new Remove(codec.read(in));
+			result.index = in.readInt();
+			return result;
+		}
+		case REMOVE_AT: {
+			RemoveAt result = new RemoveAt(in.readInt());
+			result.value = (T) codec.read(in);
+			return result;
+		}
+		case SET: {
+			int index = in.readInt();
+			Set result = new Set(index, (T) codec.read(in));
+			result.backup = (T) codec.read(in);
+			return result;
+		}
+		case CLEAR: {
+			Clear result = new Clear();
+			result.backup = Encoding.<T> readValues(in, codec);
+			return result;
+		}
+		case REMOVE_ALL: {
+			RemoveAll result = new RemoveAll(Encoding.readValues(in, codec));
+			result.removedOnRun = readRemoved(in, codec);
+			return result;
+		}
+		case RETAIN_ALL: {
+			RetainAll result = new RetainAll(Encoding.readValues(in, codec));
+			result.removedOnRun = readRemoved(in, codec);
+			return result;
+		}
+		case SORT: {
+			Sort result = new Sort(null);
+			result.permutation = new int[in.readInt()];
+			for (int i = 0; i < result.permutation.length; i++) {
+				result.permutation[i] = in.readInt();
+			}
+			return result;
+		}
+		case REMOVE_BATCH:
+			return new RemoveBatch(readRemoved(in, codec));
+		case TRANSFORM_ALL: {
+			TransformAll result = new TransformAll(null);
+			result.before = readRemoved(in, codec);
+			result.after = readRemoved(in, codec);
+			return result;
+		}
+		default:
+			throw new IOException("Unknown list opcode: " + opcode);
+		}
+	}
+
 	public List<T> subList(int fromIndex, int toIndex) {
 		return new ProxyList<T>(target.subList(fromIndex, toIndex), runner);
 	}
@@ -1,33 +1,149 @@
 package com.leovandriel.reversible.proxy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.Encoding;
+import com.leovandriel.reversible.io.ValueCodec;
+import com.leovandriel.reversible.misc.Swappable;
+import com.leovandriel.reversible.misc.Transform;
+
+public class ProxyMap<K, V> implements Map<K, V>, ActionDecoder, Checkpointable, OpcodeTable {
+	private static final byte CLEAR = 1;
+	private static final byte PUT = 2;
+	private static final byte PUT_ALL = 3;
+	private static final byte REMOVE = 4;
+	private static final byte REMOVE_ENTRIES = 5;
+	private static final byte UPDATE = 6;
+	private static final byte TRANSFORM_VALUES = 7;
+
+	private static final int PUT_IF_ABSENT = 1;
+	private static final int REPLACE = 2;
+	private static final int REPLACE_IF = 3;
+	private static final int REMOVE_IF = 4;
+	private static final int TRANSFORM = 5;
+	/**
+	 * Previous value recorded for a put opcode that added its key.
+	 */
+	private static final Object ABSENT = new Object();
 
-public class ProxyMap<K, V> implements Map<K, V> {
 	private Map<K, V> target;
 	private ActionRunner runner;
+	private OpcodeRunner recorder;
+	private KeySet keySet;
+	private EntrySet entrySet;
+	private Values values;
+	/**
+	 * Whether the target may map a key to null. As long as it does not, a
+	 * null from get, put or remove means the key was absent, which saves a
+	 * containsKey lookup. Set when a null value is written, including by undo
+	 * and redo, and cleared when the target is emptied.
+	 */
+	private boolean nullValues;
 
+	/**
+	 * Creates a proxy without scanning the target. An empty target is known
+	 * to hold no null values, any other is assumed to until it is emptied, so
+	 * that a null it returns is confirmed with containsKey.
+	 */
 	public ProxyMap(Map<K, V> target, ActionRunner runner) {
 		this.target = target;
 		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
+		this.nullValues = !target.isEmpty();
+	}
+
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private boolean recordingOpcodes() {
+		return recorder != null && recorder.isRecordingOpcodes();
 	}
 
-	public class Clear implements Action<Void> {
+	/**
+	 * Returns whether the key was present, given the value a lookup returned
+	 * for it.
+	 */
+	private boolean present(Object key, V value) {
+		return value != null || (nullValues && target.containsKey(key));
+	}
+
+	/**
+	 * Clears the null values flag once a removal has emptied the target.
+	 */
+	private void emptied() {
+		if (nullValues && target.isEmpty()) {
+			nullValues = false;
+		}
+	}
+
+	/**
+	 * Sets the null values flag when undo or redo writes back a null value,
+	 * which a later removal may have cleared it for.
+	 */
+	private void written(Object value) {
+		if (value == null) {
+			nullValues = true;
+		}
+	}
+
+	public class Clear implements Action<Void>, EncodableAction {
 		private Map<K, V> backup;
+		private boolean swapped;
+		private boolean nullsOnRun;
 
+		@SuppressWarnings("unchecked")
 		public Void run() {
-			backup = new HashMap<K, V>(target);
-			target.clear();
+			nullsOnRun = nullValues;
+			swapped = target instanceof Swappable;
+			if (swapped) {
+				backup = (Map<K, V>) ((Swappable) target).detach();
+			} else {
+				backup = new HashMap<K, V>(target);
+				target.clear();
+			}
+			nullValues = false;
 			return null;
 		}
 
 		public void unrun() {
-			target.putAll(backup);
+			if (swapped) {
+				((Swappable) target).attach(backup);
+			} else {
+				target.putAll(backup);
+			}
+			if (nullsOnRun) {
+				nullValues = true;
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			Encoding.writeEntries(out, codec, backup);
 		}
 
 		@Override
@@ -36,7 +152,16 @@ public class ProxyMap<K, V> implements Map<K, V> {
 		}
 	}
 
+	/**
+	 * Clears the target. A {@link Swappable} target hands its storage over to
+	 * history in constant time, any other target is copied.
+	 */
 	public void clear() {
+		if (unrecorded()) {
+			target.clear();
+			nullValues = false;
+			return;
+		}
 		runner.run(new Clear());
 	}
 
@@ -48,23 +173,47 @@ public class ProxyMap<K, V> implements Map<K, V> {
 		return target.containsValue(value);
 	}
 
+	/**
+	 * Returns the cached entry view. Setting the value of an entry is
+	 * recorded as a put, and removals are recorded as in {@link #keySet()}.
+	 */
 	public Set<Entry<K, V>> entrySet() {
-		return new ProxySet<Entry<K, V>>(target.entrySet(), runner);
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
 	}
 
 	public V get(Object key) {
 		return target.get(key);
 	}
 
+	/**
+	 * Returns the value of the key, or the default if absent, with a single
+	 * lookup unless the target may hold null values.
+	 */
+	public V getOrDefault(Object key, V defaultValue) {
+		V value = target.get(key);
+		return present(key, value) ? value : defaultValue;
+	}
+
 	public boolean isEmpty() {
 		return target.isEmpty();
 	}
 
+	/**
+	 * Returns the cached key view. All removals made through one iterator, as
+	 * well as those made by one <code>removeAll</code> or
+	 * <code>retainAll</code>, are recorded as a single {@link RemoveEntries}.
+	 */
 	public Set<K> keySet() {
-		return new ProxySet<K>(target.keySet(), runner);
+		if (keySet == null) {
+			keySet = new KeySet();
+		}
+		return keySet;
 	}
 
-	public class Put implements Action<V> {
+	public class Put implements Action<V>, Coalescable, EncodableAction {
 		private K key;
 		private V value;
 		private V previous;
@@ -75,9 +224,20 @@ public class ProxyMap<K, V> implements Map<K, V> {
 			this.value = value;
 		}
 
+		/**
+		 * Puts with a single lookup, unless the target may hold null values.
+		 */
 		public V run() {
-			addedOnRun = !target.containsKey(key);
-			previous = target.put(key, value);
+			if (nullValues) {
+				addedOnRun = !target.containsKey(key);
+				previous = target.put(key, value);
+			} else {
+				previous = target.put(key, value);
+				addedOnRun = previous == null;
+			}
+			if (value == null) {
+				nullValues = true;
+			}
 			return previous;
 		}
 
@@ -86,20 +246,68 @@ public class ProxyMap<K, V> implements Map<K, V> {
 				target.remove(key);
 			} else {
 				target.put(key, previous);
+				written(previous);
 			}
 		}
 
+		/**
+		 * Absorbs a following put on the same key, keeping the oldest backup.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyMap.Put) {
+				Put other = (Put) next;
+				if (other.getMap() == ProxyMap.this && (key == null ? other.key == null : key.equals(other.key))) {
+					value = other.value;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private ProxyMap<K, V> getMap() {
+			return ProxyMap.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(PUT);
+			codec.write(out, key);
+			codec.write(out, value);
+			codec.write(out, previous);
+			out.writeBoolean(addedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + key + ',' + value + ')';
 		}
 	}
 
+	/**
+	 * Puts the value. When recording opcodes, a key that was added is recorded
+	 * with {@link #ABSENT} as its previous value.
+	 */
+	@SuppressWarnings("unchecked")
 	public V put(K key, V value) {
+		if (unrecorded()) {
+			V result = target.put(key, value);
+			if (value == null) {
+				nullValues = true;
+			}
+			return result;
+		}
+		if (recordingOpcodes()) {
+			Object result = recorder.apply(this, PUT, 0, key, value);
+			return result != ABSENT ? (V) result : null;
+		}
 		return runner.run(new Put(key, value));
 	}
 
-	public class PutAll implements Action<Void> {
+	public class PutAll implements Action<Void>, EncodableAction {
 		private Map<K, V> toBePuts;
 		private Map<K, V> modifiedOnRun;
 		private Set<K> addedOnRun;
@@ -112,11 +320,15 @@ public class ProxyMap<K, V> implements Map<K, V> {
 			modifiedOnRun = new HashMap<K, V>();
 			addedOnRun = new HashSet<K>();
 			for (Entry<? extends K, ? extends V> e : toBePuts.entrySet()) {
-				if (target.containsKey(e.getKey())) {
-					modifiedOnRun.put(e.getKey(), e.getValue());
+				V previous = target.get(e.getKey());
+				if (present(e.getKey(), previous)) {
+					modifiedOnRun.put(e.getKey(), previous);
 				} else {
 					addedOnRun.add(e.getKey());
 				}
+				if (e.getValue() == null) {
+					nullValues = true;
+				}
 			}
 			target.putAll(toBePuts);
 			return null;
@@ -127,6 +339,20 @@ public class ProxyMap<K, V> implements Map<K, V> {
 				target.remove(key);
 			}
 			target.putAll(modifiedOnRun);
+			if (modifiedOnRun.containsValue(null)) {
+				nullValues = true;
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(PUT_ALL);
+			Encoding.writeEntries(out, codec, toBePuts);
+			Encoding.writeEntries(out, codec, modifiedOnRun);
+			Encoding.writeValues(out, codec, addedOnRun);
 		}
 
 		@Override
@@ -136,10 +362,22 @@ public class ProxyMap<K, V> implements Map<K, V> {
 	}
 
 	public void putAll(Map<? extends K, ? extends V> m) {
+		if (unrecorded()) {
+			target.putAll(m);
+			if (!nullValues) {
+				for (V value : m.values()) {
+					if (value == null) {
+						nullValues = true;
+						break;
+					}
+				}
+			}
+			return;
+		}
 		runner.run(new PutAll(m));
 	}
 
-	public class Remove implements Action<V> {
+	public class Remove implements Action<V>, EncodableAction {
 		private Object key;
 		private V backup;
 		private boolean removedOnRun;
@@ -148,9 +386,18 @@ public class ProxyMap<K, V> implements Map<K, V> {
 			this.key = key;
 		}
 
+		/**
+		 * Removes with a single lookup, unless the target may hold null values.
+		 */
 		public V run() {
-			removedOnRun = target.containsKey(key);
-			backup = target.remove(key);
+			if (nullValues) {
+				removedOnRun = target.containsKey(key);
+				backup = target.remove(key);
+				emptied();
+			} else {
+				backup = target.remove(key);
+				removedOnRun = backup != null;
+			}
 			return backup;
 		}
 
@@ -158,25 +405,852 @@ public class ProxyMap<K, V> implements Map<K, V> {
 		public void unrun() {
 			if (removedOnRun) {
 				target.put((K) key, backup);
+				written(backup);
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			codec.write(out, key);
+			codec.write(out, backup);
+			out.writeBoolean(removedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + key + ')';
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public V remove(Object key) {
+		if (unrecorded()) {
+			V result = target.remove(key);
+			emptied();
+			return result;
+		}
+		if (recordingOpcodes()) {
+			Object result = recorder.apply(this, REMOVE, 0, key, null);
+			return result != UNCHANGED ? (V) result : null;
+		}
 		return runner.run(new Remove(key));
 	}
 
+	/**
+	 * Conditional change of a single key. The first run looks the key up once,
+	 * decides on the new mapping and records both the old and the new one, so
+	 * redo and undo only write.
+	 */
+	public class Update implements Action<V>, EncodableAction {
+		private K key;
+		private int mode;
+		private Object expected;
+		private V value;
+		private Transform<V> transform;
+		private boolean decided;
+		private boolean matched;
+		private V previous;
+		private boolean existed;
+		private V result;
+		private boolean exists;
+
+		private Update(K key, int mode, Object expected, V value, Transform<V> transform) {
+			this.key = key;
+			this.mode = mode;
+			this.expected = expected;
+			this.value = value;
+			this.transform = transform;
+		}
+
+		public V run() {
+			if (!decided) {
+				previous = target.get(key);
+				existed = present(key, previous);
+				decide();
+				decided = true;
+				expected = null;
+				value = null;
+				transform = null;
+			}
+			if (exists) {
+				if (!existed || result != previous) {
+					target.put(key, result);
+				}
+				if (result == null) {
+					nullValues = true;
+				}
+			} else if (existed) {
+				target.remove(key);
+			}
+			return previous;
+		}
+
+		private void decide() {
+			result = previous;
+			exists = existed;
+			switch (mode) {
+			case PUT_IF_ABSENT:
+				matched = previous == null;
+				break;
+			case REPLACE:
+				matched = existed;
+				break;
+			case REPLACE_IF:
+			case REMOVE_IF:
+				matched = existed && (expected == null ? previous == null : expected.equals(previous));
+				break;
+			case TRANSFORM:
+				result = transform.apply(previous);
+				exists = result != null;
+				return;
+			}
+			if (matched) {
+				result = mode == REMOVE_IF ? null : value;
+				exists = mode != REMOVE_IF;
+			}
+		}
+
+		public void unrun() {
+			if (existed) {
+				if (!exists || result != previous) {
+					target.put(key, previous);
+					written(previous);
+				}
+			} else if (exists) {
+				target.remove(key);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(UPDATE);
+			codec.write(out, key);
+			codec.write(out, previous);
+			out.writeBoolean(existed);
+			codec.write(out, result);
+			out.writeBoolean(exists);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + key + ',' + result + ')';
+		}
+	}
+
+	/**
+	 * Puts the value if the key is absent or maps to null, with one lookup and
+	 * one action instead of a get followed by a put.
+	 */
+	public V putIfAbsent(K key, V value) {
+		if (unrecorded()) {
+			V previous = target.get(key);
+			if (previous == null) {
+				put(key, value);
+			}
+			return previous;
+		}
+		return runner.run(new Update(key, PUT_IF_ABSENT, null, value, null));
+	}
+
+	/**
+	 * Replaces the value if the key is present, as one action.
+	 */
+	public V replace(K key, V value) {
+		if (unrecorded()) {
+			V previous = target.get(key);
+			if (present(key, previous)) {
+				put(key, value);
+			}
+			return previous;
+		}
+		return runner.run(new Update(key, REPLACE, null, value, null));
+	}
+
+	/**
+	 * Replaces the value if the key maps to the expected value, as one action.
+	 */
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (unrecorded()) {
+			V previous = target.get(key);
+			if (present(key, previous) && (oldValue == null ? previous == null : oldValue.equals(previous))) {
+				put(key, newValue);
+				return true;
+			}
+			return false;
+		}
+		Update update = new Update(key, REPLACE_IF, oldValue, newValue, null);
+		runner.run(update);
+		return update.matched;
+	}
+
+	/**
+	 * Removes the key if it maps to the given value, as one action.
+	 */
+	public boolean remove(Object key, Object value) {
+		if (unrecorded()) {
+			V previous = target.get(key);
+			if (present(key, previous) && (value == null ? previous == null : value.equals(previous))) {
+				remove(key);
+				return true;
+			}
+			return false;
+		}
+		@SuppressWarnings("unchecked")
+		Update update = new Update((K) key, REMOVE_IF, value, null, null);
+		runner.run(update);
+		return update.matched;
+	}
+
+	/**
+	 * Replaces the mapping of the key by the result of the transform, which
+	 * receives the current value or null if there is none. A null result
+	 * removes the key. This covers <code>compute</code>,
+	 * <code>computeIfAbsent</code> and <code>merge</code> with one lookup and
+	 * one action, where their Java 8 defaults record a separate put or remove
+	 * after a get.
+	 *
+	 * @return the new value, or null if the key was removed
+	 */
+	public V update(K key, Transform<V> transform) {
+		if (unrecorded()) {
+			V previous = target.get(key);
+			V result = transform.apply(previous);
+			if (result != null) {
+				put(key, result);
+			} else if (present(key, previous)) {
+				remove(key);
+			}
+			return result;
+		}
+		Update update = new Update(key, TRANSFORM, null, null, transform);
+		runner.run(update);
+		return update.result;
+	}
+
+	public class TransformValues implements Action<Void>, EncodableAction {
+		private Transform<V> transform;
+		private Object[] keys;
+		private Object[] before;
+		private Object[] after;
+		private int size;
+
+		public TransformValues(Transform<V> transform) {
+			this.transform = transform;
+		}
+
+		/**
+		 * Applies the transform on the first run only, recording the keys
+		 * whose value it replaced with their old and new values. Every
+		 * replacement is computed before the first write, so a transform that
+		 * throws leaves the map unchanged.
+		 */
+		public Void run() {
+			if (transform != null) {
+				int capacity = target.size();
+				Object[] replacedKeys = new Object[capacity];
+				Object[] replacedValues = new Object[capacity];
+				Object[] replacements = new Object[capacity];
+				int count = 0;
+				for (Entry<K, V> entry : target.entrySet()) {
+					V value = entry.getValue();
+					V replaced = transform.apply(value);
+					if (replaced != value) {
+						replacedKeys[count] = entry.getKey();
+						replacedValues[count] = value;
+						replacements[count] = replaced;
+						count++;
+					}
+				}
+				keys = replacedKeys;
+				before = replacedValues;
+				after = replacements;
+				size = count;
+				transform = null;
+			}
+			write(after);
+			return null;
+		}
+
+		public void unrun() {
+			write(before);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void write(Object[] values) {
+			for (int i = 0; i < size; i++) {
+				target.put((K) keys[i], (V) values[i]);
+				written(values[i]);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(TRANSFORM_VALUES);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				codec.write(out, keys[i]);
+				codec.write(out, before[i]);
+				codec.write(out, after[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + size + ')';
+		}
+	}
+
+	/**
+	 * Replaces every value by the result of the transform in a single pass,
+	 * as one action that records the old values of the entries that changed.
+	 * This is the counterpart of <code>replaceAll</code>, whose Java 8
+	 * default records one put per entry.
+	 */
+	public void transformValues(Transform<V> transform) {
+		if (unrecorded()) {
+			for (Entry<K, V> entry : target.entrySet()) {
+				V value = entry.getValue();
+				V replaced = transform.apply(value);
+				if (replaced != value) {
+					entry.setValue(replaced);
+					if (replaced == null) {
+						nullValues = true;
+					}
+				}
+			}
+			return;
+		}
+		runner.run(new TransformValues(transform));
+	}
+
+	/**
+	 * Removal of the current entry of a view iterator. Consecutive removals
+	 * of the same traversal merge into a {@link RemoveEntries}.
+	 */
+	public class IteratorRemove implements Action<Void>, Coalescable, Continuation, EncodableAction {
+		private ViewIterator<?> source;
+		private Iterator<Entry<K, V>> live;
+		private K key;
+		private V value;
+
+		private IteratorRemove(ViewIterator<?> source, Iterator<Entry<K, V>> live, K key, V value) {
+			this.source = source;
+			this.live = live;
+			this.key = key;
+			this.value = value;
+		}
+
+		public Void run() {
+			if (live != null) {
+				live.remove();
+				live = null;
+			} else {
+				target.remove(key);
+			}
+			return null;
+		}
+
+		public void unrun() {
+			target.put(key, value);
+			written(value);
+		}
+
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxyMap.IteratorRemove && ((IteratorRemove) next).source == source) {
+				RemoveEntries result = new RemoveEntries(source);
+				result.append(key, value);
+				result.append(((IteratorRemove) next).key, ((IteratorRemove) next).value);
+				return result;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			codec.write(out, key);
+			codec.write(out, value);
+			out.writeBoolean(true);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + key + ')';
+		}
+	}
+
+	public class RemoveEntries implements Action<Boolean>, Coalescable, EncodableAction {
+		private Object[] keys = new Object[8];
+		private Object[] backups = new Object[8];
+		private int size;
+		private ViewIterator<?> source;
+		private Collection<?> candidates;
+
+		/**
+		 * Collects the removals of a view iterator.
+		 */
+		private RemoveEntries(ViewIterator<?> source) {
+			this.source = source;
+		}
+
+		/**
+		 * Removes those of the given keys that are present when run.
+		 */
+		private RemoveEntries(Collection<?> candidates) {
+			this.candidates = candidates;
+		}
+
+		private RemoveEntries() {
+		}
+
+		public Boolean run() {
+			if (candidates != null) {
+				for (Object key : candidates) {
+					if (target.containsKey(key)) {
+						append(key, target.remove(key));
+					}
+				}
+				candidates = null;
+			} else {
+				for (int i = 0; i < size; i++) {
+					target.remove(keys[i]);
+				}
+			}
+			return Boolean.valueOf(size > 0);
+		}
+
+		@SuppressWarnings("unchecked")
+		public void unrun() {
+			for (int i = size - 1; i >= 0; i--) {
+				target.put((K) keys[i], (V) backups[i]);
+				written(backups[i]);
+			}
+		}
+
+		/**
+		 * Absorbs the next removal of the same traversal.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (source != null && next instanceof ProxyMap.IteratorRemove
+					&& ((IteratorRemove) next).source == source) {
+				append(((IteratorRemove) next).key, ((IteratorRemove) next).value);
+				return this;
+			}
+			return null;
+		}
+
+		private void append(Object key, Object backup) {
+			if (size == keys.length) {
+				Object[] grownKeys = new Object[size * 2];
+				Object[] grownBackups = new Object[size * 2];
+				System.arraycopy(keys, 0, grownKeys, 0, size);
+				System.arraycopy(backups, 0, grownBackups, 0, size);
+				keys = grownKeys;
+				backups = grownBackups;
+			}
+			keys[size] = key;
+			backups[size] = backup;
+			size++;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxyMap.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_ENTRIES);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				codec.write(out, keys[i]);
+				codec.write(out, backups[i]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + size + ')';
+		}
+	}
+
+	/**
+	 * Iterator over the entries of the target, handing out keys, entries or
+	 * values. Each removal runs an {@link IteratorRemove}, and the removals
+	 * of one traversal merge into a single {@link RemoveEntries}.
+	 */
+	private abstract class ViewIterator<E> implements Iterator<E> {
+		private Iterator<Entry<K, V>> iterator = target.entrySet().iterator();
+		private Entry<K, V> current;
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public E next() {
+			current = iterator.next();
+			return element(current);
+		}
+
+		protected abstract E element(Entry<K, V> entry);
+
+		public void remove() {
+			if (current == null) {
+				throw new IllegalStateException();
+			}
+			runner.run(new IteratorRemove(this, iterator, current.getKey(), current.getValue()));
+			current = null;
+		}
+	}
+
+	/**
+	 * Removes the elements of a view that are contained in the collection, or
+	 * with <code>retain</code> set, that are not, in one traversal.
+	 */
+	private boolean removeMatching(Iterator<?> iterator, Collection<?> c, boolean retain) {
+		Collection<?> lookup = c instanceof Set<?> ? c : new HashSet<Object>(c);
+		boolean result = false;
+		while (iterator.hasNext()) {
+			if (lookup.contains(iterator.next()) != retain) {
+				iterator.remove();
+				result = true;
+			}
+		}
+		return result;
+	}
+
+	private class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator() {
+			return new ViewIterator<K>() {
+				@Override
+				protected K element(Entry<K, V> entry) {
+					return entry.getKey();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return target.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return target.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return runner.run(new RemoveEntries(Collections.singleton(o))).booleanValue();
+		}
+
+		/**
+		 * Looks up each key if there are fewer keys than entries, and
+		 * otherwise traverses the entries once.
+		 */
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			if (c.size() < target.size()) {
+				return runner.run(new RemoveEntries(new ArrayList<Object>(c))).booleanValue();
+			}
+			return removeMatching(iterator(), c, false);
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			return removeMatching(iterator(), c, true);
+		}
+
+		@Override
+		public void clear() {
+			ProxyMap.this.clear();
+		}
+	}
+
+	private class EntrySet extends AbstractSet<Entry<K, V>> {
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new ViewIterator<Entry<K, V>>() {
+				@Override
+				protected Entry<K, V> element(Entry<K, V> entry) {
+					return new ProxyEntry(entry);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return target.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return target.entrySet().contains(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!contains(o)) {
+				return false;
+			}
+			return runner.run(new RemoveEntries(Collections.singleton(((Entry<?, ?>) o).getKey()))).booleanValue();
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			return removeMatching(iterator(), c, false);
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			return removeMatching(iterator(), c, true);
+		}
+
+		@Override
+		public void clear() {
+			ProxyMap.this.clear();
+		}
+	}
+
+	/**
+	 * Entry whose value is set through the proxy.
+	 */
+	private class ProxyEntry implements Entry<K, V> {
+		private Entry<K, V> entry;
+
+		public ProxyEntry(Entry<K, V> entry) {
+			this.entry = entry;
+		}
+
+		public K getKey() {
+			return entry.getKey();
+		}
+
+		public V getValue() {
+			return entry.getValue();
+		}
+
+		public V setValue(V value) {
+			return put(entry.getKey(), value);
+		}
+
+		@Override
+		public int hashCode() {
+			return entry.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return entry.equals(o);
+		}
+
+		@Override
+		public String toString() {
+			return entry.toString();
+		}
+	}
+
+	private class Values extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ViewIterator<V>() {
+				@Override
+				protected V element(Entry<K, V> entry) {
+					return entry.getValue();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return target.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return target.containsValue(o);
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			return removeMatching(iterator(), c, false);
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			return removeMatching(iterator(), c, true);
+		}
+
+		@Override
+		public void clear() {
+			ProxyMap.this.clear();
+		}
+	}
+
 	public int size() {
 		return target.size();
 	}
 
+	public Object snapshot() {
+		return new HashMap<K, V>(target);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void restore(Object snapshot) {
+		target.clear();
+		target.putAll((Map<K, V>) snapshot);
+		nullValues = ((Map<K, V>) snapshot).containsValue(null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object applyOpcode(int opcode, int index, Object key, Object value) {
+		switch (opcode) {
+		case PUT: {
+			boolean added = nullValues && !target.containsKey(key);
+			V result = target.put((K) key, (V) value);
+			if (!nullValues) {
+				added = result == null;
+			}
+			if (value == null) {
+				nullValues = true;
+			}
+			return added ? ABSENT : result;
+		}
+		case REMOVE: {
+			boolean removed = nullValues && target.containsKey(key);
+			V result = target.remove(key);
+			emptied();
+			return removed || result != null ? result : UNCHANGED;
+		}
+		default:
+			throw new IllegalStateException("Unknown map opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void runOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case PUT:
+			target.put((K) key, (V) value);
+			written(value);
+			break;
+		case REMOVE:
+			target.remove(key);
+			break;
+		default:
+			throw new IllegalStateException("Unknown map opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void unrunOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case PUT:
+			if (previous == ABSENT) {
+				target.remove(key);
+			} else {
+				target.put((K) key, (V) previous);
+				written(previous);
+			}
+			break;
+		case REMOVE:
+			target.put((K) key, (V) previous);
+			written(previous);
+			break;
+		default:
+			throw new IllegalStateException("Unknown map opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Recreates an action of this map, as written by its encode method.
+	 */
+	@SuppressWarnings("unchecked")
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case CLEAR: {
+			Clear result = new Clear();
+			result.backup = Encoding.<K, V> readEntries(in, codec);
+			result.nullsOnRun = result.backup.containsValue(null);
+			return result;
+		}
+		case PUT: {
+			K key = (K) codec.read(in);
+			Put result = new Put(key, (V) codec.read(in));
+			result.previous = (V) codec.read(in);
+			result.addedOnRun = in.readBoolean();
+			return result;
+		}
+		case PUT_ALL: {
+			PutAll result = new PutAll(Encoding.<K, V> readEntries(in, codec));
+			result.modifiedOnRun = Encoding.<K, V> readEntries(in, codec);
+			result.addedOnRun = new HashSet<K>(Encoding.<K> readValues(in, codec));
+			return result;
+		}
+		case REMOVE: {
+			Remove result = new Remove(codec.read(in));
+			result.backup = (V) codec.read(in);
+			result.removedOnRun = in.readBoolean();
+			return result;
+		}
+		case UPDATE: {
+			Update result = new Update((K) codec.read(in), 0, null, null, null);
+			result.previous = (V) codec.read(in);
+			result.existed = in.readBoolean();
+			result.result = (V) codec.read(in);
+			result.exists = in.readBoolean();
+			result.decided = true;
+			return result;
+		}
+		case TRANSFORM_VALUES: {
+			TransformValues result = new TransformValues(null);
+			result.size = in.readInt();
+			result.keys = new Object[result.size];
+			result.before = new Object[result.size];
+			result.after = new Object[result.size];
+			for (int i = 0; i < result.size; i++) {
+				result.keys[i] = codec.read(in);
+				result.before[i] = codec.read(in);
+				result.after[i] = codec.read(in);
+			}
+			return result;
+		}
+		case REMOVE_ENTRIES: {
+			RemoveEntries result = new RemoveEntries();
+			for (int i = in.readInt(); i > 0; i--) {
+				result.append(codec.read(in), codec.read(in));
+			}
+			return result;
+		}
+		default:
+			throw new IOException("Unknown map opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Returns the cached value view, with removals recorded as in
+	 * {@link #keySet()}.
+	 */
 	public Collection<V> values() {
-		return new ProxyCollection<V>(target.values(), runner);
+		if (values == null) {
+			values = new Values();
+		}
+		return values;
 	}
 
 	@Override
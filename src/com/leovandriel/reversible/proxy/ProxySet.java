@@ -1,5 +1,8 @@
 package com.leovandriel.reversible.proxy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -8,17 +11,45 @@ import java.util.List;
 import java.util.Set;
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.action.Continuation;
+import com.leovandriel.reversible.action.OpcodeRunner;
+import com.leovandriel.reversible.action.OpcodeTable;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.Encoding;
+import com.leovandriel.reversible.io.ValueCodec;
+import com.leovandriel.reversible.misc.Swappable;
+
+public class ProxySet<T> implements Set<T>, ActionDecoder, Checkpointable, OpcodeTable {
+	private static final byte ADD = 1;
+	private static final byte ADD_ALL = 2;
+	private static final byte REMOVE = 3;
+	private static final byte REMOVE_ALL = 4;
+	private static final byte RETAIN_ALL = 5;
+	private static final byte CLEAR = 6;
+	private static final byte REMOVE_BATCH = 7;
 
-public class ProxySet<T> implements Set<T> {
 	private Set<T> target;
 	private ActionRunner runner;
+	private OpcodeRunner recorder;
 
 	public ProxySet(Set<T> target, ActionRunner runner) {
 		this.target = target;
 		this.runner = runner;
+		this.recorder = runner instanceof OpcodeRunner ? (OpcodeRunner) runner : null;
 	}
 
-	public class Add implements Action<Boolean> {
+	private boolean unrecorded() {
+		return recorder != null && !recorder.isRecording();
+	}
+
+	private boolean recordingOpcodes() {
+		return recorder != null && recorder.isRecordingOpcodes();
+	}
+
+	public class Add implements Action<Boolean>, EncodableAction {
 		private T value;
 		private boolean addedOnRun;
 
@@ -28,7 +59,7 @@ public class ProxySet<T> implements Set<T> {
 
 		public Boolean run() {
 			addedOnRun = target.add(value);
-			return new Boolean(addedOnRun);
+			return Boolean.valueOf(addedOnRun);
 		}
 
 		public void unrun() {
@@ -37,17 +68,37 @@ public class ProxySet<T> implements Set<T> {
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD);
+			codec.write(out, value);
+			out.writeBoolean(addedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ')';
 		}
 	}
 
+	/**
+	 * Adds the value. When recording opcodes, only an actual change is
+	 * recorded.
+	 */
 	public boolean add(T e) {
+		if (unrecorded()) {
+			return target.add(e);
+		}
+		if (recordingOpcodes()) {
+			return recorder.apply(this, ADD, 0, null, e) != UNCHANGED;
+		}
 		return runner.run(new Add(e)).booleanValue();
 	}
 
-	public class AddAll implements Action<Boolean> {
+	public class AddAll implements Action<Boolean>, EncodableAction {
 		private List<T> values;
 		private Set<T> addedOnRun;
 
@@ -62,13 +113,23 @@ public class ProxySet<T> implements Set<T> {
 					addedOnRun.add(t);
 				}
 			}
-			return new Boolean(target.addAll(values));
+			return Boolean.valueOf(target.addAll(values));
 		}
 
 		public void unrun() {
 			target.removeAll(addedOnRun);
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(ADD_ALL);
+			Encoding.writeValues(out, codec, values);
+			Encoding.writeValues(out, codec, addedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + values + ')';
@@ -76,11 +137,61 @@ public class ProxySet<T> implements Set<T> {
 	}
 
 	public boolean addAll(Collection<? extends T> c) {
+		if (unrecorded()) {
+			return target.addAll(c);
+		}
 		return runner.run(new AddAll(c)).booleanValue();
 	}
 
+	public class Clear implements Action<Void>, EncodableAction {
+		private Collection<T> backup;
+		private boolean swapped;
+
+		@SuppressWarnings("unchecked")
+		public Void run() {
+			swapped = target instanceof Swappable;
+			if (swapped) {
+				backup = (Collection<T>) ((Swappable) target).detach();
+			} else {
+				backup = new ArrayList<T>(target);
+				target.clear();
+			}
+			return null;
+		}
+
+		public void unrun() {
+			if (swapped) {
+				((Swappable) target).attach(backup);
+			} else {
+				target.addAll(backup);
+			}
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(CLEAR);
+			Encoding.writeValues(out, codec, backup);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + ')';
+		}
+	}
+
+	/**
+	 * Clears the target. A {@link Swappable} target hands its storage over to
+	 * history in constant time, any other target is copied.
+	 */
 	public void clear() {
-		runner.run(new ProxyCollection<T>(target, runner).new Clear());
+		if (unrecorded()) {
+			target.clear();
+			return;
+		}
+		runner.run(new Clear());
 	}
 
 	public boolean contains(Object o) {
@@ -96,13 +207,153 @@ public class ProxySet<T> implements Set<T> {
 	}
 
 	/**
-	 * warning
+	 * Removal of the current element of a {@link ProxyIterator}. Consecutive
+	 * removals of the same traversal merge into a {@link RemoveBatch}.
+	 */
+	public class IteratorRemove implements Action<Void>, Coalescable, Continuation, EncodableAction {
+		private ProxyIterator source;
+		private Iterator<T> live;
+		private T value;
+
+		private IteratorRemove(ProxyIterator source, Iterator<T> live, T value) {
+			this.source = source;
+			this.live = live;
+			this.value = value;
+		}
+
+		public Void run() {
+			if (live != null) {
+				live.remove();
+				live = null;
+			} else {
+				target.remove(value);
+			}
+			return null;
+		}
+
+		public void unrun() {
+			target.add(value);
+		}
+
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxySet.IteratorRemove && ((IteratorRemove) next).source == source) {
+				RemoveBatch result = new RemoveBatch(source);
+				result.removed.add(value);
+				result.removed.add(((IteratorRemove) next).value);
+				return result;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			codec.write(out, value);
+			out.writeBoolean(true);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + value + ')';
+		}
+	}
+
+	public class RemoveBatch implements Action<Void>, Coalescable, EncodableAction {
+		private List<T> removed = new ArrayList<T>();
+		private ProxyIterator source;
+
+		private RemoveBatch(ProxyIterator source) {
+			this.source = source;
+		}
+
+		private RemoveBatch(List<T> removed) {
+			this.removed = removed;
+		}
+
+		public Void run() {
+			for (T t : removed) {
+				target.remove(t);
+			}
+			return null;
+		}
+
+		public void unrun() {
+			target.addAll(removed);
+		}
+
+		/**
+		 * Absorbs the next removal of the same traversal.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (source != null && next instanceof ProxySet.IteratorRemove
+					&& ((IteratorRemove) next).source == source) {
+				removed.add(((IteratorRemove) next).value);
+				return this;
+			}
+			return null;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_BATCH);
+			Encoding.writeValues(out, codec, removed);
+		}
+
+		@Override
+		public String toString() {
+			return this.getClass().getSimpleName() + '(' + removed.size() + ')';
+		}
+	}
+
+	/**
+	 * Iterator that reads straight from the target and runs each removal as
+	 * an {@link IteratorRemove}, merging the removals of one traversal into a
+	 * single {@link RemoveBatch}, like the iterator of {@link ProxyList}.
+	 */
+	public class ProxyIterator implements Iterator<T> {
+		private Iterator<T> iterator;
+		private T current;
+		private boolean removable;
+
+		public ProxyIterator(Iterator<T> iterator) {
+			this.iterator = iterator;
+		}
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public T next() {
+			current = iterator.next();
+			removable = true;
+			return current;
+		}
+
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+			runner.run(new IteratorRemove(this, iterator, current));
+			removable = false;
+		}
+	}
+
+	/**
+	 * Returns an iterator whose removals are undone as one action.
 	 */
 	public Iterator<T> iterator() {
-		return target.iterator();
+		return new ProxyIterator(target.iterator());
 	}
 
-	public class Remove implements Action<Boolean> {
+	public class Remove implements Action<Boolean>, EncodableAction {
 		private Object value;
 		private boolean removedOnRun;
 
@@ -112,7 +363,7 @@ public class ProxySet<T> implements Set<T> {
 
 		public Boolean run() {
 			removedOnRun = target.remove(value);
-			return new Boolean(removedOnRun);
+			return Boolean.valueOf(removedOnRun);
 		}
 
 		@SuppressWarnings("unchecked")
@@ -122,6 +373,16 @@ public class ProxySet<T> implements Set<T> {
 			}
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE);
+			codec.write(out, value);
+			out.writeBoolean(removedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ')';
@@ -129,32 +390,54 @@ public class ProxySet<T> implements Set<T> {
 	}
 
 	public boolean remove(Object o) {
+		if (unrecorded()) {
+			return target.remove(o);
+		}
+		if (recordingOpcodes()) {
+			return recorder.apply(this, REMOVE, 0, null, o) != UNCHANGED;
+		}
 		return runner.run(new Remove(o)).booleanValue();
 	}
 
-	public class RemoveAll implements Action<Boolean> {
-		private List<Object> values;
+	public class RemoveAll implements Action<Boolean>, EncodableAction {
+		private HashSet<Object> values;
 		private List<T> removedOnRun;
 
 		public RemoveAll(Collection<?> values) {
-			this.values = new ArrayList<Object>(values);
+			this.values = new HashSet<Object>(values);
 		}
 
-		@SuppressWarnings("unchecked")
+		/**
+		 * Removes the elements found in the hashed values in a single pass over
+		 * the target, recording the target's own elements rather than the
+		 * equal ones passed in, so undo restores the instances that were there.
+		 */
 		public Boolean run() {
 			removedOnRun = new ArrayList<T>();
-			for (Object o : values) {
-				if (target.contains(o)) {
-					removedOnRun.add((T) o);
+			for (Iterator<T> iterator = target.iterator(); iterator.hasNext();) {
+				T t = iterator.next();
+				if (values.contains(t)) {
+					removedOnRun.add(t);
+					iterator.remove();
 				}
 			}
-			return new Boolean(target.removeAll(values));
+			return Boolean.valueOf(!removedOnRun.isEmpty());
 		}
 
 		public void unrun() {
 			target.addAll(removedOnRun);
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(REMOVE_ALL);
+			Encoding.writeValues(out, codec, values);
+			Encoding.writeValues(out, codec, removedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + values + ')';
@@ -162,31 +445,50 @@ public class ProxySet<T> implements Set<T> {
 	}
 
 	public boolean removeAll(Collection<?> c) {
+		if (unrecorded()) {
+			return target.removeAll(new HashSet<Object>(c));
+		}
 		return runner.run(new RemoveAll(c)).booleanValue();
 	}
 
-	public class RetainAll implements Action<Boolean> {
-		private List<Object> values;
+	public class RetainAll implements Action<Boolean>, EncodableAction {
+		private HashSet<Object> values;
 		private List<T> removedOnRun;
 
 		public RetainAll(Collection<?> values) {
-			this.values = new ArrayList<Object>(values);
+			this.values = new HashSet<Object>(values);
 		}
 
+		/**
+		 * Removes the elements missing from the hashed values in a single pass
+		 * over the target.
+		 */
 		public Boolean run() {
 			removedOnRun = new ArrayList<T>();
-			for (T t : target) {
+			for (Iterator<T> iterator = target.iterator(); iterator.hasNext();) {
+				T t = iterator.next();
 				if (!values.contains(t)) {
 					removedOnRun.add(t);
+					iterator.remove();
 				}
 			}
-			return new Boolean(target.retainAll(values));
+			return Boolean.valueOf(!removedOnRun.isEmpty());
 		}
 
 		public void unrun() {
 			target.addAll(removedOnRun);
 		}
 
+		public ActionDecoder getDecoder() {
+			return ProxySet.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(RETAIN_ALL);
+			Encoding.writeValues(out, codec, values);
+			Encoding.writeValues(out, codec, removedOnRun);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + values + ')';
@@ -194,6 +496,9 @@ public class ProxySet<T> implements Set<T> {
 	}
 
 	public boolean retainAll(Collection<?> c) {
+		if (unrecorded()) {
+			return target.retainAll(new HashSet<Object>(c));
+		}
 		return runner.run(new RetainAll(c)).booleanValue();
 	}
 
@@ -201,6 +506,100 @@ public class ProxySet<T> implements Set<T> {
 		return target.size();
 	}
 
+	public Object snapshot() {
+		return new ArrayList<T>(target);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void restore(Object snapshot) {
+		target.clear();
+		target.addAll((List<T>) snapshot);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object applyOpcode(int opcode, int index, Object key, Object value) {
+		switch (opcode) {
+		case ADD:
+			return target.add((T) value) ? null : UNCHANGED;
+		case REMOVE:
+			return target.remove(value) ? null : UNCHANGED;
+		default:
+			throw new IllegalStateException("Unknown set opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void runOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case ADD:
+			target.add((T) value);
+			break;
+		case REMOVE:
+			target.remove(value);
+			break;
+		default:
+			throw new IllegalStateException("Unknown set opcode: " + opcode);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void unrunOpcode(int opcode, int index, Object key, Object value, Object previous) {
+		switch (opcode) {
+		case ADD:
+			target.remove(value);
+			break;
+		case REMOVE:
+			target.add((T) value);
+			break;
+		default:
+			throw new IllegalStateException("Unknown set opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Recreates an action of this set, as written by its encode method.
+	 */
+	@SuppressWarnings("unchecked")
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case ADD: {
+			Add result = new Add((T) codec.read(in));
+			result.addedOnRun = in.readBoolean();
+			return result;
+		}
+		case ADD_ALL: {
+			AddAll result = new AddAll(Encoding.<T> readValues(in, codec));
+			result.addedOnRun = new HashSet<T>(Encoding.<T> readValues(in, codec));
+			return result;
+		}
+		case REMOVE: {
+			Remove result = new Remove(codec.read(in));
+			result.removedOnRun = in.readBoolean();
+			return result;
+		}
+		case REMOVE_ALL: {
+			RemoveAll result = new RemoveAll(Encoding.readValues(in, codec));
+			result.removedOnRun = Encoding.<T> readValues(in, codec);
+			return result;
+		}
+		case RETAIN_ALL: {
+			RetainAll result = new RetainAll(Encoding.readValues(in, codec));
+			result.removedOnRun = Encoding.<T> readValues(in, codec);
+			return result;
+		}
+		case CLEAR: {
+			Clear result = new Clear();
+			result.backup = Encoding.<T> readValues(in, codec);
+			return result;
+		}
+		case REMOVE_BATCH:
+			return new RemoveBatch(Encoding.<T> readValues(in, codec));
+		default:
+			throw new IOException("Unknown set opcode: " + opcode);
+		}
+	}
+
 	public Object[] toArray() {
 		return target.toArray();
 	}
@@ -1,12 +1,22 @@
 package com.leovandriel.reversible.proxy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import com.leovandriel.reversible.action.Action;
 import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.Checkpointable;
+import com.leovandriel.reversible.action.Coalescable;
+import com.leovandriel.reversible.io.ActionDecoder;
+import com.leovandriel.reversible.io.EncodableAction;
+import com.leovandriel.reversible.io.ValueCodec;
 import com.leovandriel.reversible.misc.Slot;
 
-public class ProxySlot<T> implements Slot<T> {
+public class ProxySlot<T> implements Slot<T>, ActionDecoder, Checkpointable {
+	private static final byte SET = 1;
+
 	private Slot<T> target;
 	private ActionRunner runner;
 
@@ -19,7 +29,7 @@ public class ProxySlot<T> implements Slot<T> {
 		return target.get();
 	}
 
-	public class Set implements Action<T> {
+	public class Set implements Action<T>, Coalescable, EncodableAction {
 		private T value;
 		private T previous;
 
@@ -36,6 +46,35 @@ public class ProxySlot<T> implements Slot<T> {
 			target.set(previous);
 		}
 
+		/**
+		 * Absorbs a following set on the same slot, keeping the oldest backup.
+		 */
+		@SuppressWarnings("unchecked")
+		public Action<?> coalesce(Action<?> next) {
+			if (next instanceof ProxySlot.Set) {
+				Set other = (Set) next;
+				if (other.getSlot() == ProxySlot.this) {
+					value = other.value;
+					return this;
+				}
+			}
+			return null;
+		}
+
+		private ProxySlot<T> getSlot() {
+			return ProxySlot.this;
+		}
+
+		public ActionDecoder getDecoder() {
+			return ProxySlot.this;
+		}
+
+		public void encode(DataOutput out, ValueCodec codec) throws IOException {
+			out.writeByte(SET);
+			codec.write(out, value);
+			codec.write(out, previous);
+		}
+
 		@Override
 		public String toString() {
 			return this.getClass().getSimpleName() + '(' + value + ')';
@@ -46,6 +85,32 @@ public class ProxySlot<T> implements Slot<T> {
 		return runner.run(new Set(value));
 	}
 
+	public Object snapshot() {
+		return target.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	public void restore(Object snapshot) {
+		target.set((T) snapshot);
+	}
+
+	/**
+	 * Recreates an action of this slot, as written by its encode method.
+	 */
+	@SuppressWarnings("unchecked")
+	public Action<?> decode(DataInput in, ValueCodec codec) throws IOException {
+		byte opcode = in.readByte();
+		switch (opcode) {
+		case SET: {
+			Set result = new Set((T) codec.read(in));
+			result.previous = (T) codec.read(in);
+			return result;
+		}
+		default:
+			throw new IOException("Unknown slot opcode: " + opcode);
+		}
+	}
+
 	public boolean add(T e) {
 		throw new UnsupportedOperationException();
 	}
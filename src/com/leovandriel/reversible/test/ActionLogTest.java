@@ -0,0 +1,77 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionLog;
+
+public class ActionLogTest extends TestCase {
+	private static class Trace implements Action<Void> {
+		private List<String> trace;
+		private int id;
+
+		public Trace(List<String> trace, int id) {
+			this.trace = trace;
+			this.id = id;
+		}
+
+		public Void run() {
+			trace.add("run" + id);
+			return null;
+		}
+
+		public void unrun() {
+			trace.add("unrun" + id);
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(id);
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		ActionLog log = new ActionLog();
+		assertTrue(log.isEmpty());
+		assertNull(log.getLast());
+		assertFalse(log.iterator().hasNext());
+		log.runAll();
+		log.unrunAll();
+		assertEquals("[]", log.toString());
+	}
+
+	@Test
+	public void testOrderAcrossChunks() {
+		List<String> trace = new ArrayList<String>();
+		ActionLog log = new ActionLog();
+		int count = 5000;
+		for (int i = 0; i < count; i++) {
+			log.add(new Trace(trace, i));
+			assertEquals(String.valueOf(i), log.getLast().toString());
+		}
+		assertEquals(count, log.size());
+
+		log.runAll();
+		for (int i = 0; i < count; i++) {
+			assertEquals("run" + i, trace.get(i));
+		}
+		trace.clear();
+		log.unrunAll();
+		for (int i = 0; i < count; i++) {
+			assertEquals("unrun" + (count - 1 - i), trace.get(i));
+		}
+
+		int i = 0;
+		for (Iterator<Action<?>> iterator = log.iterator(); iterator.hasNext(); i++) {
+			assertEquals(String.valueOf(i), iterator.next().toString());
+		}
+		assertEquals(count, i);
+	}
+}
@@ -0,0 +1,91 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityHistory;
+import com.leovandriel.reversible.activity.EvictionListener;
+
+public class ActivityHistoryTest extends TestCase {
+	private static class Recorder implements EvictionListener {
+		private List<Activity> evicted = new ArrayList<Activity>();
+
+		public void evicted(Activity activity) {
+			evicted.add(activity);
+		}
+	}
+
+	@Test
+	public void testStack() {
+		ActivityHistory history = new ActivityHistory();
+		Activity[] activities = new Activity[100];
+		for (int i = 0; i < activities.length; i++) {
+			activities[i] = new Activity();
+			history.push(activities[i]);
+		}
+		assertEquals(100, history.size());
+		assertSame(activities[99], history.get(0));
+		assertSame(activities[0], history.get(99));
+		for (int i = activities.length - 1; i >= 0; i--) {
+			assertSame(activities[i], history.pop());
+		}
+		assertTrue(history.isEmpty());
+		try {
+			history.pop();
+			fail();
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		Recorder recorder = new Recorder();
+		ActivityHistory history = new ActivityHistory();
+		history.setEvictionListener(recorder);
+		history.setMaxSize(3);
+		Activity[] activities = new Activity[5];
+		for (int i = 0; i < activities.length; i++) {
+			activities[i] = new Activity();
+			history.push(activities[i]);
+		}
+		history.push(null);
+		assertEquals(3, history.size());
+		assertEquals(3, recorder.evicted.size());
+		assertSame(activities[0], recorder.evicted.get(0));
+		assertSame(activities[2], recorder.evicted.get(2));
+		assertNull(history.pop());
+		assertSame(activities[4], history.pop());
+
+		history.setMaxSize(0);
+		assertTrue(history.isEmpty());
+		assertSame(activities[3], recorder.evicted.get(3));
+		history.push(activities[0]);
+		assertTrue(history.isEmpty());
+		assertEquals(5, recorder.evicted.size());
+	}
+
+	@Test
+	public void testWrapAround() {
+		ActivityHistory history = new ActivityHistory();
+		history.setMaxSize(40);
+		Activity[] activities = new Activity[1000];
+		for (int i = 0; i < activities.length; i++) {
+			activities[i] = new Activity();
+			history.push(activities[i]);
+			if (i % 3 == 0) {
+				assertSame(activities[i], history.pop());
+				history.push(activities[i]);
+			}
+		}
+		assertEquals(40, history.size());
+		for (int i = 0; i < 40; i++) {
+			assertSame(activities[999 - i], history.get(i));
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.GroupAction;
+import com.leovandriel.reversible.activity.CheckpointManager;
+import com.leovandriel.reversible.misc.ReversibleHashMap;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.primitive.LongObjectMap;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+public class CheckpointTest extends TestCase {
+	private CheckpointManager manager;
+	private ProxyList<Integer> list;
+	private ProxyMap<Integer, Integer> map;
+	private List<String> states;
+
+	@Override
+	protected void setUp() {
+		manager = new CheckpointManager();
+		manager.setActivityInterval(10);
+		manager.setRestoreCost(0);
+		list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		manager.register(list);
+		manager.register(map);
+		states = new ArrayList<String>();
+		states.add(state());
+		for (int i = 0; i < 100; i++) {
+			list.add(Integer.valueOf(i));
+			if (i % 4 == 0) {
+				list.remove(0);
+			}
+			map.put(Integer.valueOf(i % 7), Integer.valueOf(i));
+			manager.mark();
+			states.add(state());
+		}
+	}
+
+	private String state() {
+		return list + "|" + new HashMap<Integer, Integer>(map);
+	}
+
+	@Test
+	public void testUndoRedoTo() {
+		assertEquals(100, manager.getVersion());
+		assertEquals(10, manager.getCheckpointCount());
+		manager.undoTo(35);
+		assertEquals(states.get(35), state());
+		assertEquals(35, manager.getVersion());
+		manager.undo();
+		assertEquals(states.get(34), state());
+		manager.redoTo(97);
+		assertEquals(states.get(97), state());
+		manager.undoTo(0);
+		assertEquals(states.get(0), state());
+		manager.redoTo(100);
+		assertEquals(states.get(100), state());
+		manager.undoAll();
+		assertEquals(states.get(0), state());
+		manager.redoAll();
+		assertEquals(states.get(100), state());
+	}
+
+	@Test
+	public void testBranch() {
+		manager.undoTo(55);
+		list.add(Integer.valueOf(-1));
+		manager.mark();
+		String branched = state();
+		assertEquals(5, manager.getCheckpointCount());
+		manager.undoTo(12);
+		assertEquals(states.get(12), state());
+		manager.redoTo(56);
+		assertEquals(branched, state());
+	}
+
+	@Test
+	public void testUndoToTime() {
+		for (int i = 0; i < 100; i++) {
+			manager.undo();
+		}
+		manager.redo(100);
+		manager.undoToTime(0);
+		assertEquals(states.get(0), state());
+		manager.redoAll();
+		manager.undoToTime(Long.MAX_VALUE);
+		assertEquals(states.get(100), state());
+	}
+
+	@Test
+	public void testLimits() {
+		CheckpointManager manager = new CheckpointManager();
+		ProxyList<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		manager.register(list);
+		for (int i = 0; i < 100; i++) {
+			list.add(Integer.valueOf(i));
+			manager.mark();
+		}
+		assertEquals(0, manager.getCheckpointCount());
+		manager.setActivityInterval(2);
+		manager.setMaxCheckpoints(4);
+		for (int i = 0; i < 20; i++) {
+			list.add(Integer.valueOf(i));
+			manager.mark();
+		}
+		assertEquals(4, manager.getCheckpointCount());
+		manager.undoTo(112);
+		assertEquals(112, list.size());
+		manager.undoTo(50);
+		assertEquals(50, list.size());
+		manager.setMaxCheckpoints(1);
+		assertEquals(1, manager.getCheckpointCount());
+		manager.redoTo(120);
+		assertEquals(120, list.size());
+	}
+
+	@Test
+	public void testUnrestorable() {
+		CheckpointManager manager = new CheckpointManager();
+		manager.setActivityInterval(2);
+		manager.setRestoreCost(0);
+		ProxySlot<Integer> slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager);
+		ProxySlot<Integer> unregistered = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)),
+				manager);
+		manager.register(slot);
+		for (int i = 1; i <= 8; i++) {
+			GroupAction group = new GroupAction();
+			group.addAction(slot.new Set(Integer.valueOf(i)));
+			manager.run(group);
+			if (i % 4 == 0) {
+				unregistered.set(Integer.valueOf(i));
+			}
+			manager.mark();
+		}
+		assertEquals(4, manager.getCheckpointCount());
+		manager.undoTo(2);
+		assertEquals(Integer.valueOf(2), slot.get());
+		assertEquals(Integer.valueOf(0), unregistered.get());
+		manager.redoTo(manager.getNewestVersion());
+		assertEquals(Integer.valueOf(8), slot.get());
+		assertEquals(Integer.valueOf(8), unregistered.get());
+		manager.undoTo(3);
+		assertEquals(Integer.valueOf(3), slot.get());
+		manager.redoTo(7);
+		assertEquals(Integer.valueOf(7), slot.get());
+		assertEquals(Integer.valueOf(4), unregistered.get());
+	}
+
+	@Test
+	public void testHashMaps() {
+		CheckpointManager manager = new CheckpointManager();
+		manager.setActivityInterval(5);
+		manager.setRestoreCost(0);
+		LongObjectMap<Integer> longs = new LongObjectMap<Integer>(manager);
+		ReversibleHashMap<Integer, Integer> objects = new ReversibleHashMap<Integer, Integer>(manager);
+		manager.register(longs);
+		List<String> states = new ArrayList<String>();
+		states.add(state(longs, objects));
+		Random random = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			if (i % 17 == 16) {
+				longs.clear();
+			}
+			for (int j = 0; j < 10; j++) {
+				long key = random.nextInt(50);
+				if (random.nextInt(3) == 0) {
+					longs.remove(key);
+				} else {
+					longs.put(key, Integer.valueOf(i));
+				}
+				if (i < 20) {
+					if (random.nextInt(3) == 0) {
+						objects.remove(Integer.valueOf((int) key));
+					} else {
+						objects.put(Integer.valueOf((int) key), Integer.valueOf(i));
+					}
+				}
+			}
+			manager.mark();
+			states.add(state(longs, objects));
+		}
+		assertEquals(16, manager.getCheckpointCount());
+		manager.undoTo(30);
+		assertEquals(states.get(30), state(longs, objects));
+		manager.undoTo(3);
+		assertEquals(states.get(3), state(longs, objects));
+		manager.redoTo(90);
+		assertEquals(states.get(90), state(longs, objects));
+		manager.undoTo(25);
+		assertEquals(states.get(25), state(longs, objects));
+		for (int i = 25; i > 0; i--) {
+			manager.undo();
+			assertEquals(states.get(i - 1), state(longs, objects));
+		}
+		manager.redoTo(100);
+		assertEquals(states.get(100), state(longs, objects));
+	}
+
+	private static String state(LongObjectMap<Integer> longs, ReversibleHashMap<Integer, Integer> objects) {
+		Map<Long, Integer> entries = new TreeMap<Long, Integer>();
+		for (long key : longs.keys()) {
+			entries.put(Long.valueOf(key), longs.get(key));
+		}
+		return entries + "|" + new TreeMap<Integer, Integer>(objects);
+	}
+}
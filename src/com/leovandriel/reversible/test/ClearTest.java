@@ -0,0 +1,71 @@
+package com.leovandriel.reversible.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.SwappableList;
+import com.leovandriel.reversible.misc.SwappableMap;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+public class ClearTest extends TestCase {
+	@Test
+	public void testSwap() {
+		AdvancedManager manager = new AdvancedManager();
+		SwappableList<Integer> target = new SwappableList<Integer>();
+		ProxyList<Integer> list = new ProxyList<Integer>(target, manager);
+		for (int i = 0; i < 10; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		List<?> storage = (List<?>) target.detach();
+		target.attach(storage);
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertEquals(10, storage.size());
+		manager.mark();
+		manager.undo();
+		assertEquals(10, list.size());
+		assertSame(storage, target.detach());
+	}
+
+	@Test
+	public void testCopy() {
+		AdvancedManager manager = new AdvancedManager();
+		Map<String, Integer> target = new HashMap<String, Integer>();
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(target, manager);
+		map.put("a", Integer.valueOf(1));
+		manager.mark();
+		map.clear();
+		manager.mark();
+		assertTrue(target.isEmpty());
+		manager.undo();
+		assertEquals(Integer.valueOf(1), target.get("a"));
+		manager.redo();
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testSwapMap() {
+		AdvancedManager manager = new AdvancedManager();
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(new SwappableMap<String, Integer>(), manager);
+		map.put("a", Integer.valueOf(1));
+		manager.mark();
+		map.clear();
+		map.put("b", Integer.valueOf(2));
+		manager.mark();
+		assertEquals(1, map.size());
+		manager.undo();
+		assertEquals(Integer.valueOf(1), map.get("a"));
+		assertFalse(map.containsKey("b"));
+		manager.redo();
+		assertEquals(Integer.valueOf(2), map.get("b"));
+		assertFalse(map.containsKey("a"));
+	}
+}
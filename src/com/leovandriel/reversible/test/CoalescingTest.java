@@ -0,0 +1,131 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+public class CoalescingTest extends TestCase {
+	private static class Targets {
+		private AdvancedManager manager = new AdvancedManager();
+		private List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		private List<Map<Integer, Integer>> maps = new ArrayList<Map<Integer, Integer>>();
+		private List<ProxySlot<Integer>> slots = new ArrayList<ProxySlot<Integer>>();
+
+		Targets(boolean coalescing) {
+			manager.setCoalescing(coalescing);
+			for (int i = 0; i < 2; i++) {
+				List<Integer> list = new ArrayList<Integer>();
+				for (int j = 0; j < 4; j++) {
+					list.add(Integer.valueOf(j));
+				}
+				lists.add(new ProxyList<Integer>(list, manager));
+				maps.add(new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager));
+				slots.add(new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager));
+			}
+		}
+
+		Object snapshot() {
+			List<Object> result = new ArrayList<Object>();
+			for (int i = 0; i < 2; i++) {
+				result.add(new ArrayList<Integer>(lists.get(i)));
+				result.add(new HashMap<Integer, Integer>(maps.get(i)));
+				result.add(slots.get(i).get());
+			}
+			return result;
+		}
+	}
+
+	@Test
+	public void testSameState() {
+		Targets separate = new Targets(false);
+		Targets coalesced = new Targets(true);
+		List<Object> states = new ArrayList<Object>();
+		states.add(separate.snapshot());
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			int target = random.nextInt(2);
+			int index = random.nextInt(3);
+			Integer value = Integer.valueOf(random.nextInt(5));
+			int kind = random.nextInt(4);
+			for (Targets targets : new Targets[] { separate, coalesced }) {
+				switch (kind) {
+				case 0:
+					targets.lists.get(target).set(index, value);
+					break;
+				case 1:
+					targets.lists.get(target).add(value);
+					break;
+				case 2:
+					targets.maps.get(target).put(Integer.valueOf(index), value);
+					break;
+				default:
+					targets.slots.get(target).set(value);
+				}
+			}
+			if (random.nextInt(20) == 0) {
+				separate.manager.mark();
+				coalesced.manager.mark();
+				assertEquals(separate.snapshot(), coalesced.snapshot());
+				states.add(separate.snapshot());
+			}
+		}
+		separate.manager.mark();
+		coalesced.manager.mark();
+		states.add(separate.snapshot());
+		assertEquals(separate.manager.getUndoSize(), coalesced.manager.getUndoSize());
+		for (int i = states.size() - 1; i > 0; i--) {
+			assertEquals(states.get(i), coalesced.snapshot());
+			coalesced.manager.undo();
+		}
+		assertEquals(states.get(0), coalesced.snapshot());
+		for (int i = 1; i < states.size(); i++) {
+			coalesced.manager.redo();
+			assertEquals(states.get(i), coalesced.snapshot());
+		}
+	}
+
+	@Test
+	public void testMerge() {
+		Targets targets = new Targets(true);
+		List<Integer> list = targets.lists.get(0);
+		list.set(0, Integer.valueOf(10));
+		list.set(0, Integer.valueOf(11));
+		assertEquals(1, targets.manager.getCurrentActivity().size());
+		list.set(1, Integer.valueOf(12));
+		targets.lists.get(1).set(1, Integer.valueOf(13));
+		assertEquals(3, targets.manager.getCurrentActivity().size());
+		list.add(Integer.valueOf(14));
+		list.add(Integer.valueOf(15));
+		targets.lists.get(1).add(Integer.valueOf(16));
+		assertEquals(5, targets.manager.getCurrentActivity().size());
+
+		Map<Integer, Integer> map = targets.maps.get(0);
+		map.put(Integer.valueOf(0), Integer.valueOf(20));
+		map.put(Integer.valueOf(0), Integer.valueOf(21));
+		assertEquals(6, targets.manager.getCurrentActivity().size());
+		map.put(Integer.valueOf(1), Integer.valueOf(22));
+		targets.maps.get(1).put(Integer.valueOf(1), Integer.valueOf(23));
+		assertEquals(8, targets.manager.getCurrentActivity().size());
+
+		ProxySlot<Integer> slot = targets.slots.get(0);
+		slot.set(Integer.valueOf(30));
+		slot.set(Integer.valueOf(31));
+		targets.slots.get(1).set(Integer.valueOf(32));
+		assertEquals(10, targets.manager.getCurrentActivity().size());
+
+		targets.manager.undo();
+		assertEquals(new Targets(false).snapshot(), targets.snapshot());
+	}
+}
@@ -0,0 +1,107 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ConfinedManager;
+import com.leovandriel.reversible.misc.SingleSlot;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxySlot;
+
+public class ConfinedTest extends TestCase {
+	private static class Failing implements Action<Void> {
+		public Void run() {
+			throw new IllegalArgumentException("fail");
+		}
+
+		public void unrun() {
+			fail();
+		}
+	}
+
+	@Test
+	public void testOwner() throws InterruptedException {
+		final ConfinedManager manager = new ConfinedManager();
+		final ProxySlot<Integer> slot = new ProxySlot<Integer>(new SingleSlot<Integer>(Integer.valueOf(0)), manager);
+		slot.set(Integer.valueOf(1));
+		final List<String> rejected = new ArrayList<String>();
+		Thread other = new Thread(new Runnable() {
+			public void run() {
+				try {
+					slot.set(Integer.valueOf(2));
+				} catch (IllegalStateException e) {
+					rejected.add("run");
+				}
+				try {
+					manager.mark();
+				} catch (IllegalStateException e) {
+					rejected.add("mark");
+				}
+				try {
+					manager.undo();
+				} catch (IllegalStateException e) {
+					rejected.add("undo");
+				}
+				try {
+					manager.redo();
+				} catch (IllegalStateException e) {
+					rejected.add("redo");
+				}
+			}
+		});
+		other.start();
+		other.join();
+		assertEquals(4, rejected.size());
+		assertEquals(Integer.valueOf(1), slot.get());
+		assertEquals(1, manager.getCurrentActivity().size());
+		manager.undo();
+		assertEquals(Integer.valueOf(0), slot.get());
+		manager.redo();
+		assertEquals(Integer.valueOf(1), slot.get());
+	}
+
+	@Test
+	public void testExceptionSafety() {
+		for (AdvancedManager manager : new AdvancedManager[] { new AdvancedManager(), new ConfinedManager() }) {
+			List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+			list.add(Integer.valueOf(1));
+			manager.mark();
+			list.add(Integer.valueOf(2));
+			manager.mark();
+			manager.undo();
+			try {
+				manager.run(new Failing());
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+			assertNull(manager.getCurrentActivity());
+			assertEquals(1, manager.getRedoSize());
+			try {
+				list.remove(5);
+				fail();
+			} catch (IndexOutOfBoundsException e) {
+			}
+			assertEquals(1, manager.getRedoSize());
+			manager.redo();
+			assertEquals(2, list.size());
+
+			list.add(Integer.valueOf(3));
+			try {
+				manager.run(new Failing());
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+			assertFalse(manager.isRunningAction());
+			assertEquals(1, manager.getCurrentActivity().size());
+			manager.undo();
+			assertEquals(2, list.size());
+			assertEquals(1, manager.getRedoSize());
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.leovandriel.reversible.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.JournalingRunner;
+import com.leovandriel.reversible.io.ActionCodec;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+public class JournalTest extends TestCase {
+	private JournalingRunner journal;
+	private ProxyList<String> list;
+	private ProxyMap<String, Integer> map;
+
+	private int open(File file) throws Exception {
+		ActionCodec codec = new ActionCodec();
+		journal = new JournalingRunner(new AdvancedManager(), file, codec);
+		list = new ProxyList<String>(new ArrayList<String>(), journal);
+		map = new ProxyMap<String, Integer>(new HashMap<String, Integer>(), journal);
+		codec.register(list);
+		codec.register(map);
+		return journal.recover();
+	}
+
+	@Test
+	public void testRecover() throws Exception {
+		File file = File.createTempFile("journal", ".bin");
+		file.deleteOnExit();
+		assertEquals(0, open(file));
+		for (int i = 0; i < 10; i++) {
+			list.add("v" + i);
+			map.put("k" + i % 3, Integer.valueOf(i));
+			journal.mark();
+		}
+		journal.undo(3);
+		list.clear();
+		journal.mark();
+		journal.undo();
+		journal.redo();
+		list.add("a");
+		list.add("b");
+		list.add("c");
+		for (Iterator<String> i = list.iterator(); i.hasNext();) {
+			if (!"b".equals(i.next())) {
+				i.remove();
+			}
+		}
+		list.add("pending");
+		String expectedList = list.toString();
+		HashMap<String, Integer> expectedMap = new HashMap<String, Integer>(map);
+		journal.close();
+
+		RandomAccessFile torn = new RandomAccessFile(file, "rw");
+		torn.seek(torn.length());
+		torn.writeInt(100);
+		torn.close();
+
+		open(file);
+		assertEquals(expectedList, list.toString());
+		assertEquals(expectedMap, map);
+		journal.undo();
+		assertEquals("[]", list.toString());
+		journal.undo();
+		assertEquals("[v0, v1, v2, v3, v4, v5, v6]", list.toString());
+		journal.undo(7);
+		assertEquals("[]", list.toString());
+		assertTrue(map.isEmpty());
+		journal.close();
+	}
+
+	@Test
+	public void testUnrecorded() throws Exception {
+		File file = File.createTempFile("journal", ".bin");
+		file.deleteOnExit();
+		open(file);
+		list.add("before");
+		journal.mark();
+		list.add("discarded");
+		journal.runUnrecorded(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 5; i++) {
+					list.add("u" + i);
+				}
+				map.put("u", Integer.valueOf(5));
+			}
+		});
+		assertFalse(journal.canUndo());
+		list.remove(0);
+		journal.mark();
+		try {
+			journal.getManager().runUnrecorded(new Runnable() {
+				public void run() {
+					list.add("unjournaled");
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		list.add("after");
+		journal.mark();
+		String expectedList = list.toString();
+		HashMap<String, Integer> expectedMap = new HashMap<String, Integer>(map);
+		journal.close();
+
+		open(file);
+		assertEquals(expectedList, list.toString());
+		assertEquals(expectedMap, map);
+		journal.undo(2);
+		assertEquals("[before, discarded, u0, u1, u2, u3, u4]", list.toString());
+		assertFalse(journal.canUndo());
+		journal.close();
+	}
+}
@@ -1,13 +1,310 @@
 package com.leovandriel.reversible.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.Filter;
+import com.leovandriel.reversible.misc.Transform;
+import com.leovandriel.reversible.proxy.ProxyList;
+
 public class ListTest extends TestCase {
 
 	@Test
 	public void testList() {
 
 	}
+
+	private void checkBulkRemove(List<Integer> target, boolean retain) {
+		AdvancedManager manager = new AdvancedManager();
+		ProxyList<Integer> list = new ProxyList<Integer>(target, manager);
+		for (int i = 0; i < 100; i++) {
+			list.add(Integer.valueOf(i % 13));
+		}
+		manager.mark();
+		List<Integer> before = new ArrayList<Integer>(list);
+		List<Integer> argument = Arrays.asList(Integer.valueOf(0), Integer.valueOf(5), Integer.valueOf(12),
+				Integer.valueOf(99));
+		List<Integer> expected = new ArrayList<Integer>(before);
+		if (retain) {
+			expected.retainAll(argument);
+			assertTrue(list.retainAll(argument));
+		} else {
+			expected.removeAll(argument);
+			assertTrue(list.removeAll(argument));
+		}
+		assertEquals(expected, list);
+		manager.mark();
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo();
+		assertEquals(expected, list);
+	}
+
+	@Test
+	public void testRemoveAll() {
+		checkBulkRemove(new ArrayList<Integer>(), false);
+		checkBulkRemove(new LinkedList<Integer>(), false);
+	}
+
+	@Test
+	public void testRetainAll() {
+		checkBulkRemove(new ArrayList<Integer>(), true);
+		checkBulkRemove(new LinkedList<Integer>(), true);
+	}
+
+	private static class Unhashable {
+		@Override
+		public int hashCode() {
+			throw new IllegalStateException("unhashable");
+		}
+	}
+
+	@Test
+	public void testBulkRemoveFailure() {
+		for (List<Object> target : Arrays.<List<Object>> asList(new ArrayList<Object>(), new LinkedList<Object>())) {
+			AdvancedManager manager = new AdvancedManager();
+			ProxyList<Object> list = new ProxyList<Object>(target, manager);
+			for (int i = 0; i < 10; i++) {
+				list.add(Integer.valueOf(i));
+			}
+			list.add(new Unhashable());
+			list.add(Integer.valueOf(10));
+			manager.mark();
+			List<Object> before = new ArrayList<Object>(list);
+			try {
+				list.removeAll(Arrays.asList(Integer.valueOf(1), Integer.valueOf(10)));
+				fail();
+			} catch (IllegalStateException e) {
+			}
+			assertEquals(before, target);
+			assertNull(manager.getCurrentActivity());
+		}
+	}
+
+	private static class CountingRunner implements ActionRunner {
+		private AdvancedManager manager = new AdvancedManager();
+		private int runs;
+
+		public <T> T run(Action<T> action) {
+			runs++;
+			return manager.run(action);
+		}
+	}
+
+	@Test
+	public void testSort() {
+		CountingRunner runner = new CountingRunner();
+		AdvancedManager manager = runner.manager;
+		List<String> list = new ProxyList<String>(new LinkedList<String>(), runner);
+		list.addAll(Arrays.asList("Maurice", "Roy", "Jen", "Douglas", "jen", "Richmond"));
+		manager.mark();
+		List<String> before = new ArrayList<String>(list);
+		runner.runs = 0;
+		Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+		assertEquals(1, runner.runs);
+		assertEquals(Arrays.asList("Douglas", "Jen", "jen", "Maurice", "Richmond", "Roy"), list);
+		manager.mark();
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo();
+		assertEquals(Arrays.asList("Douglas", "Jen", "jen", "Maurice", "Richmond", "Roy"), list);
+	}
+
+	private void checkBulkReplace(List<Integer> target) {
+		CountingRunner runner = new CountingRunner();
+		AdvancedManager manager = runner.manager;
+		ProxyList<Integer> list = new ProxyList<Integer>(target, runner);
+		for (int i = 0; i < 20; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		List<Integer> before = new ArrayList<Integer>(list);
+		runner.runs = 0;
+		list.transformAll(new Transform<Integer>() {
+			public Integer apply(Integer value) {
+				return value.intValue() % 4 == 0 ? Integer.valueOf(-value.intValue()) : value;
+			}
+		});
+		assertTrue(list.removeMatching(new Filter<Integer>() {
+			public boolean accept(Integer value) {
+				return value.intValue() % 3 == 0;
+			}
+		}));
+		assertEquals(2, runner.runs);
+		assertEquals(Arrays.asList(1, 2, -4, 5, 7, -8, 10, 11, 13, 14, -16, 17, 19), list);
+		List<Integer> after = new ArrayList<Integer>(list);
+		manager.mark();
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo();
+		assertEquals(after, list);
+	}
+
+	@Test
+	public void testBulkReplaceFailure() {
+		for (List<Integer> target : Arrays.<List<Integer>> asList(new ArrayList<Integer>(), new LinkedList<Integer>())) {
+			AdvancedManager manager = new AdvancedManager();
+			ProxyList<Integer> list = new ProxyList<Integer>(target, manager);
+			for (int i = 0; i < 10; i++) {
+				list.add(Integer.valueOf(i));
+			}
+			manager.mark();
+			List<Integer> before = new ArrayList<Integer>(list);
+			try {
+				list.transformAll(new Transform<Integer>() {
+					public Integer apply(Integer value) {
+						if (value.intValue() == 7) {
+							throw new IllegalArgumentException("seven");
+						}
+						return Integer.valueOf(-value.intValue());
+					}
+				});
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+			try {
+				list.removeMatching(new Filter<Integer>() {
+					public boolean accept(Integer value) {
+						if (value.intValue() == 7) {
+							throw new IllegalArgumentException("seven");
+						}
+						return value.intValue() % 2 == 0;
+					}
+				});
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+			assertEquals(before, target);
+			assertNull(manager.getCurrentActivity());
+		}
+	}
+
+	@Test
+	public void testBulkReplace() {
+		checkBulkReplace(new ArrayList<Integer>());
+		checkBulkReplace(new LinkedList<Integer>());
+	}
+
+	private void checkListIterator(List<Integer> target) {
+		CountingRunner runner = new CountingRunner();
+		AdvancedManager manager = runner.manager;
+		ProxyList<Integer> list = new ProxyList<Integer>(target, runner);
+		for (int i = 0; i < 10; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		List<Integer> before = new ArrayList<Integer>(list);
+		runner.runs = 0;
+		int sum = 0;
+		for (ListIterator<Integer> i = list.listIterator(); i.hasNext();) {
+			sum += i.next().intValue();
+		}
+		for (ListIterator<Integer> i = list.listIterator(list.size()); i.hasPrevious();) {
+			sum += i.previous().intValue();
+		}
+		assertEquals(90, sum);
+		assertEquals(0, runner.runs);
+
+		for (ListIterator<Integer> i = list.listIterator(); i.hasNext();) {
+			int value = i.next().intValue();
+			if (value % 2 == 0) {
+				i.remove();
+			} else if (value % 3 == 0) {
+				i.set(Integer.valueOf(-value));
+			} else {
+				i.add(Integer.valueOf(value * 10));
+			}
+		}
+		List<Integer> after = new ArrayList<Integer>(list);
+		assertEquals(Arrays.asList(1, 10, -3, 5, 50, 7, 70, -9), after);
+		manager.mark();
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo();
+		assertEquals(after, list);
+	}
+
+	@Test
+	public void testListIterator() {
+		checkListIterator(new ArrayList<Integer>());
+		checkListIterator(new LinkedList<Integer>());
+	}
+
+	private void checkIterator(List<Integer> target) {
+		CountingRunner runner = new CountingRunner();
+		AdvancedManager manager = runner.manager;
+		ProxyList<Integer> list = new ProxyList<Integer>(target, runner);
+		for (int i = 0; i < 100; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		List<Integer> before = new ArrayList<Integer>(list);
+		runner.runs = 0;
+		for (Iterator<Integer> i = list.iterator(); i.hasNext();) {
+			int value = i.next().intValue();
+			if (value % 3 != 1) {
+				i.remove();
+			}
+		}
+		assertEquals(67, runner.runs);
+		assertEquals(1, manager.getCurrentActivity().size());
+		List<Integer> after = new ArrayList<Integer>(list);
+		assertEquals(33, after.size());
+		assertEquals(Integer.valueOf(1), after.get(0));
+		assertEquals(Integer.valueOf(97), after.get(32));
+		manager.mark();
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo();
+		assertEquals(after, list);
+	}
+
+	@Test
+	public void testIterator() {
+		checkIterator(new ArrayList<Integer>());
+		checkIterator(new LinkedList<Integer>());
+	}
+
+	@Test
+	public void testIteratorMark() {
+		AdvancedManager manager = new AdvancedManager();
+		ProxyList<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		for (int i = 0; i < 10; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		List<Integer> before = new ArrayList<Integer>(list);
+		List<Integer> middle = null;
+		for (Iterator<Integer> i = list.iterator(); i.hasNext();) {
+			int value = i.next().intValue();
+			if (value % 2 == 0) {
+				i.remove();
+			}
+			if (value == 4) {
+				manager.mark();
+				middle = new ArrayList<Integer>(list);
+			}
+		}
+		manager.mark();
+		List<Integer> after = new ArrayList<Integer>(list);
+		assertEquals(Arrays.asList(1, 3, 5, 7, 9), after);
+		manager.undo();
+		assertEquals(middle, list);
+		manager.undo();
+		assertEquals(before, list);
+		manager.redo(2);
+		assertEquals(after, list);
+	}
 }
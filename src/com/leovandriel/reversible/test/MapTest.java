@@ -0,0 +1,224 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.misc.ReversibleHashMap;
+import com.leovandriel.reversible.misc.SwappableMap;
+import com.leovandriel.reversible.misc.Transform;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+public class MapTest extends TestCase {
+	private void checkUpdates(Map<String, Integer> target) {
+		AdvancedManager manager = new AdvancedManager();
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(target, manager);
+		map.put("a", 1);
+		map.put("b", 2);
+		map.put("c", 3);
+		manager.mark();
+		Map<String, Integer> before = new TreeMap<String, Integer>(target);
+
+		assertEquals(Integer.valueOf(1), map.putIfAbsent("a", 10));
+		assertNull(map.putIfAbsent("d", 4));
+		assertEquals(Integer.valueOf(2), map.replace("b", 20));
+		assertNull(map.replace("e", 5));
+		assertFalse(map.replace("c", 30, 33));
+		assertTrue(map.replace("c", 3, 33));
+		assertFalse(map.remove("a", 2));
+		assertTrue(map.remove("a", 1));
+		assertEquals(Integer.valueOf(5), map.update("d", new Transform<Integer>() {
+			public Integer apply(Integer value) {
+				return value == null ? null : Integer.valueOf(value.intValue() + 1);
+			}
+		}));
+		assertNull(map.update("b", new Transform<Integer>() {
+			public Integer apply(Integer value) {
+				return null;
+			}
+		}));
+		map.transformValues(new Transform<Integer>() {
+			public Integer apply(Integer value) {
+				return Integer.valueOf(-value.intValue());
+			}
+		});
+		assertEquals(Integer.valueOf(-1), map.getOrDefault("a", -1));
+		manager.mark();
+
+		Map<String, Integer> expected = new TreeMap<String, Integer>();
+		expected.put("c", -33);
+		expected.put("d", -5);
+		assertEquals(expected, new TreeMap<String, Integer>(target));
+		manager.undo();
+		assertEquals(before, new TreeMap<String, Integer>(target));
+		manager.redo();
+		assertEquals(expected, new TreeMap<String, Integer>(target));
+	}
+
+	@Test
+	public void testUpdates() {
+		checkUpdates(new HashMap<String, Integer>());
+		checkUpdates(new TreeMap<String, Integer>());
+	}
+
+	@Test
+	public void testNullValues() {
+		AdvancedManager manager = new AdvancedManager();
+		Map<String, Integer> target = new HashMap<String, Integer>();
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(target, manager);
+		map.put("a", null);
+		manager.mark();
+		assertNull(map.put("a", 1));
+		assertNull(map.putIfAbsent("b", null));
+		assertNull(map.getOrDefault("b", 0));
+		assertEquals(Integer.valueOf(0), map.getOrDefault("c", 0));
+		assertNull(map.remove("b"));
+		manager.mark();
+		manager.undo();
+		assertTrue(target.containsKey("a"));
+		assertNull(target.get("a"));
+		assertFalse(target.containsKey("b"));
+	}
+
+	private void checkNullValuesRestored(Map<String, Integer> target, boolean opcodes, boolean clear) {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(opcodes);
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(target, manager);
+		map.put("a", null);
+		manager.mark();
+		if (clear) {
+			map.clear();
+		} else {
+			map.remove("a");
+		}
+		manager.mark();
+		manager.undo();
+		map.put("a", Integer.valueOf(1));
+		manager.mark();
+		manager.undo();
+		assertTrue(target.containsKey("a"));
+		assertNull(target.get("a"));
+		assertEquals(1, target.size());
+	}
+
+	@Test
+	public void testNullValuesRestored() {
+		for (boolean opcodes : new boolean[] { false, true }) {
+			checkNullValuesRestored(new HashMap<String, Integer>(), opcodes, true);
+			checkNullValuesRestored(new HashMap<String, Integer>(), opcodes, false);
+			checkNullValuesRestored(new SwappableMap<String, Integer>(), opcodes, true);
+		}
+	}
+
+	@Test
+	public void testTransformFailure() {
+		AdvancedManager manager = new AdvancedManager();
+		Map<String, Integer> target = new TreeMap<String, Integer>();
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(target, manager);
+		for (int i = 0; i < 10; i++) {
+			map.put("k" + i, Integer.valueOf(i));
+		}
+		manager.mark();
+		Map<String, Integer> before = new TreeMap<String, Integer>(target);
+		try {
+			map.transformValues(new Transform<Integer>() {
+				public Integer apply(Integer value) {
+					if (value.intValue() == 7) {
+						throw new IllegalArgumentException("seven");
+					}
+					return Integer.valueOf(-value.intValue());
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		assertEquals(before, target);
+		assertNull(manager.getCurrentActivity());
+	}
+
+	@Test
+	public void testPrefilledTargets() {
+		for (boolean opcodes : new boolean[] { false, true }) {
+			AdvancedManager manager = new AdvancedManager();
+			manager.setRecordingOpcodes(opcodes);
+			Map<String, Integer> concurrent = new ConcurrentHashMap<String, Integer>();
+			concurrent.put("a", Integer.valueOf(1));
+			ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(concurrent, manager);
+			map.put("b", Integer.valueOf(2));
+			map.remove("a");
+			map.remove("c");
+			manager.mark();
+			manager.undo();
+			assertEquals(Integer.valueOf(1), concurrent.get("a"));
+			assertEquals(1, concurrent.size());
+
+			Map<String, Integer> target = new HashMap<String, Integer>();
+			target.put("a", null);
+			map = new ProxyMap<String, Integer>(target, manager);
+			assertNull(map.put("a", Integer.valueOf(1)));
+			assertNull(map.remove("b"));
+			manager.mark();
+			map.remove("a");
+			manager.mark();
+			assertTrue(target.isEmpty());
+			map.put("a", Integer.valueOf(2));
+			map.put("b", null);
+			map.remove("b");
+			manager.mark();
+			manager.undo(3);
+			assertTrue(target.containsKey("a"));
+			assertNull(target.get("a"));
+			assertEquals(1, target.size());
+		}
+	}
+
+	@Test
+	public void testReversibleHashMap() {
+		AdvancedManager manager = new AdvancedManager();
+		ReversibleHashMap<Integer, String> map = new ReversibleHashMap<Integer, String>(manager);
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		List<Map<Integer, String>> states = new ArrayList<Map<Integer, String>>();
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			Integer key = random.nextInt(10) == 0 ? null : Integer.valueOf(random.nextInt(200));
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+			}
+			if (i % 100 == 99) {
+				manager.mark();
+				states.add(new HashMap<Integer, String>(expected));
+			}
+		}
+		assertEquals(expected, map);
+		for (Iterator<Integer> i = map.keySet().iterator(); i.hasNext();) {
+			Integer key = i.next();
+			if (key != null && key.intValue() % 2 == 0) {
+				i.remove();
+			}
+		}
+		map.clear();
+		manager.mark();
+		assertTrue(map.isEmpty());
+		manager.undo();
+		for (int i = states.size() - 1; i > 0; i--) {
+			assertEquals(states.get(i), map);
+			manager.undo();
+		}
+		manager.undo();
+		assertTrue(map.isEmpty());
+		manager.redo(states.size());
+		assertEquals(expected, map);
+	}
+}
@@ -0,0 +1,116 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.FixedSizeEstimator;
+import com.leovandriel.reversible.action.OpcodeLog;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ConfinedManager;
+import com.leovandriel.reversible.activity.InstrumentedRunner;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+public class MetricsTest extends TestCase {
+	@Test
+	public void testMetrics() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setSizeEstimator(new FixedSizeEstimator(10));
+		InstrumentedRunner runner = new InstrumentedRunner(manager);
+		runner.setSampleInterval(1);
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), runner);
+		for (int i = 0; i < 4; i++) {
+			list.add(Integer.valueOf(i));
+			list.add(Integer.valueOf(i));
+			runner.mark();
+		}
+		runner.undo(2);
+		runner.redo();
+		assertEquals(3, runner.getUndoDepth());
+		assertEquals(1, runner.getRedoDepth());
+		Map<String, Long> counts = runner.getActionCounts();
+		assertEquals(1, counts.size());
+		assertEquals(Long.valueOf(8), counts.values().iterator().next());
+		assertEquals(8, sum(runner.getRunLatencies()));
+		assertEquals(2, sum(runner.getUndoLatencies()));
+		assertEquals(1, sum(runner.getRedoLatencies()));
+		long[] sizes = runner.getActivitySizes();
+		assertEquals(3, sizes.length);
+		assertEquals(4, sizes[2]);
+		Map<String, Long> retained = runner.getRetainedBytes();
+		assertEquals(1, retained.size());
+		assertEquals(Long.valueOf(80), retained.values().iterator().next());
+		manager.trimUndo(1);
+		assertEquals(2, runner.getTrimCount());
+		runner.reset();
+		assertEquals(0, runner.getRunLatencies().length);
+		assertEquals(0, runner.getTrimCount());
+	}
+
+	@Test
+	public void testSampling() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(true);
+		InstrumentedRunner runner = new InstrumentedRunner(manager);
+		runner.setSampleInterval(5);
+		assertEquals(8, runner.getSampleInterval());
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), runner);
+		for (int i = 0; i < 64; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		assertEquals(Long.valueOf(64), runner.getActionCounts().get(OpcodeLog.class.getName()));
+		assertEquals(8, sum(runner.getRunLatencies()));
+		Map<String, Long> retained = runner.getRetainedBytes();
+		assertEquals(Long.valueOf(64 * OpcodeLog.ENTRY_BYTES), retained.values().iterator().next());
+	}
+
+	@Test
+	public void testMonitors() throws InterruptedException {
+		AdvancedManager manager = new AdvancedManager();
+		InstrumentedRunner first = new InstrumentedRunner(manager);
+		InstrumentedRunner second = new InstrumentedRunner(manager);
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), first);
+		for (int i = 0; i < 4; i++) {
+			list.add(Integer.valueOf(i));
+			first.mark();
+		}
+		manager.trimUndo(3);
+		assertEquals(1, first.getTrimCount());
+		assertEquals(1, second.getTrimCount());
+		manager.removeActivityMonitor(first);
+		manager.trimUndo(1);
+		assertEquals(1, first.getTrimCount());
+		assertEquals(3, second.getTrimCount());
+
+		final ConfinedManager confined = new ConfinedManager();
+		final InstrumentedRunner runner = new InstrumentedRunner(confined);
+		list = new ProxyList<Integer>(new ArrayList<Integer>(), runner);
+		list.add(Integer.valueOf(0));
+		assertEquals(1, runner.getRetainedBytes().size());
+		final List<RuntimeException> rejected = new ArrayList<RuntimeException>();
+		Thread other = new Thread(new Runnable() {
+			public void run() {
+				try {
+					runner.getRetainedBytes();
+				} catch (IllegalStateException e) {
+					rejected.add(e);
+				}
+			}
+		});
+		other.start();
+		other.join();
+		assertEquals(1, rejected.size());
+	}
+
+	private static long sum(long[] counts) {
+		long result = 0;
+		for (long count : counts) {
+			result += count;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,316 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.ActionRunner;
+import com.leovandriel.reversible.action.FixedSizeEstimator;
+import com.leovandriel.reversible.action.OpcodeLog;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ShardedActivityManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+import com.leovandriel.reversible.proxy.ProxySet;
+
+public class OpcodeTest extends TestCase {
+	@Test
+	public void testMixed() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(true);
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		Set<Integer> set = new ProxySet<Integer>(new HashSet<Integer>(), manager);
+		Map<Integer, Integer> map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		List<Object[]> states = new ArrayList<Object[]>();
+		states.add(snapshot(list, set, map));
+		Random random = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			Integer value = Integer.valueOf(random.nextInt(100));
+			switch (random.nextInt(10)) {
+			case 0:
+				list.add(value);
+				break;
+			case 1:
+				list.add(random.nextInt(list.size() + 1), value);
+				break;
+			case 2:
+				if (!list.isEmpty()) {
+					list.set(random.nextInt(list.size()), value);
+				}
+				break;
+			case 3:
+				if (!list.isEmpty()) {
+					list.remove(random.nextInt(list.size()));
+				}
+				break;
+			case 4:
+				set.add(value);
+				break;
+			case 5:
+				set.remove(value);
+				break;
+			case 6:
+				map.put(value, random.nextBoolean() ? null : Integer.valueOf(i));
+				break;
+			case 7:
+				map.remove(value);
+				break;
+			case 8:
+				list.remove(value);
+				break;
+			default:
+				if (random.nextInt(20) == 0) {
+					set.clear();
+				}
+			}
+			if (i % 500 == 499) {
+				manager.mark();
+				states.add(snapshot(list, set, map));
+			}
+		}
+		for (int i = states.size() - 1; i > 0; i--) {
+			assertSnapshot(states.get(i), list, set, map);
+			manager.undo();
+		}
+		assertSnapshot(states.get(0), list, set, map);
+		manager.redoAll();
+		assertSnapshot(states.get(states.size() - 1), list, set, map);
+	}
+
+	@Test
+	public void testSize() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(true);
+		manager.setSizeEstimator(new FixedSizeEstimator(100));
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		for (int i = 0; i < 10; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		list.clear();
+		list.add(Integer.valueOf(0));
+		assertEquals(12, manager.getCurrentActivity().size());
+		assertEquals(11 * OpcodeLog.ENTRY_BYTES + 100, manager.getCurrentActivity().getEstimatedBytes());
+	}
+
+	@Test
+	public void testUnrecorded() {
+		AdvancedManager manager = new AdvancedManager();
+		final List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		final Map<Integer, Integer> map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		list.add(Integer.valueOf(-1));
+		manager.mark();
+		list.add(Integer.valueOf(-2));
+		manager.undo();
+		list.add(Integer.valueOf(-3));
+		assertEquals(2, manager.getUndoSize());
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				list.clear();
+				for (int i = 0; i < 1000; i++) {
+					list.add(Integer.valueOf(i));
+					map.put(Integer.valueOf(i), i % 10 == 0 ? null : Integer.valueOf(i));
+				}
+				list.set(0, Integer.valueOf(7));
+				map.remove(Integer.valueOf(1));
+			}
+		});
+		assertFalse(manager.canUndo());
+		assertFalse(manager.canRedo());
+		assertNull(manager.getCurrentActivity());
+		assertEquals(1000, list.size());
+		assertEquals(999, map.size());
+		list.remove(0);
+		map.put(Integer.valueOf(0), Integer.valueOf(0));
+		manager.undo();
+		assertEquals(Integer.valueOf(7), list.get(0));
+		assertNull(map.get(Integer.valueOf(0)));
+		assertTrue(map.containsKey(Integer.valueOf(0)));
+		assertFalse(manager.canUndo());
+	}
+
+	@Test
+	public void testUnrecordedBulk() {
+		AdvancedManager manager = new AdvancedManager();
+		final ProxyList<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		final Set<Integer> set = new ProxySet<Integer>(new HashSet<Integer>(), manager);
+		final ProxyMap<Integer, Integer> map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		for (int i = 0; i < 10; i++) {
+			list.add(Integer.valueOf(i));
+			set.add(Integer.valueOf(i));
+			map.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		manager.mark();
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				assertTrue(list.remove(Integer.valueOf(0)));
+				assertTrue(list.removeAll(Arrays.asList(1, 2)));
+				assertTrue(list.retainAll(Arrays.asList(3, 4, 5)));
+				assertTrue(set.removeAll(Arrays.asList(0, 1)));
+				assertTrue(set.retainAll(Arrays.asList(2, 3)));
+				assertEquals(Integer.valueOf(0), map.putIfAbsent(Integer.valueOf(0), Integer.valueOf(-1)));
+				assertNull(map.putIfAbsent(Integer.valueOf(10), Integer.valueOf(10)));
+				assertEquals(Integer.valueOf(1), map.replace(Integer.valueOf(1), Integer.valueOf(-1)));
+				assertTrue(map.replace(Integer.valueOf(2), Integer.valueOf(2), Integer.valueOf(-2)));
+				assertTrue(map.remove(Integer.valueOf(3), Integer.valueOf(3)));
+				assertFalse(map.remove(Integer.valueOf(4), Integer.valueOf(0)));
+			}
+		});
+		assertNull(manager.getCurrentActivity());
+		assertFalse(manager.canUndo());
+		assertEquals(Arrays.asList(3, 4, 5), list);
+		assertEquals(new HashSet<Integer>(Arrays.asList(2, 3)), set);
+		assertEquals(10, map.size());
+		assertEquals(Integer.valueOf(-1), map.get(Integer.valueOf(1)));
+		assertEquals(Integer.valueOf(-2), map.get(Integer.valueOf(2)));
+		assertFalse(map.containsKey(Integer.valueOf(3)));
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				list.clear();
+				set.clear();
+				map.clear();
+			}
+		});
+		assertTrue(list.isEmpty());
+		assertTrue(set.isEmpty());
+		assertTrue(map.isEmpty());
+		assertNull(manager.getCurrentActivity());
+	}
+
+	@Test
+	public void testUnrecordedWriter() {
+		final AdvancedManager manager = new AdvancedManager();
+		final List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		final List<RuntimeException> rejected = new ArrayList<RuntimeException>();
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				list.add(Integer.valueOf(1));
+				Thread other = new Thread(new Runnable() {
+					public void run() {
+						try {
+							list.add(Integer.valueOf(2));
+						} catch (IllegalStateException e) {
+							rejected.add(e);
+						}
+					}
+				});
+				other.start();
+				try {
+					other.join();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		assertEquals(1, rejected.size());
+		assertEquals(Arrays.asList(1), list);
+		list.add(Integer.valueOf(3));
+		assertTrue(manager.isRecording());
+		assertEquals(1, manager.getUndoSize());
+	}
+
+	@Test
+	public void testNested() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(true);
+		final List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		final Map<Integer, Integer> map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), manager);
+		list.add(Integer.valueOf(1));
+		try {
+			manager.run(new Action<Void>() {
+				public Void run() {
+					list.set(0, Integer.valueOf(2));
+					return null;
+				}
+
+				public void unrun() {
+				}
+			});
+			fail();
+		} catch (RuntimeException e) {
+		}
+		try {
+			manager.run(new Action<Void>() {
+				public Void run() {
+					map.put(Integer.valueOf(1), Integer.valueOf(1));
+					return null;
+				}
+
+				public void unrun() {
+				}
+			});
+			fail();
+		} catch (RuntimeException e) {
+		}
+		assertEquals(Arrays.asList(1), list);
+		assertTrue(map.isEmpty());
+		assertEquals(1, manager.getCurrentActivity().size());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		ShardedActivityManager sharded = new ShardedActivityManager(1);
+		sharded.setRecordingOpcodes(true);
+		AdvancedManager manager = new AdvancedManager();
+		manager.setRecordingOpcodes(true);
+		for (ActionRunner runner : new ActionRunner[] { manager, sharded.getShard(0) }) {
+			final List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), runner);
+			final Map<Integer, Integer> map = new ProxyMap<Integer, Integer>(new HashMap<Integer, Integer>(), runner);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				final int offset = i * 10000;
+				threads[i] = new Thread(new Runnable() {
+					public void run() {
+						for (int j = 0; j < 10000; j++) {
+							list.add(Integer.valueOf(offset + j));
+							map.put(Integer.valueOf(j % 100), Integer.valueOf(offset + j));
+						}
+					}
+				});
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			List<Integer> after = new ArrayList<Integer>(list);
+			Map<Integer, Integer> afterMap = new HashMap<Integer, Integer>(map);
+			assertEquals(40000, after.size());
+			if (runner == manager) {
+				manager.undo();
+				assertTrue(list.isEmpty());
+				assertTrue(map.isEmpty());
+				manager.redo();
+			} else {
+				sharded.undo();
+				assertTrue(list.isEmpty());
+				assertTrue(map.isEmpty());
+				sharded.redo();
+			}
+			assertEquals(after, list);
+			assertEquals(afterMap, map);
+		}
+	}
+
+	private static Object[] snapshot(List<Integer> list, Set<Integer> set, Map<Integer, Integer> map) {
+		return new Object[] { new ArrayList<Integer>(list), new HashSet<Integer>(set),
+				new HashMap<Integer, Integer>(map) };
+	}
+
+	private static void assertSnapshot(Object[] expected, List<Integer> list, Set<Integer> set,
+			Map<Integer, Integer> map) {
+		assertEquals(expected[0], list);
+		assertEquals(expected[1], set);
+		assertEquals(expected[2], map);
+	}
+}
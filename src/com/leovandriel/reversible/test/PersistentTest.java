@@ -0,0 +1,212 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ConfinedManager;
+import com.leovandriel.reversible.persistent.PersistentList;
+import com.leovandriel.reversible.persistent.PersistentMap;
+import com.leovandriel.reversible.persistent.PersistentSet;
+
+public class PersistentTest extends TestCase {
+	@Test
+	public void testList() {
+		AdvancedManager manager = new AdvancedManager();
+		PersistentList<Integer> list = new PersistentList<Integer>(manager);
+		List<Integer> expected = new ArrayList<Integer>();
+		List<List<Integer>> states = new ArrayList<List<Integer>>();
+		states.add(new ArrayList<Integer>());
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			int op = random.nextInt(10);
+			Integer value = Integer.valueOf(i);
+			if (op < 5 || expected.isEmpty()) {
+				expected.add(value);
+				list.add(value);
+			} else if (op < 7) {
+				int index = random.nextInt(expected.size());
+				assertEquals(expected.set(index, value), list.set(index, value));
+			} else if (op < 9) {
+				assertEquals(expected.remove(expected.size() - 1), list.remove(list.size() - 1));
+			} else {
+				int index = random.nextInt(Math.min(expected.size(), 40));
+				expected.add(expected.size() - index, value);
+				list.add(list.size() - index, value);
+			}
+			if (i % 2000 == 1999) {
+				manager.mark();
+				states.add(new ArrayList<Integer>(expected));
+				assertEquals(expected, list);
+			}
+		}
+		for (int i = states.size() - 1; i > 0; i--) {
+			assertEquals(states.get(i), list);
+			manager.undo();
+		}
+		assertTrue(list.isEmpty());
+		for (int i = 1; i < states.size(); i++) {
+			manager.redo();
+			assertEquals(states.get(i), list);
+		}
+	}
+
+	@Test
+	public void testMap() {
+		AdvancedManager manager = new AdvancedManager();
+		PersistentMap<Integer, Integer> map = new PersistentMap<Integer, Integer>(manager);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		List<Map<Integer, Integer>> states = new ArrayList<Map<Integer, Integer>>();
+		states.add(new HashMap<Integer, Integer>());
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			Integer key = random.nextInt(3000) == 0 ? null : Integer.valueOf(random.nextInt(3000));
+			if (random.nextInt(3) > 0) {
+				assertEquals(expected.put(key, Integer.valueOf(i)), map.put(key, Integer.valueOf(i)));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			if (i % 2000 == 1999) {
+				manager.mark();
+				states.add(new HashMap<Integer, Integer>(expected));
+				assertEquals(expected, map);
+			}
+		}
+		for (int i = states.size() - 1; i > 0; i--) {
+			assertEquals(states.get(i), map);
+			manager.undo();
+		}
+		assertTrue(map.isEmpty());
+		manager.redoAll();
+		assertEquals(expected, map);
+	}
+
+	@Test
+	public void testSetIteration() {
+		AdvancedManager manager = new AdvancedManager();
+		PersistentSet<String> set = new PersistentSet<String>(manager);
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			set.add("v" + i);
+			expected.add("v" + i);
+		}
+		// colliding hash codes
+		set.add("Aa");
+		set.add("BB");
+		expected.add("Aa");
+		expected.add("BB");
+		manager.mark();
+		Set<String> before = new HashSet<String>(expected);
+		for (Iterator<String> i = set.iterator(); i.hasNext();) {
+			String value = i.next();
+			if (value.hashCode() % 3 == 0) {
+				i.remove();
+				expected.remove(value);
+			}
+			set.add(value + "!");
+			expected.add(value + "!");
+		}
+		manager.mark();
+		assertEquals(expected, set);
+		manager.undo();
+		assertEquals(before, set);
+		manager.redo();
+		assertEquals(expected, set);
+	}
+
+	@Test
+	public void testGuardedWrites() throws InterruptedException {
+		final ConfinedManager manager = new ConfinedManager();
+		final PersistentList<Integer> list = new PersistentList<Integer>(manager);
+		final PersistentMap<Integer, Integer> map = new PersistentMap<Integer, Integer>(manager);
+		final PersistentSet<Integer> set = new PersistentSet<Integer>(manager);
+		for (int i = 0; i < 1000; i++) {
+			list.add(Integer.valueOf(i));
+			map.put(Integer.valueOf(i), Integer.valueOf(i));
+			set.add(Integer.valueOf(i));
+		}
+		assertTrue(manager.getCurrentActivity().size() <= 6);
+		final List<String> rejected = new ArrayList<String>();
+		Thread other = new Thread(new Runnable() {
+			public void run() {
+				try {
+					list.set(0, Integer.valueOf(-1));
+				} catch (IllegalStateException e) {
+					rejected.add("list");
+				}
+				try {
+					map.remove(Integer.valueOf(0));
+				} catch (IllegalStateException e) {
+					rejected.add("map");
+				}
+				try {
+					set.clear();
+				} catch (IllegalStateException e) {
+					rejected.add("set");
+				}
+			}
+		});
+		other.start();
+		other.join();
+		assertEquals(3, rejected.size());
+		assertEquals(Integer.valueOf(0), list.get(0));
+		assertEquals(1000, map.size());
+		assertEquals(1000, set.size());
+		try {
+			manager.run(new Action<Void>() {
+				public Void run() {
+					list.add(Integer.valueOf(-1));
+					return null;
+				}
+
+				public void unrun() {
+				}
+			});
+			fail();
+		} catch (RuntimeException e) {
+		}
+		assertEquals(1000, list.size());
+		manager.mark();
+		manager.undo();
+		assertTrue(list.isEmpty());
+		assertTrue(map.isEmpty());
+		assertTrue(set.isEmpty());
+		manager.redo();
+		assertEquals(1000, list.size());
+	}
+
+	@Test
+	public void testUnrecorded() {
+		AdvancedManager manager = new AdvancedManager();
+		final PersistentList<Integer> list = new PersistentList<Integer>(manager);
+		final PersistentMap<Integer, Integer> map = new PersistentMap<Integer, Integer>(manager);
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 100; i++) {
+					list.add(Integer.valueOf(i));
+					map.put(Integer.valueOf(i), Integer.valueOf(i));
+				}
+			}
+		});
+		assertNull(manager.getCurrentActivity());
+		assertFalse(manager.canUndo());
+		list.set(0, Integer.valueOf(-1));
+		map.remove(Integer.valueOf(0));
+		manager.mark();
+		manager.undo();
+		assertEquals(100, list.size());
+		assertEquals(Integer.valueOf(0), list.get(0));
+		assertEquals(100, map.size());
+	}
+}
@@ -0,0 +1,140 @@
+package com.leovandriel.reversible.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.primitive.IntList;
+import com.leovandriel.reversible.primitive.IntSet;
+import com.leovandriel.reversible.primitive.LongObjectMap;
+import com.leovandriel.reversible.primitive.LongSet;
+
+public class PrimitiveTest extends TestCase {
+	@Test
+	public void testList() {
+		AdvancedManager manager = new AdvancedManager();
+		IntList list = new IntList(manager);
+		for (int i = 0; i < 20; i++) {
+			list.add(i);
+		}
+		manager.mark();
+		int[] before = list.toArray();
+		list.add(0, -1);
+		assertEquals(5, list.removeAt(6));
+		assertEquals(10, list.set(10, 100));
+		list.clear();
+		list.add(7);
+		manager.mark();
+		assertTrue(Arrays.equals(new int[] { 7 }, list.toArray()));
+		manager.undo();
+		assertTrue(Arrays.equals(before, list.toArray()));
+		manager.redo();
+		assertTrue(Arrays.equals(new int[] { 7 }, list.toArray()));
+	}
+
+	@Test
+	public void testSet() {
+		AdvancedManager manager = new AdvancedManager();
+		LongSet set = new LongSet(manager);
+		Set<Long> expected = new HashSet<Long>();
+		Random random = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			long value = random.nextInt(300);
+			if (random.nextBoolean()) {
+				assertEquals(expected.add(Long.valueOf(value)), set.add(value));
+			} else {
+				assertEquals(expected.remove(Long.valueOf(value)), set.remove(value));
+			}
+			if (i % 100 == 99) {
+				manager.mark();
+			}
+		}
+		assertEquals(expected.size(), set.size());
+		for (long value = 0; value < 300; value++) {
+			assertEquals(expected.contains(Long.valueOf(value)), set.contains(value));
+		}
+		manager.undo(10);
+		assertTrue(set.isEmpty());
+		manager.redo(10);
+		assertEquals(expected.size(), set.size());
+		for (long value = 0; value < 300; value++) {
+			assertEquals(expected.contains(Long.valueOf(value)), set.contains(value));
+		}
+	}
+
+	@Test
+	public void testMap() {
+		AdvancedManager manager = new AdvancedManager();
+		LongObjectMap<String> map = new LongObjectMap<String>(manager);
+		for (long i = 0; i < 100; i++) {
+			map.put(i << 32, "v" + i);
+		}
+		manager.mark();
+		assertEquals("v3", map.put(3L << 32, "w3"));
+		assertEquals("v4", map.remove(4L << 32));
+		assertNull(map.remove(4L));
+		manager.mark();
+		assertEquals(99, map.size());
+		manager.undo();
+		assertEquals(100, map.size());
+		assertEquals("v3", map.get(3L << 32));
+		assertEquals("v4", map.get(4L << 32));
+		manager.undo();
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testUnrecorded() {
+		AdvancedManager manager = new AdvancedManager();
+		final IntList list = new IntList(manager);
+		final IntSet set = new IntSet(manager);
+		final LongObjectMap<String> map = new LongObjectMap<String>(manager);
+		list.add(-1);
+		set.add(-1);
+		map.put(-1, "x");
+		manager.mark();
+		manager.runUnrecorded(new Runnable() {
+			public void run() {
+				list.clear();
+				set.clear();
+				map.clear();
+				for (int i = 0; i < 100; i++) {
+					list.add(i);
+					set.add(i);
+					map.put(i, "v" + i);
+				}
+				list.add(0, -2);
+				assertEquals(0, list.removeAt(1));
+				assertEquals(10, list.set(10, 100));
+				assertTrue(set.remove(5));
+				assertFalse(set.add(6));
+				assertEquals("v7", map.remove(7));
+				assertEquals("v8", map.put(8, "w"));
+			}
+		});
+		assertNull(manager.getCurrentActivity());
+		assertFalse(manager.canUndo());
+		assertEquals(100, list.size());
+		assertEquals(-2, list.get(0));
+		assertEquals(100, list.get(10));
+		assertEquals(99, set.size());
+		assertFalse(set.contains(5));
+		assertEquals(99, map.size());
+		assertNull(map.get(7));
+		assertEquals("w", map.get(8));
+		list.add(1);
+		set.add(5);
+		map.put(7, "y");
+		manager.mark();
+		manager.undo();
+		assertEquals(100, list.size());
+		assertFalse(set.contains(5));
+		assertNull(map.get(7));
+	}
+}
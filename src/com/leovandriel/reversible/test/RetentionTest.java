@@ -0,0 +1,136 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.action.Action;
+import com.leovandriel.reversible.action.FixedSizeEstimator;
+import com.leovandriel.reversible.activity.Activity;
+import com.leovandriel.reversible.activity.ActivityHistory;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.activity.ByteBudgetPolicy;
+import com.leovandriel.reversible.activity.CompositePolicy;
+import com.leovandriel.reversible.activity.EvictionListener;
+import com.leovandriel.reversible.activity.MaxAgePolicy;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+public class RetentionTest extends TestCase {
+	private static class Recorder implements EvictionListener {
+		private List<Activity> evicted = new ArrayList<Activity>();
+
+		public void evicted(Activity activity) {
+			evicted.add(activity);
+		}
+	}
+
+	@Test
+	public void testByteBudget() {
+		ActivityHistory history = new ActivityHistory();
+		ByteBudgetPolicy policy = new ByteBudgetPolicy(100);
+		history.setRetentionPolicy(policy);
+		Activity[] activities = new Activity[5];
+		for (int i = 0; i < activities.length; i++) {
+			activities[i] = activity(30, 0);
+			history.push(activities[i]);
+		}
+		history.push(null);
+		assertEquals(150, policy.getBytes());
+		assertEquals(1, history.evict(1, 0));
+		assertEquals(120, policy.getBytes());
+		assertEquals(1, history.evict(16, 0));
+		assertEquals(90, policy.getBytes());
+		assertEquals(0, history.evict(16, 0));
+		assertEquals(4, history.size());
+		assertSame(activities[2], history.get(3));
+		assertNull(history.pop());
+		assertSame(activities[4], history.pop());
+		assertEquals(60, policy.getBytes());
+	}
+
+	@Test
+	public void testByteBudgetManager() {
+		AdvancedManager manager = new AdvancedManager();
+		manager.setSizeEstimator(new FixedSizeEstimator(10));
+		ByteBudgetPolicy policy = new ByteBudgetPolicy(100);
+		manager.setRetentionPolicy(policy);
+		Recorder recorder = new Recorder();
+		manager.setEvictionListener(recorder);
+		List<Integer> list = new ProxyList<Integer>(new ArrayList<Integer>(), manager);
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 3; j++) {
+				list.add(Integer.valueOf(i));
+			}
+			manager.mark();
+			assertTrue(policy.getBytes() <= 100);
+		}
+		assertEquals(2, recorder.evicted.size());
+		long evictedBytes = 0;
+		for (Activity activity : recorder.evicted) {
+			evictedBytes += activity.getEstimatedBytes();
+		}
+		assertEquals(150 - 90, evictedBytes);
+		assertEquals(90, policy.getBytes());
+		assertEquals(3, manager.getUndoSize());
+		manager.undoAll();
+		assertEquals(6, list.size());
+	}
+
+	@Test
+	public void testMaxAge() {
+		ActivityHistory history = new ActivityHistory();
+		history.setRetentionPolicy(new MaxAgePolicy(1500));
+		Activity first = activity(0, 1000);
+		Activity second = activity(0, 2000);
+		Activity third = activity(0, 3000);
+		history.push(first);
+		history.push(second);
+		history.push(null);
+		history.push(third);
+		assertEquals(0, history.evict(16, 2500));
+		assertEquals(1, history.evict(16, 3000));
+		assertSame(second, history.get(2));
+		assertEquals(2, history.evict(16, 3600));
+		assertSame(third, history.get(0));
+		assertEquals(1, history.size());
+	}
+
+	@Test
+	public void testComposite() {
+		ActivityHistory history = new ActivityHistory();
+		ByteBudgetPolicy budget = new ByteBudgetPolicy(50);
+		history.setRetentionPolicy(new CompositePolicy(budget, new MaxAgePolicy(1500)));
+		Activity old = activity(10, 1000);
+		Activity large = activity(40, 2500);
+		Activity small = activity(20, 2600);
+		history.push(old);
+		history.push(large);
+		assertEquals(1, history.evict(16, 2600));
+		assertSame(large, history.get(0));
+		history.push(small);
+		assertEquals(1, history.evict(16, 2600));
+		assertSame(small, history.get(0));
+		assertEquals(20, budget.getBytes());
+		assertEquals(0, history.evict(16, 4000));
+		assertEquals(1, history.evict(16, 4200));
+		assertTrue(history.isEmpty());
+		assertEquals(0, budget.getBytes());
+	}
+
+	private static Activity activity(long bytes, long timestamp) {
+		Activity result = new Activity(new FixedSizeEstimator(bytes));
+		result.run(new Action<Void>() {
+			public Void run() {
+				return null;
+			}
+
+			public void unrun() {
+			}
+		});
+		result.setTimestamp(timestamp);
+		return result;
+	}
+}
@@ -0,0 +1,114 @@
+package com.leovandriel.reversible.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.ShardedActivityManager;
+import com.leovandriel.reversible.proxy.ProxyList;
+
+public class ShardedTest extends TestCase {
+	@Test
+	public void testIsolation() {
+		ShardedActivityManager manager = new ShardedActivityManager(2);
+		assertSame(manager.getShard("tenant"), manager.getShard("tenant"));
+		List<Integer> first = new ProxyList<Integer>(new ArrayList<Integer>(), manager.getShard(0));
+		List<Integer> second = new ProxyList<Integer>(new ArrayList<Integer>(), manager.getShard(1));
+		first.add(Integer.valueOf(1));
+		assertEquals(1, manager.getUndoSize());
+		manager.mark();
+		second.add(Integer.valueOf(2));
+		manager.mark();
+		first.add(Integer.valueOf(3));
+		assertEquals(3, manager.getUndoSize());
+		manager.undo();
+		assertEquals(Arrays.asList(1), first);
+		assertEquals(Arrays.asList(2), second);
+		manager.undo();
+		assertEquals(Arrays.asList(1), first);
+		assertEquals(Arrays.asList(), second);
+		manager.undo();
+		assertEquals(Arrays.asList(), first);
+		assertFalse(manager.canUndo());
+		manager.redo(3);
+		assertEquals(Arrays.asList(1, 3), first);
+		assertEquals(Arrays.asList(2), second);
+		assertFalse(manager.canRedo());
+	}
+
+	@Test
+	public void testAlignRedo() {
+		ShardedActivityManager manager = new ShardedActivityManager(3);
+		List<Integer> first = new ProxyList<Integer>(new ArrayList<Integer>(), manager.getShard(0));
+		List<Integer> second = new ProxyList<Integer>(new ArrayList<Integer>(), manager.getShard(1));
+		first.add(Integer.valueOf(1));
+		second.add(Integer.valueOf(1));
+		manager.mark();
+		first.add(Integer.valueOf(2));
+		second.add(Integer.valueOf(2));
+		manager.mark();
+		manager.undo(2);
+		assertEquals(2, manager.getRedoSize());
+		second.add(Integer.valueOf(3));
+		assertFalse(manager.canRedo());
+		try {
+			manager.redo();
+			fail();
+		} catch (RuntimeException e) {
+		}
+		assertEquals(1, manager.getUndoSize());
+		manager.undo();
+		assertEquals(Arrays.asList(), first);
+		assertEquals(Arrays.asList(), second);
+		manager.redo();
+		assertEquals(Arrays.asList(), first);
+		assertEquals(Arrays.asList(3), second);
+		assertFalse(manager.canRedo());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ShardedActivityManager manager = new ShardedActivityManager(4);
+		final List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for (int i = 0; i < 4; i++) {
+			lists.add(new ProxyList<Integer>(new ArrayList<Integer>(), manager.getShard(i)));
+		}
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final List<Integer> list = lists.get(i % 4);
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						list.add(Integer.valueOf(j));
+						if (j % 1000 == 0) {
+							manager.mark();
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		manager.mark();
+		for (List<Integer> list : lists) {
+			assertEquals(20000, list.size());
+		}
+		int steps = manager.getUndoSize();
+		manager.undo(steps);
+		for (List<Integer> list : lists) {
+			assertTrue(list.isEmpty());
+		}
+		manager.redo(steps);
+		for (List<Integer> list : lists) {
+			assertEquals(20000, list.size());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.leovandriel.reversible.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.ActivitySpill;
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.io.ActionCodec;
+import com.leovandriel.reversible.proxy.ProxyList;
+import com.leovandriel.reversible.proxy.ProxyMap;
+
+public class SpillTest extends TestCase {
+	@Test
+	public void testUndoRedo() throws Exception {
+		AdvancedManager manager = new AdvancedManager();
+		ProxyList<String> list = new ProxyList<String>(new ArrayList<String>(), manager);
+		ProxyMap<String, Integer> map = new ProxyMap<String, Integer>(new HashMap<String, Integer>(), manager);
+		ActionCodec codec = new ActionCodec();
+		codec.register(list);
+		codec.register(map);
+		File file = File.createTempFile("spill", ".bin");
+		file.deleteOnExit();
+		ActivitySpill spill = new ActivitySpill(file, 4096, codec);
+		manager.setSpill(spill, 2);
+
+		List<String> lists = new ArrayList<String>();
+		List<Map<String, Integer>> maps = new ArrayList<Map<String, Integer>>();
+		for (int i = 0; i < 20; i++) {
+			lists.add(list.toString());
+			maps.add(new HashMap<String, Integer>(map));
+			list.add("v" + i);
+			if (i % 3 == 0) {
+				list.set(0, "s" + i);
+			}
+			map.put("k" + i % 5, i);
+			manager.mark();
+		}
+		assertEquals(18, spill.getLiveCount());
+
+		for (int i = 19; i >= 0; i--) {
+			manager.undo();
+			assertEquals(lists.get(i), list.toString());
+			assertEquals(maps.get(i), map);
+		}
+		manager.redo(20);
+		assertEquals(20, list.size());
+		manager.setMaxUndoSize(0);
+		assertEquals(0, spill.getLiveCount());
+		spill.close();
+	}
+}
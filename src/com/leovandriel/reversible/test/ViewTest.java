@@ -0,0 +1,157 @@
+package com.leovandriel.reversible.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.leovandriel.reversible.activity.AdvancedManager;
+import com.leovandriel.reversible.proxy.ProxyMap;
+import com.leovandriel.reversible.proxy.ProxySet;
+
+public class ViewTest extends TestCase {
+	@Test
+	public void testSetIterator() {
+		AdvancedManager manager = new AdvancedManager();
+		Set<Integer> target = new HashSet<Integer>();
+		ProxySet<Integer> set = new ProxySet<Integer>(target, manager);
+		for (int i = 0; i < 10; i++) {
+			set.add(Integer.valueOf(i));
+		}
+		manager.mark();
+		Set<Integer> before = new HashSet<Integer>(target);
+		for (Iterator<Integer> i = set.iterator(); i.hasNext();) {
+			if (i.next().intValue() % 2 == 0) {
+				i.remove();
+			}
+		}
+		manager.mark();
+		assertEquals(5, target.size());
+		Set<Integer> after = new HashSet<Integer>(target);
+		manager.undo();
+		assertEquals(before, target);
+		manager.redo();
+		assertEquals(after, target);
+	}
+
+	@Test
+	public void testSetRetainAll() {
+		AdvancedManager manager = new AdvancedManager();
+		ProxySet<Integer> set = new ProxySet<Integer>(new HashSet<Integer>(), manager);
+		set.addAll(Arrays.asList(1, 2, 3, 4));
+		manager.mark();
+		assertTrue(set.retainAll(Arrays.asList(2, 4, 6)));
+		assertFalse(set.removeAll(Arrays.asList(1, 3)));
+		manager.mark();
+		assertEquals(new HashSet<Integer>(Arrays.asList(2, 4)), set);
+		manager.undo();
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 4)), set);
+	}
+
+	@Test
+	public void testSetRemoveAll() {
+		AdvancedManager manager = new AdvancedManager();
+		Set<String> target = new HashSet<String>();
+		ProxySet<String> set = new ProxySet<String>(target, manager);
+		String a = new String("a");
+		set.addAll(Arrays.asList(a, "b", "c"));
+		manager.mark();
+		assertTrue(set.removeAll(Arrays.asList(new String("a"), "c", "d")));
+		assertEquals(new HashSet<String>(Arrays.asList("b")), target);
+		manager.mark();
+		manager.undo();
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), target);
+		for (String s : target) {
+			if (s.equals("a")) {
+				assertSame(a, s);
+			}
+		}
+		manager.redo();
+		assertTrue(set.removeAll(set));
+		assertTrue(target.isEmpty());
+	}
+
+	@Test
+	public void testMapViews() {
+		AdvancedManager manager = new AdvancedManager();
+		Map<Integer, String> target = new HashMap<Integer, String>();
+		ProxyMap<Integer, String> map = new ProxyMap<Integer, String>(target, manager);
+		for (int i = 0; i < 10; i++) {
+			map.put(Integer.valueOf(i), "v" + i);
+		}
+		manager.mark();
+		Map<Integer, String> before = new HashMap<Integer, String>(target);
+		for (Iterator<Integer> i = map.keySet().iterator(); i.hasNext();) {
+			if (i.next().intValue() < 3) {
+				i.remove();
+			}
+		}
+		assertTrue(map.keySet().removeAll(Arrays.asList(3, 4, 42)));
+		assertTrue(map.values().remove("v5"));
+		for (Map.Entry<Integer, String> entry : map.entrySet()) {
+			entry.setValue("w" + entry.getKey());
+		}
+		manager.mark();
+		assertEquals(4, target.size());
+		assertEquals("w9", target.get(9));
+		Map<Integer, String> after = new HashMap<Integer, String>(target);
+		manager.undo();
+		assertEquals(before, target);
+		manager.redo();
+		assertEquals(after, target);
+	}
+
+	@Test
+	public void testIteratorMark() {
+		AdvancedManager manager = new AdvancedManager();
+		ProxySet<Integer> set = new ProxySet<Integer>(new HashSet<Integer>(), manager);
+		ProxyMap<Integer, String> map = new ProxyMap<Integer, String>(new HashMap<Integer, String>(), manager);
+		for (int i = 0; i < 10; i++) {
+			set.add(Integer.valueOf(i));
+			map.put(Integer.valueOf(i), "v" + i);
+		}
+		manager.mark();
+		Set<Integer> setBefore = new HashSet<Integer>(set);
+		Map<Integer, String> mapBefore = new HashMap<Integer, String>(map);
+		int count = 0;
+		for (Iterator<Integer> i = set.iterator(); i.hasNext();) {
+			if (i.next().intValue() % 2 == 0) {
+				i.remove();
+				if (++count == 2) {
+					manager.mark();
+				}
+			}
+		}
+		manager.mark();
+		count = 0;
+		for (Iterator<String> i = map.values().iterator(); i.hasNext();) {
+			if (i.next().length() == 2) {
+				i.remove();
+				assertEquals(1, manager.getCurrentActivity().size());
+				if (++count == 3) {
+					manager.mark();
+				}
+			}
+		}
+		manager.mark();
+		assertTrue(map.isEmpty());
+		assertEquals(5, set.size());
+		manager.undo();
+		assertEquals(7, map.size());
+		manager.undo();
+		assertEquals(mapBefore, map);
+		manager.undo();
+		assertEquals(8, set.size());
+		manager.undo();
+		assertEquals(setBefore, set);
+		manager.redo(4);
+		assertTrue(map.isEmpty());
+		assertEquals(5, set.size());
+	}
+}